@@ -0,0 +1,262 @@
+package com.px3j.lush.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor that generates a LushMethodIndex for each controller with LushControllerMethod methods, and
+ * registers them in META-INF/services so Lush finds them with java.util.ServiceLoader.  The generated code contains
+ * only class literals and method names so it is suitable for AOT compilation and native images.
+ * <br/><br/>
+ * For a controller <b>com.acme.CatController</b> the generated class is <b>com.acme.CatController$LushMethods</b>:
+ * <pre>
+ *     public final class CatController$LushMethods implements LushMethodIndex {
+ *         public Class&lt;?&gt; controllerClass() { return com.acme.CatController.class; }
+ *
+ *         public void describe(LushMethodIndex.Registry registry) {
+ *             registry.mono( "cat", com.px3j.lush.core.ticket.LushTicket.class, java.lang.String.class );
+ *             registry.flux( "cats" );
+ *             registry.flux( "exportCats" );
+ *             registry.mono( "legacyCat", java.lang.String.class );
+ *             registry.blocking( "legacyCat", java.lang.String.class );
+ *             registry.timeout( "2s", "legacyCat", java.lang.String.class );
+ *             registry.batch( 500, "", "exportCats" );
+ *         }
+ *     }
+ * </pre>
+ * Methods annotated with LushControllerMethod must be public and return a Mono or a Flux, anything else is reported
+ * as a compile error.
+ *
+ * @author Paul Parrone
+ */
+@SupportedAnnotationTypes( LushControllerMethodProcessor.ANNOTATION )
+public class LushControllerMethodProcessor extends AbstractProcessor {
+    static final String ANNOTATION = "com.px3j.lush.endpoint.http.LushControllerMethod";
+    static final String INDEX = "com.px3j.lush.endpoint.http.LushMethodIndex";
+    static final String MONO = "reactor.core.publisher.Mono";
+    static final String FLUX = "reactor.core.publisher.Flux";
+    static final String SUFFIX = "$LushMethods";
+
+    private final Set<String> generated = new TreeSet<>();
+
+    private Filer filer;
+    private Messager messager;
+    private Types types;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if( roundEnv.processingOver() ) {
+            writeServices();
+            return false;
+        }
+
+        Map<TypeElement,List<ExecutableElement>> controllers = new LinkedHashMap<>();
+        for( TypeElement annotation : annotations ) {
+            for( Element element : roundEnv.getElementsAnnotatedWith(annotation) ) {
+                if( element.getKind() != ElementKind.METHOD ) {
+                    continue;
+                }
+                controllers
+                        .computeIfAbsent( (TypeElement) element.getEnclosingElement(), c -> new ArrayList<>() )
+                        .add( (ExecutableElement) element );
+            }
+        }
+
+        controllers.forEach( this::generateIndex );
+        return false;
+    }
+
+    private void generateIndex(TypeElement controller, List<ExecutableElement> methods) {
+        String packageName = packageOf(controller);
+        String indexName = binarySimpleName(controller) + SUFFIX;
+        String qualifiedIndexName = packageName.isEmpty() ? indexName : packageName + "." + indexName;
+
+        StringBuilder source = new StringBuilder();
+        if( !packageName.isEmpty() ) {
+            source.append( "package " ).append( packageName ).append( ";\n\n" );
+        }
+        source.append( "/**\n * Generated by " ).append( getClass().getName() ).append( ", do not edit.\n */\n" );
+        source.append( "public final class " ).append( indexName ).append( " implements " ).append( INDEX ).append( " {\n" );
+        source.append( "    @Override\n" );
+        source.append( "    public Class<?> controllerClass() {\n" );
+        source.append( "        return " ).append( controller.getQualifiedName() ).append( ".class;\n" );
+        source.append( "    }\n\n" );
+        source.append( "    @Override\n" );
+        source.append( "    public void describe(" ).append( INDEX ).append( ".Registry registry) {\n" );
+
+        boolean valid = true;
+        for( ExecutableElement method : methods ) {
+            String kind = kindOf(method);
+            if( kind == null ) {
+                valid = false;
+                continue;
+            }
+
+            String arguments = arguments(method);
+            source.append( "        registry." ).append( kind ).append( "( " ).append( arguments ).append( " );\n" );
+            if( Boolean.TRUE.equals(annotationValue(method, "blocking")) ) {
+                source.append( "        registry.blocking( " ).append( arguments ).append( " );\n" );
+            }
+            Object timeout = annotationValue(method, "timeout");
+            if( timeout != null && !timeout.toString().isEmpty() ) {
+                source.append( "        registry.timeout( " ).append( processingEnv.getElementUtils().getConstantExpression(timeout) )
+                        .append( ", " ).append( arguments ).append( " );\n" );
+            }
+            Object batchSize = annotationValue(method, "batchSize");
+            if( batchSize instanceof Integer && (Integer) batchSize > 0 ) {
+                Object batchWindow = annotationValue(method, "batchWindow");
+                source.append( "        registry.batch( " ).append( batchSize )
+                        .append( ", " ).append( processingEnv.getElementUtils().getConstantExpression(batchWindow != null ? batchWindow : "") )
+                        .append( ", " ).append( arguments ).append( " );\n" );
+            }
+        }
+
+        source.append( "    }\n" );
+        source.append( "}\n" );
+
+        if( !valid ) {
+            return;
+        }
+
+        try {
+            JavaFileObject file = filer.createSourceFile( qualifiedIndexName, controller );
+            try( Writer writer = file.openWriter() ) {
+                writer.write( source.toString() );
+            }
+            generated.add( qualifiedIndexName );
+        }
+        catch (IOException e) {
+            messager.printMessage( Diagnostic.Kind.ERROR, "Unable to generate " + qualifiedIndexName + ": " + e.getMessage(), controller );
+        }
+    }
+
+    /**
+     * @return "mono" or "flux", null (after reporting an error) if the method can't be decorated by Lush.
+     */
+    private String kindOf(ExecutableElement method) {
+        if( !method.getModifiers().contains(Modifier.PUBLIC) ) {
+            messager.printMessage( Diagnostic.Kind.ERROR, "@LushControllerMethod methods must be public", method );
+            return null;
+        }
+
+        TypeMirror returnType = types.erasure( method.getReturnType() );
+        String returnTypeName = returnType.toString();
+        if( MONO.equals(returnTypeName) ) {
+            return "mono";
+        }
+        if( FLUX.equals(returnTypeName) ) {
+            return "flux";
+        }
+
+        messager.printMessage( Diagnostic.Kind.ERROR, "@LushControllerMethod methods must return a Mono or a Flux", method );
+        return null;
+    }
+
+    /**
+     * @return The name and parameter types of the method, as arguments to the registry.
+     */
+    private String arguments(ExecutableElement method) {
+        StringBuilder arguments = new StringBuilder().append( '"' ).append( method.getSimpleName() ).append( '"' );
+        for( VariableElement parameter : method.getParameters() ) {
+            arguments.append( ", " ).append( types.erasure(parameter.asType()) ).append( ".class" );
+        }
+        return arguments.toString();
+    }
+
+    /**
+     * @return The value of an element explicitly set on the method's LushControllerMethod annotation, null if not set.
+     */
+    private static Object annotationValue(ExecutableElement method, String name) {
+        for( AnnotationMirror annotation : method.getAnnotationMirrors() ) {
+            if( !ANNOTATION.equals(annotation.getAnnotationType().toString()) ) {
+                continue;
+            }
+            for( Map.Entry<? extends ExecutableElement,? extends AnnotationValue> value : annotation.getElementValues().entrySet() ) {
+                if( value.getKey().getSimpleName().contentEquals(name) ) {
+                    return value.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void writeServices() {
+        if( generated.isEmpty() ) {
+            return;
+        }
+
+        try {
+            FileObject file = filer.createResource( StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + INDEX );
+            try( Writer writer = file.openWriter() ) {
+                for( String name : generated ) {
+                    writer.write( name );
+                    writer.write( '\n' );
+                }
+            }
+        }
+        catch (IOException e) {
+            messager.printMessage( Diagnostic.Kind.ERROR, "Unable to register Lush method indexes: " + e.getMessage() );
+        }
+    }
+
+    private static String packageOf(Element element) {
+        while( !(element instanceof PackageElement) ) {
+            element = element.getEnclosingElement();
+        }
+        return ((PackageElement) element).getQualifiedName().toString();
+    }
+
+    /**
+     * Name of the class within its package, nested classes are joined with '$' so the name can't clash.
+     */
+    private static String binarySimpleName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while( enclosing instanceof TypeElement ) {
+            name = enclosing.getSimpleName() + "$" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name;
+    }
+}
@@ -0,0 +1,154 @@
+package com.px3j.lush.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+public class LushControllerMethodProcessorTest {
+    // Minimal copies of the Lush and Reactor types the processor and the generated code refer to.
+    private static final JavaFileObject ANNOTATION = JavaFileObjects.forSourceLines(
+            "com.px3j.lush.endpoint.http.LushControllerMethod",
+            "package com.px3j.lush.endpoint.http;",
+            "public @interface LushControllerMethod {",
+            "    boolean blocking() default false;",
+            "    String timeout() default \"\";",
+            "    int batchSize() default 0;",
+            "    String batchWindow() default \"\";",
+            "}"
+    );
+    private static final JavaFileObject INDEX = JavaFileObjects.forSourceLines(
+            "com.px3j.lush.endpoint.http.LushMethodIndex",
+            "package com.px3j.lush.endpoint.http;",
+            "public interface LushMethodIndex {",
+            "    Class<?> controllerClass();",
+            "    void describe(Registry registry);",
+            "    interface Registry {",
+            "        void mono(String name, Class<?>... parameterTypes);",
+            "        void flux(String name, Class<?>... parameterTypes);",
+            "        void blocking(String name, Class<?>... parameterTypes);",
+            "        void timeout(String timeout, String name, Class<?>... parameterTypes);",
+            "        void batch(int size, String window, String name, Class<?>... parameterTypes);",
+            "    }",
+            "}"
+    );
+    private static final JavaFileObject MONO = JavaFileObjects.forSourceLines(
+            "reactor.core.publisher.Mono",
+            "package reactor.core.publisher;",
+            "public abstract class Mono<T> {}"
+    );
+    private static final JavaFileObject FLUX = JavaFileObjects.forSourceLines(
+            "reactor.core.publisher.Flux",
+            "package reactor.core.publisher;",
+            "public abstract class Flux<T> {}"
+    );
+
+    @Test
+    public void testGeneratesIndex() {
+        Compilation compilation = compile( JavaFileObjects.forSourceLines(
+                "com.acme.CatController",
+                "package com.acme;",
+                "import com.px3j.lush.endpoint.http.LushControllerMethod;",
+                "import reactor.core.publisher.Flux;",
+                "import reactor.core.publisher.Mono;",
+                "import java.util.List;",
+                "public class CatController {",
+                "    @LushControllerMethod",
+                "    public Mono<String> cat(String name, List<String> tags) { return null; }",
+                "    @LushControllerMethod(batchSize = 500, batchWindow = \"1s\")",
+                "    public Flux<String> exportCats() { return null; }",
+                "    @LushControllerMethod(blocking = true, timeout = \"2s\")",
+                "    public Mono<String> legacyCat(String name) { return null; }",
+                "    public Mono<String> notLush() { return null; }",
+                "}"
+        ));
+
+        assertThat( compilation ).succeededWithoutWarnings();
+        assertThat( compilation )
+                .generatedSourceFile( "com.acme.CatController$LushMethods" )
+                .contentsAsUtf8String()
+                .contains( String.join( "\n",
+                        "        registry.mono( \"cat\", java.lang.String.class, java.util.List.class );",
+                        "        registry.flux( \"exportCats\" );",
+                        "        registry.batch( 500, \"1s\", \"exportCats\" );",
+                        "        registry.mono( \"legacyCat\", java.lang.String.class );",
+                        "        registry.blocking( \"legacyCat\", java.lang.String.class );",
+                        "        registry.timeout( \"2s\", \"legacyCat\", java.lang.String.class );",
+                        "    }"
+                ));
+        assertThat( compilation )
+                .generatedSourceFile( "com.acme.CatController$LushMethods" )
+                .contentsAsUtf8String()
+                .doesNotContain( "notLush" );
+        assertThat( compilation )
+                .generatedFile( StandardLocation.CLASS_OUTPUT, "", "META-INF/services/com.px3j.lush.endpoint.http.LushMethodIndex" )
+                .contentsAsUtf8String()
+                .isEqualTo( "com.acme.CatController$LushMethods\n" );
+    }
+
+    @Test
+    public void testNestedController() {
+        Compilation compilation = compile( JavaFileObjects.forSourceLines(
+                "com.acme.Controllers",
+                "package com.acme;",
+                "import com.px3j.lush.endpoint.http.LushControllerMethod;",
+                "import reactor.core.publisher.Mono;",
+                "public class Controllers {",
+                "    public static class Dogs {",
+                "        @LushControllerMethod",
+                "        public Mono<String> dog() { return null; }",
+                "    }",
+                "}"
+        ));
+
+        assertThat( compilation ).succeeded();
+        assertThat( compilation )
+                .generatedSourceFile( "com.acme.Controllers$Dogs$LushMethods" )
+                .contentsAsUtf8String()
+                .contains( "return com.acme.Controllers.Dogs.class;" );
+    }
+
+    @Test
+    public void testMethodMustBePublic() {
+        Compilation compilation = compile( JavaFileObjects.forSourceLines(
+                "com.acme.CatController",
+                "package com.acme;",
+                "import com.px3j.lush.endpoint.http.LushControllerMethod;",
+                "import reactor.core.publisher.Mono;",
+                "public class CatController {",
+                "    @LushControllerMethod",
+                "    Mono<String> cat() { return null; }",
+                "}"
+        ));
+
+        assertThat( compilation ).failed();
+        assertThat( compilation ).hadErrorContaining( "@LushControllerMethod methods must be public" );
+    }
+
+    @Test
+    public void testMethodMustReturnPublisher() {
+        Compilation compilation = compile( JavaFileObjects.forSourceLines(
+                "com.acme.CatController",
+                "package com.acme;",
+                "import com.px3j.lush.endpoint.http.LushControllerMethod;",
+                "public class CatController {",
+                "    @LushControllerMethod",
+                "    public String cat() { return null; }",
+                "}"
+        ));
+
+        assertThat( compilation ).failed();
+        assertThat( compilation ).hadErrorContaining( "@LushControllerMethod methods must return a Mono or a Flux" );
+    }
+
+    private static Compilation compile(JavaFileObject controller) {
+        return javac()
+                .withProcessors( new LushControllerMethodProcessor() )
+                .compile( ANNOTATION, INDEX, MONO, FLUX, controller );
+    }
+}
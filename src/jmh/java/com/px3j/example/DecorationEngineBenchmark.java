@@ -0,0 +1,79 @@
+package com.px3j.example;
+
+import com.px3j.example.service.LushExampleServiceApp;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.core.ticket.TicketUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.px3j.lush.endpoint.http.Constants.TICKET_HEADER_NAME;
+
+/**
+ * Requests to a Lush controller method of the example service, decorated by the AOP engine (ControllerDecorator)
+ * compared to the handler engine (LushHandlerAdapter and LushResultHandler).  Requests are made in process, through
+ * WebTestClient, so the numbers cover the WebFlux and Lush work done per request without the network.
+ * <br/><br/>
+ * <pre>
+ *  mvn -Pbenchmarks test-compile exec:exec -Djmh.args="DecorationEngineBenchmark -f 1"
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DecorationEngineBenchmark {
+    @Param({"aop", "handler"})
+    public String engine;
+
+    private ConfigurableApplicationContext context;
+    private WebTestClient webTestClient;
+    private String encodedTicket;
+
+    @Setup
+    public void setup() {
+        SpringApplication application = new SpringApplication( LushExampleServiceApp.class );
+        application.setAdditionalProfiles( "developer", "clear-ticket" );
+        context = application.run(
+                "--lush.decoration.engine=" + engine,
+                "--server.port=0",
+                "--lush.limiter.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.lush.core.debug=WARN"
+        );
+
+        webTestClient = WebTestClient
+                .bindToApplicationContext( context )
+                .configureClient()
+                .build();
+        encodedTicket = context.getBean( TicketUtil.class )
+                .encrypt( new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user"))) );
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String pingUser() {
+        return webTestClient
+                .get()
+                .uri( "/lush/example/pingUser" )
+                .accept( MediaType.APPLICATION_JSON )
+                .header( TICKET_HEADER_NAME, encodedTicket )
+                .exchange()
+                .expectBody( String.class )
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,59 @@
+package com.px3j.lush.core.ticket;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LushTicket.hasAuthority (a bit test against the ticket's authority bitset) compared to scanning the ticket's
+ * authorities, for an authority the ticket has (the last one) and one it doesn't.
+ * <br/><br/>
+ * <pre>
+ *  mvn -Pbenchmarks test-compile exec:exec -Djmh.args="AuthorityCheckBenchmark -f 1"
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AuthorityCheckBenchmark {
+    @Param({"10", "150"})
+    public int authorityCount;
+
+    @Param({"true", "false"})
+    public boolean granted;
+
+    private LushTicket ticket;
+    private String authority;
+
+    @Setup
+    public void setup() {
+        List<SimpleGrantedAuthority> authorities = new ArrayList<>();
+        for( int i=0; i<authorityCount; i++ ) {
+            authorities.add( AuthorityRegistry.intern("benchmark-authority-" + i) );
+        }
+        AuthorityRegistry.register( "benchmark-missing" );
+
+        ticket = new LushTicket( "paul", "", authorities );
+        authority = granted ? "benchmark-authority-" + (authorityCount - 1) : "benchmark-missing";
+
+        // Build the bitset up front, it is only built once per ticket.
+        ticket.hasAuthority( authority );
+    }
+
+    @Benchmark
+    public boolean scan() {
+        return ticket.getAuthorities().stream().anyMatch( a -> authority.equals(a.getAuthority()) );
+    }
+
+    @Benchmark
+    public boolean hasAuthority() {
+        return ticket.hasAuthority( authority );
+    }
+}
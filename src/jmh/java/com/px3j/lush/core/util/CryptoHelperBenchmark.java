@@ -0,0 +1,72 @@
+package com.px3j.lush.core.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypting a ticket with CryptoHelper, which reuses a Cipher and buffers per thread, compared to creating and
+ * initializing a Cipher on every call (how CryptoHelper used to work).
+ * <br/><br/>
+ * <pre>
+ *  mvn -Pbenchmarks test-compile exec:exec -Djmh.args="CryptoHelperBenchmark -f 1"
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CryptoHelperBenchmark {
+    /**
+     * Size of the plain text, roughly that of a ticket with a handful of authorities (~200) or many (~2000).
+     */
+    @Param({"200", "2000"})
+    public int ticketSize;
+
+    private SecretKey secretKey;
+    private IvParameterSpec accessKey;
+    private CryptoHelper cryptoHelper;
+    private String cipherText;
+
+    @Setup
+    public void setup() throws Exception {
+        secretKey = CryptoHelper.generateKey( 256 );
+        accessKey = CryptoHelper.generateIv();
+        cryptoHelper = new CryptoHelper( new CryptoKeys(
+                Base64.getEncoder().encodeToString(secretKey.getEncoded()),
+                Base64.getEncoder().encodeToString(accessKey.getIV())
+        ));
+
+        StringBuilder ticket = new StringBuilder( "{\"username\":\"paul\",\"authorities\":[" );
+        for( int i=0; ticket.length() < ticketSize; i++ ) {
+            ticket.append( "{\"authority\":\"authority-" ).append( i ).append( "\"}," );
+        }
+        cipherText = cryptoHelper.encrypt( ticket.toString() );
+    }
+
+    @Benchmark
+    public String decryptWithNewCipher() throws Exception {
+        Cipher cipher = Cipher.getInstance( "AES/CBC/PKCS5Padding" );
+        cipher.init( Cipher.DECRYPT_MODE, secretKey, accessKey );
+        return new String( cipher.doFinal(Base64.getDecoder().decode(cipherText)), StandardCharsets.UTF_8 );
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return cryptoHelper.decrypt( cipherText );
+    }
+
+    @Benchmark
+    public ByteBuffer decryptToBuffer() {
+        return cryptoHelper.decryptToBuffer( cipherText );
+    }
+}
@@ -0,0 +1,77 @@
+package com.px3j.lush.endpoint.http;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The prologue of a Lush controller method: finding the request's LushContext and ticket before calling the method.
+ * Reading both from the LushRequestState in the Reactor context is compared to how ControllerDecorator used to do it:
+ * the LushContext from the Reactor context, then the ticket from ReactiveSecurityContextHolder.
+ * <br/><br/>
+ * <pre>
+ *  mvn -Pbenchmarks test-compile exec:exec -Djmh.args="LushRequestStateBenchmark -f 1 -prof gc"
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LushRequestStateBenchmark {
+    private final Mono<String> body = Mono.just( "pong" );
+
+    private Context securityContext;
+    private Context stateContext;
+
+    @Setup
+    public void setup() {
+        LushTicket ticket = new LushTicket( "paul", "", List.of() );
+        LushContext lushContext = new LushContext();
+        lushContext.setAdvice( new LushAdvice(null, 200) );
+
+        securityContext = ReactiveSecurityContextHolder
+                .withSecurityContext( Mono.just(new SecurityContextImpl(new UsernamePasswordAuthenticationToken(ticket, "", List.of()))) )
+                .put( LushContext.class.getName(), lushContext );
+
+        LushRequestState state = LushRequestState.create();
+        state.setContext( lushContext );
+        state.setTicket( ticket );
+        stateContext = Context.of( LushRequestState.KEY, state );
+    }
+
+    @Benchmark
+    public String securityContextHolder() {
+        return Mono.deferContextual( ctx -> {
+                    LushContext lushContext = ctx.get( LushContext.class.getName() );
+                    return ReactiveSecurityContextHolder.getContext()
+                            .map( sc -> (LushTicket) sc.getAuthentication().getPrincipal() )
+                            .flatMap( ticket -> lushContext != null ? body : Mono.<String>empty() );
+                })
+                .contextWrite( securityContext )
+                .block();
+    }
+
+    @Benchmark
+    public String requestState() {
+        return Mono.deferContextual( ctx -> {
+                    LushRequestState state = LushRequestState.from( ctx );
+                    LushContext lushContext = state.getContext();
+                    LushTicket ticket = state.getTicket();
+                    return lushContext != null && ticket != null ? body : Mono.<String>empty();
+                })
+                .contextWrite( stateContext )
+                .block();
+    }
+}
@@ -0,0 +1,55 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.google.gson.Gson;
+import com.px3j.lush.core.model.LushAdvice;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the x-lush-advice header with AdviceHeaderWriter compared to Gson, for default advice (status code 200, no
+ * warnings or extras) and for advice with a warning and extras of the common types (strings, numbers, maps, lists).
+ * <br/><br/>
+ * <pre>
+ *  mvn -Pbenchmarks test-compile exec:exec -Djmh.args="AdviceHeaderWriterBenchmark -f 1 -prof gc"
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AdviceHeaderWriterBenchmark {
+    @Param({"default", "extras"})
+    public String kind;
+
+    private final Gson gson = new Gson();
+    private final AdviceHeaderWriter writer = new AdviceHeaderWriter( 4096 );
+    private LushAdvice advice;
+
+    @Setup
+    public void setup() {
+        advice = new LushAdvice( "5e2d545b12403e9d,5e2d545b12403e9d", 200 );
+        if( "extras".equals(kind) ) {
+            advice.addWarning( new LushAdvice.LushWarning(7, Map.of("reason", "slow")) );
+            advice.putExtra( "catsExported", 10000 );
+            advice.putExtra( "lush.cacheHit", true );
+            advice.putExtra( "breed", "Tonkinese" );
+            advice.putExtra( "visits", Map.of("count", 3, "pages", List.of("cats", "dogs")) );
+        }
+    }
+
+    @Benchmark
+    public String gson() {
+        return gson.toJson( advice );
+    }
+
+    @Benchmark
+    public String writer() {
+        return writer.write( advice );
+    }
+}
@@ -0,0 +1,86 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the cached InvocationPlan of a controller method compared to working it out on every call, as
+ * ControllerDecorator used to: resolving the method on the target (the method is declared by an interface) and scanning
+ * its parameters for the LushTicket and LushContext arguments.
+ * <br/><br/>
+ * <pre>
+ *  mvn -Pbenchmarks test-compile exec:exec -Djmh.args="InvocationPlanBenchmark -f 1"
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InvocationPlanBenchmark {
+    public interface Api {
+        Mono<String> ping(String name, LushTicket ticket, LushContext lushContext);
+    }
+
+    public static class Controller implements Api {
+        @Override
+        public Mono<String> ping(String name, LushTicket ticket, LushContext lushContext) {
+            return Mono.just( name );
+        }
+    }
+
+    private ProceedingJoinPoint pjp;
+
+    @Setup
+    public void setup() throws Exception {
+        Method method = Api.class.getMethod( "ping", String.class, LushTicket.class, LushContext.class );
+        Controller target = new Controller();
+
+        MethodSignature signature = (MethodSignature) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { MethodSignature.class },
+                (proxy, m, args) -> "getMethod".equals(m.getName()) ? method : method.getName()
+        );
+        pjp = (ProceedingJoinPoint) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { ProceedingJoinPoint.class },
+                (proxy, m, args) -> "getSignature".equals(m.getName()) ? signature : target
+        );
+    }
+
+    @Benchmark
+    public int resolveEachCall() throws Exception {
+        MethodSignature signature = (MethodSignature) pjp.getSignature();
+        Method method = signature.getMethod();
+        if( method.getDeclaringClass().isInterface() ) {
+            method = pjp.getTarget().getClass().getDeclaredMethod( signature.getName(), method.getParameterTypes() );
+        }
+
+        return argumentIndex( method, LushTicket.class ) + argumentIndex( method, LushContext.class );
+    }
+
+    @Benchmark
+    public InvocationPlan cachedPlan() throws Exception {
+        return InvocationPlan.of( pjp );
+    }
+
+    private static int argumentIndex(Method method, Class<?> type) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for( int i=0; i<parameterTypes.length; i++ ) {
+            if( parameterTypes[i] == type ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -16,6 +16,7 @@ import org.springframework.context.annotation.ComponentScan;
 @ComponentScan( {
         "com.px3j.lush.core",
         "com.px3j.lush.endpoint.http",
+        "com.px3j.lush.endpoint.rsocket",
 //        "com.px3j.lush.endpoint.jms",
         "com.px3j.lush.endpoint.websocket",
         "com.px3j.example"
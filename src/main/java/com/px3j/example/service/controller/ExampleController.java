@@ -6,19 +6,26 @@ import com.px3j.lush.core.exception.StackTraceToLoggerWriter;
 import com.px3j.lush.core.model.AnyModel;
 import com.px3j.lush.core.model.LushAdvice;
 import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.model.LushDeadline;
 import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushCacheable;
 import com.px3j.lush.endpoint.http.LushControllerMethod;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Example controller that shows how you can take advantage of Lush in your applications endpoints.
@@ -29,6 +36,9 @@ import java.util.Map;
 @RestController
 @RequestMapping("/lush/example")
 public class ExampleController {
+    private final AtomicInteger catSearches = new AtomicInteger();
+    private final AtomicInteger catAdoptions = new AtomicInteger();
+
     /**
      * Example controller endpoint that returns a String (wrapped by a Mono) as we are using Spring WebFlux.
      *
@@ -63,6 +73,103 @@ public class ExampleController {
         return Mono.just( AnyModel.from("message", String.format("Powered By Lush - hi: %s", ticket.getUsername())) );
     }
 
+    /**
+     * This endpoint illustrates how to require an authority.  Lush keeps the ticket's authorities as a bitset, using the
+     * lushAuthorities bean makes the check a constant time bit test no matter how many authorities the ticket has.
+     *
+     * @param ticket The ticket representing the user triggering this request.
+     * @return A Mono with a String containing the username from the LushTicket
+     */
+    @LushControllerMethod
+    @GetMapping("pingAdmin")
+    @PreAuthorize("@lushAuthorities.hasAuthority(authentication, 'admin')")
+    public Mono<AnyModel> pingAdmin( LushTicket ticket) {
+        return Mono.just( AnyModel.from("message", String.format("Powered By Lush - hi admin: %s", ticket.getUsername())) );
+    }
+
+    /**
+     * This endpoint illustrates that the ticket injected into a controller belongs to the request.  Changes made to it
+     * are never seen by another request, even one made with the same ticket.
+     *
+     * @param ticket The ticket representing the user triggering this request.
+     * @return A Mono with the number of visits the ticket has seen, always 1.
+     */
+    @LushControllerMethod
+    @GetMapping("visit")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> visit( LushTicket ticket ) {
+        Object visits = ticket.getExtras().getOrDefault( "visits", 0 );
+        ticket.putExtra( "visits", ((Number) visits).intValue() + 1 );
+        ticket.setUsername( "visited" );
+        return Mono.just( AnyModel.from("visits", ticket.getExtras().get("visits")) );
+    }
+
+    /**
+     * This endpoint illustrates a controller that blocks (ie: it uses JDBC).  With blocking = true Lush runs it off the
+     * event loop, on a virtual thread if the JVM supports them.
+     *
+     * @param ticket The ticket representing the user triggering this request.
+     * @param lushContext The LushContext for this request.
+     * @return A Mono with the username and the name of the thread that did the work.
+     */
+    @LushControllerMethod( blocking = true )
+    @GetMapping("blockingPing")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> blockingPing( LushTicket ticket, LushContext lushContext ) {
+        return Mono.fromCallable( () -> {
+            // Stands in for a blocking call
+            Thread.sleep( 10 );
+
+            lushContext.getAdvice().putExtra( "blocking", true );
+            return AnyModel.from(
+                    "message", String.format("Powered By Lush - hi: %s", ticket.getUsername()),
+                    "thread", Thread.currentThread().getName()
+            );
+        });
+    }
+
+    /**
+     * This endpoint illustrates a controller that blocks before it returns (ie: it wraps a legacy client).  With
+     * blocking = true Lush calls the method itself off the event loop, not only the subscription to its result.
+     * <br/><br/>
+     * It doesn't need @PreAuthorize, on a public path (see lush.security.public-paths) Lush only calls it for
+     * requests that have a ticket.
+     *
+     * @param ticket The ticket representing the user triggering this request.
+     * @param lushContext The LushContext for this request.
+     * @return A Mono with the username and the name of the thread that did the work.
+     */
+    @LushControllerMethod( blocking = true )
+    @GetMapping("legacyPing")
+    public Mono<AnyModel> legacyPing( LushTicket ticket, LushContext lushContext ) throws InterruptedException {
+        // Stands in for a blocking call
+        Thread.sleep( 10 );
+
+        lushContext.getAdvice().putExtra( "blocking", true );
+        return Mono.just( AnyModel.from(
+                "message", String.format("Powered By Lush - hi: %s", ticket.getUsername()),
+                "thread", Thread.currentThread().getName()
+        ));
+    }
+
+    /**
+     * This endpoint illustrates a timeout.  It takes longer than its timeout, so Lush cancels it and the advice returned
+     * to the caller has a status code of LushAdvice.STATUS_TIMEOUT.  The deadline is available from the Reactor context,
+     * use it to size timeouts of calls made by the endpoint.
+     *
+     * @param lushContext The LushContext for this request.
+     * @return A Mono that never gets to publish its message.
+     */
+    @LushControllerMethod( timeout = "200ms" )
+    @GetMapping("slowPing")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> slowPing( LushContext lushContext ) {
+        return LushDeadline.current()
+                .doOnNext( deadline -> lushContext.getAdvice().putExtra("remainingMillis", deadline.remaining().toMillis()) )
+                .then( Mono.delay(Duration.ofSeconds(5)) )
+                .map( l -> AnyModel.from("message", "Powered By Lush - too late") );
+    }
+
     /**
      * This endpoint illustrates how you can use a Flux to return a collection of data back to the caller.
      *
@@ -121,6 +228,94 @@ public class ExampleController {
                 ));
     }
 
+    /**
+     * This endpoint illustrates advice added while a Flux is streamed.  When requested as application/x-ndjson or
+     * text/event-stream the cats are written as they are published.  With lush.streaming.advice-trailer set to true
+     * the response ends with the final advice, so catsStreamed is available to the caller even though it is only known
+     * once the last cat has been written.
+     *
+     * @param lushContext The LushContext for this request.
+     * @return A Flux that publishes a list of Cats, one at a time.
+     */
+    @LushControllerMethod
+    @GetMapping("streamOfCats")
+    @PreAuthorize("isAuthenticated()")
+    public Flux<Cat> streamOfCats( LushContext lushContext ) {
+        AtomicInteger streamed = new AtomicInteger();
+
+        return Flux.just( new Cat("Gumball", "Tonkinese"), new Cat("Sneeb", "Tonkinese"), new Cat("Hobbes", "Domestic") )
+                .delayElements( Duration.ofMillis(50) )
+                .doOnNext( cat -> streamed.incrementAndGet() )
+                .doOnComplete( () -> lushContext.getAdvice().putExtra("catsStreamed", streamed.get()) );
+    }
+
+    /**
+     * This endpoint illustrates advice that is too large for a header (see lush.advice.header-budget).  The caller
+     * receives it in the body instead, wrapped around the result: {"x-lush-advice":{...},"body":{...}}
+     *
+     * @param lushContext The LushContext for this request.
+     * @return A simple key/value pair.
+     */
+    @LushControllerMethod
+    @GetMapping("largeAdvice")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> largeAdvice( LushContext lushContext ) {
+        lushContext.getAdvice().putExtra( "report", "x".repeat(10000) );
+        return Mono.just( AnyModel.from("message", "Powered By Lush") );
+    }
+
+    /**
+     * This endpoint illustrates a bulk export.  With batchSize set the cats are written 500 at a time rather than one
+     * at a time, which is much cheaper for a large number of small elements.  A batch that takes longer than a second
+     * to fill is written as it is.
+     *
+     * @param lushContext The LushContext for this request.
+     * @return A Flux that publishes a large number of Cats.
+     */
+    @LushControllerMethod( batchSize = 500, batchWindow = "1s" )
+    @GetMapping("exportCats")
+    @PreAuthorize("isAuthenticated()")
+    public Flux<Cat> exportCats( LushContext lushContext ) {
+        return Flux.range( 0, 10000 )
+                .map( i -> new Cat("Cat " + i, i % 2 == 0 ? "Tonkinese" : "Domestic") )
+                .doOnComplete( () -> lushContext.getAdvice().putExtra("catsExported", 10000) );
+    }
+
+    /**
+     * This endpoint illustrates how results can be cached with @LushCacheable.  Each user's results are cached per
+     * breed for a minute, identical requests made while the search is running wait for it rather than searching again.
+     * Callers served from the cache receive the advice of the original search with an extra of lush.cacheHit.
+     *
+     * @param lushContext The LushContext for this request.
+     * @param breed The breed to search for.
+     * @return A Flux that publishes the cats found.
+     */
+    @LushControllerMethod
+    @LushCacheable( ttl = "1m", key = LushCacheable.Key.ARGUMENTS_AND_USER )
+    @GetMapping("cachedCats")
+    @PreAuthorize("isAuthenticated()")
+    public Flux<Cat> cachedCats( LushContext lushContext, @RequestParam String breed ) {
+        lushContext.getAdvice().putExtra( "search", catSearches.incrementAndGet() );
+
+        return Flux.just( new Cat("Gumball", breed), new Cat("Sneeb", breed) )
+                .delayElements( Duration.ofMillis(100) );
+    }
+
+    /**
+     * This endpoint illustrates @LushCacheable on a POST.  The cache is keyed on the method's arguments, the request
+     * body included: adopting the same cat again is served from the cache, adopting another cat isn't.
+     *
+     * @param cat The cat to adopt.
+     * @return A Mono with the name of the cat and the number of the adoption.
+     */
+    @LushControllerMethod
+    @LushCacheable( ttl = "1m" )
+    @PostMapping("adoptCat")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> adoptCat( @RequestBody Cat cat ) {
+        return Mono.just( AnyModel.from("adopted", cat.getName(), "adoption", catAdoptions.incrementAndGet()) );
+    }
+
     /**
      * This endpoint illustrates how an endpoint may handle checked exceptions on its own.
      *
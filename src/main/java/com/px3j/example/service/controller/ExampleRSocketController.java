@@ -0,0 +1,70 @@
+package com.px3j.example.service.controller;
+
+import com.px3j.example.service.model.Cat;
+import com.px3j.lush.core.model.AnyModel;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushControllerMethod;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Example controller that shows Lush endpoints served over RSocket.  The caller's ticket is sent once, when the
+ * connection is set up, and the advice is returned in the metadata of the responses.
+ *
+ *  @author Paul Parrone
+ */
+@Slf4j
+@Controller
+public class ExampleRSocketController {
+    /**
+     * Request-response endpoint, the ticket is injected just as it is for HTTP endpoints.
+     *
+     * @param ticket The ticket of the connection.
+     * @param lushContext The LushContext for this request.
+     * @return A Mono with a message containing the username from the LushTicket
+     */
+    @LushControllerMethod
+    @MessageMapping("lush.example.pingUser")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> pingUser( LushTicket ticket, LushContext lushContext ) {
+        lushContext.getAdvice().putExtra( "transport", "rsocket" );
+        return Mono.just( AnyModel.from("message", String.format("hi: %s", ticket.getUsername())) );
+    }
+
+    /**
+     * Request-stream endpoint, the cats are sent as the requester asks for them.  The advice comes with the last cat.
+     *
+     * @param lushContext The LushContext for this request.
+     * @return A Flux that publishes a list of Cats.
+     */
+    @LushControllerMethod
+    @MessageMapping("lush.example.streamOfCats")
+    @PreAuthorize("isAuthenticated()")
+    public Flux<Cat> streamOfCats( LushContext lushContext ) {
+        AtomicInteger streamed = new AtomicInteger();
+
+        return Flux.range( 0, 100 )
+                .map( i -> new Cat("Cat " + i, "Tonkinese") )
+                .doOnNext( cat -> streamed.incrementAndGet() )
+                .doOnComplete( () -> lushContext.getAdvice().putExtra("catsStreamed", streamed.get()) );
+    }
+
+    /**
+     * Request-response endpoint that throws an unexpected exception, the caller receives the Lush advice for it.
+     *
+     * @return Never returns.
+     */
+    @LushControllerMethod
+    @MessageMapping("lush.example.uae")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<AnyModel> uae() {
+        throw new IllegalStateException( "Example of an unexpected exception over RSocket" );
+    }
+}
@@ -0,0 +1,285 @@
+package com.px3j.lush.core.exception;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports unexpected exceptions to the log without letting a burst of failures slow requests down.
+ * <br/><br/>
+ * Each exception is fingerprinted (exception types and stack frames, including causes).  The full stack trace is
+ * logged the first time a fingerprint is seen in a window, repeats within the window are only counted and the count
+ * is logged once the window ends.  Logging is done by a background thread, reports are handed over through a bounded
+ * queue - if the queue is full the report is dropped and counted.  Stack traces are written with
+ * StackTraceToLoggerWriter so Spring/Reactor frames are filtered as before, and with the MDC of the reporting thread so
+ * each line carries the request's trace id and username.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.exception-reporter.window           - how long repeats of an exception are suppressed (default: 1m)
+ *  lush.exception-reporter.queue-capacity   - maximum number of reports waiting to be logged (default: 1024)
+ *  lush.exception-reporter.max-fingerprints - maximum number of fingerprints tracked, exceptions beyond this are
+ *                                             always logged in full (default: 10000)
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+public class ExceptionReporter implements MeterBinder, DisposableBean {
+    private static final int MAX_CAUSES = 8;
+
+    private final long windowNanos;
+    private final int maxFingerprints;
+    private final BlockingQueue<Report> queue;
+    private final Map<Long,Window> windows = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final AtomicLong reported = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public ExceptionReporter(
+            @Value("${lush.exception-reporter.window:1m}") final Duration window,
+            @Value("${lush.exception-reporter.queue-capacity:1024}") final int queueCapacity,
+            @Value("${lush.exception-reporter.max-fingerprints:10000}") final int maxFingerprints
+    ) {
+        this.windowNanos = window.toNanos();
+        this.maxFingerprints = maxFingerprints;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.worker = new Thread( this::drain, "lush-exception-reporter" );
+        this.worker.setDaemon(true);
+        this.worker.start();
+
+        log.debug( String.format("Lush :: ExceptionReporter window: %s, queue-capacity: %d", window, queueCapacity) );
+    }
+
+    /**
+     * Report an exception, its stack trace will be written to the logger unless it is a repeat within the current
+     * window.  Never blocks.
+     *
+     * @param logger The logger to write the stack trace to.
+     * @param throwable The exception to report.
+     */
+    public void report(final Logger logger, final Throwable throwable) {
+        long fingerprint = fingerprint(throwable);
+        long now = System.nanoTime();
+
+        Window window = windows.get(fingerprint);
+        if( window == null ) {
+            if( windows.size() >= maxFingerprints ) {
+                enqueue( new Report(logger, throwable, 0) );
+                return;
+            }
+            window = windows.computeIfAbsent( fingerprint, f -> new Window(logger, describe(throwable), now - windowNanos) );
+        }
+
+        if( window.tryStart(now, windowNanos) ) {
+            enqueue( new Report(logger, throwable, window.repeats.getAndSet(0)) );
+        }
+        else {
+            window.repeats.incrementAndGet();
+            suppressed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder( "lush.exceptions.reported", reported, AtomicLong::get )
+                .description( "Exceptions logged with a full stack trace" )
+                .register( registry );
+        FunctionCounter.builder( "lush.exceptions.suppressed", suppressed, AtomicLong::get )
+                .description( "Repeated exceptions only counted, not logged" )
+                .register( registry );
+        FunctionCounter.builder( "lush.exceptions.dropped", dropped, AtomicLong::get )
+                .description( "Exception reports dropped because the queue was full" )
+                .register( registry );
+        Gauge.builder( "lush.exceptions.queue", queue, BlockingQueue::size )
+                .description( "Exception reports waiting to be logged" )
+                .register( registry );
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join( TimeUnit.SECONDS.toMillis(5) );
+    }
+
+    private void enqueue(Report report) {
+        if( !queue.offer(report) ) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Body of the background thread, logs reports as they arrive and logs repeat counts of windows that have ended.
+     */
+    private void drain() {
+        long nextSweep = System.nanoTime() + Math.min(windowNanos, TimeUnit.SECONDS.toNanos(1));
+
+        while( running || !queue.isEmpty() ) {
+            try {
+                Report report = queue.poll( 1, TimeUnit.SECONDS );
+                if( report != null ) {
+                    write( report );
+                }
+
+                if( System.nanoTime() - nextSweep >= 0 ) {
+                    sweep();
+                    nextSweep = System.nanoTime() + Math.min(windowNanos, TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            catch (InterruptedException e) {
+                if( !running ) {
+                    // Log whatever is left then stop.
+                    Report report;
+                    while( (report = queue.poll()) != null ) {
+                        write( report );
+                    }
+                    return;
+                }
+            }
+            catch (RuntimeException e) {
+                log.warn( "Unable to report exception", e );
+            }
+        }
+    }
+
+    private void write(Report report) {
+        Map<String,String> previous = MDC.getCopyOfContextMap();
+        try {
+            if( report.mdc != null ) {
+                MDC.setContextMap( report.mdc );
+            }
+            else {
+                MDC.clear();
+            }
+
+            if( report.repeats > 0 ) {
+                report.logger.error( String.format("   (repeated %d times since last reported)", report.repeats) );
+            }
+            report.throwable.printStackTrace( new StackTraceToLoggerWriter(report.logger) );
+            reported.incrementAndGet();
+        }
+        finally {
+            if( previous != null ) {
+                MDC.setContextMap( previous );
+            }
+            else {
+                MDC.clear();
+            }
+        }
+    }
+
+    /**
+     * Log the repeat count of windows that have ended and forget fingerprints that haven't been seen for a window.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+
+        Iterator<Window> it = windows.values().iterator();
+        while( it.hasNext() ) {
+            Window window = it.next();
+            if( now - window.start.get() < windowNanos ) {
+                continue;
+            }
+
+            long repeats = window.repeats.getAndSet(0);
+            if( repeats > 0 ) {
+                window.logger.error( String.format("   %s repeated %d times", window.description, repeats) );
+            }
+            else {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Fingerprint of the exception, its causes and their stack frames.  Messages are left out as they often contain
+     * request specific values.
+     */
+    private static long fingerprint(Throwable throwable) {
+        long hash = 1125899906842597L;
+
+        int causes = 0;
+        for( Throwable t = throwable; t != null && causes < MAX_CAUSES; t = t.getCause(), causes++ ) {
+            hash = 31 * hash + t.getClass().getName().hashCode();
+            for( StackTraceElement frame : t.getStackTrace() ) {
+                hash = 31 * hash + frame.getClassName().hashCode();
+                hash = 31 * hash + frame.getMethodName().hashCode();
+                hash = 31 * hash + frame.getLineNumber();
+            }
+        }
+
+        return hash;
+    }
+
+    private static String describe(Throwable throwable) {
+        StackTraceElement[] frames = throwable.getStackTrace();
+        return frames.length == 0
+                ? throwable.getClass().getName()
+                : throwable.getClass().getName() + " at " + frames[0];
+    }
+
+    /**
+     * Repeat tracking for a single fingerprint.
+     */
+    private static final class Window {
+        private final Logger logger;
+        private final String description;
+        private final AtomicLong start;
+        private final AtomicLong repeats = new AtomicLong();
+
+        private Window(Logger logger, String description, long start) {
+            this.logger = logger;
+            this.description = description;
+            this.start = new AtomicLong(start);
+        }
+
+        /**
+         * @return true if the window had ended and the caller has started a new one.
+         */
+        private boolean tryStart(long now, long windowNanos) {
+            long current = start.get();
+            return now - current >= windowNanos && start.compareAndSet(current, now);
+        }
+    }
+
+    /**
+     * A stack trace waiting to be logged.
+     */
+    private static final class Report {
+        private final Logger logger;
+        private final Throwable throwable;
+        private final long repeats;
+        private final Map<String,String> mdc;
+
+        private Report(Logger logger, Throwable throwable, long repeats) {
+            this.logger = logger;
+            this.throwable = throwable;
+            this.repeats = repeats;
+            this.mdc = MDC.getCopyOfContextMap();
+        }
+    }
+}
@@ -11,6 +11,8 @@ import java.io.StringWriter;
  *
  * Use it like this:<br><br>
  *         exception.printStackTrace( new StackTraceToLoggerWriter(logger) );
+ * <br><br>
+ * Each line is logged synchronously, for exceptions that may occur on every request use ExceptionReporter instead.
  *
  * @author Paul P. Parrone Jr.
  */
@@ -33,8 +35,6 @@ public class StackTraceToLoggerWriter extends PrintWriter {
 
     @Override
     public void print(String s) {
-        StringBuffer lMsg = new StringBuffer( "   " );
-
         if( s.contains("org.springframework") || s.contains("reactor.core") ) {
             noiseCounter++;
             if( noiseCounter >= noiseMax) {
@@ -43,8 +43,7 @@ public class StackTraceToLoggerWriter extends PrintWriter {
                 }
             }
             else {
-                lMsg.append( s );
-                _logger.error( lMsg.toString() );
+                _logger.error( "   " + s );
             }
 
             // Reset the counters...
@@ -54,8 +53,7 @@ public class StackTraceToLoggerWriter extends PrintWriter {
         }
         else {
             skipCounter = noiseCounter = 0;
-            lMsg.append( s );
-            _logger.error( lMsg.toString() );
+            _logger.error( "   " + s );
         }
     }
 
@@ -66,9 +64,7 @@ public class StackTraceToLoggerWriter extends PrintWriter {
      */
     @Override
     public void println( char x[] ) {
-        StringBuffer lMsg = new StringBuffer( "    " );
-        lMsg.append( x );
-        _logger.error( lMsg.toString() );
+        _logger.error( "    " + String.valueOf(x) );
     }
 
 
@@ -80,9 +76,7 @@ public class StackTraceToLoggerWriter extends PrintWriter {
      */
     @Override
     public void println( String x ) {
-        StringBuffer lMsg = new StringBuffer( "    " );
-        lMsg.append( x );
-        _logger.error( lMsg.toString() );
+        _logger.error( "    " + x );
     }
 
     private final Logger _logger;
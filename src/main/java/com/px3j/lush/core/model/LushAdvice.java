@@ -3,23 +3,44 @@ package com.px3j.lush.core.model;
 import lombok.*;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Represents the advice that is generated from the invocation of an endpoint.
+ * <br/><br/>
+ * Most advice never has warnings or extras, their collections are only created when the first one is added.  The trace
+ * id may be deferred (see deferTraceId), it is then only built when first read.
+ * <br/><br/>
+ * Warnings and extras may be added from several threads at once (ie: by calls a controller fans out, see
+ * LushExchangeFilter), the methods that change them synchronize on the advice, as does building a deferred trace id.
+ * getWarnings and getExtras return a copy taken while synchronized, so they can be iterated while warnings and extras
+ * are still being added.
  *
  * @author Paul Parrone
  */
 @NoArgsConstructor
 @ToString
 public class LushAdvice {
-    @Getter @Setter
-    private String traceId = "";
+    /** Status code of a request whose Lush controller method threw an unexpected exception. */
+    public static final int STATUS_UNEXPECTED_EXCEPTION = -99;
+    /** Status code of a request whose Lush controller method didn't complete before its deadline. */
+    public static final int STATUS_TIMEOUT = -98;
+    /** Status code of a request rejected because its Lush controller method was at its concurrency limit. */
+    public static final int STATUS_OVERLOADED = -97;
+
+    // Collections that grew larger than this are dropped by reset rather than cleared, a cleared HashMap or ArrayList
+    // keeps its capacity.
+    private static final int MAX_RETAINED_SIZE = 16;
+
+    private volatile String traceId = "";
+    @ToString.Exclude
+    private transient volatile Supplier<String> deferredTraceId;
     @Getter @Setter
     private int statusCode = 0;
 
-    private List<LushWarning> warnings = new ArrayList<>();
+    private volatile List<LushWarning> warnings;
 
-    private final Map<String,Object> extras = new HashMap<>();
+    private volatile Map<String,Object> extras;
 
     public LushAdvice(String traceId, int statusCode) {
         this.traceId = traceId;
@@ -30,12 +51,92 @@ public class LushAdvice {
         this( traceId, 0 );
     }
 
+    public String getTraceId() {
+        if( deferredTraceId != null ) {
+            resolveTraceId();
+        }
+        return traceId;
+    }
+
+    public synchronized void setTraceId(String traceId) {
+        this.deferredTraceId = null;
+        this.traceId = traceId;
+    }
+
+    /**
+     * Set the trace id to one that is only built when it is first read.
+     *
+     * @param traceId Supplies the trace id, called at most once unless it is shared.
+     */
+    public synchronized void deferTraceId(Supplier<String> traceId) {
+        this.traceId = null;
+        this.deferredTraceId = traceId;
+    }
+
+    /**
+     * Copy the status code, extras and warnings of another advice into this one.  The trace id is left alone.
+     *
+     * @param other The advice to copy from.
+     */
+    public void mergeFrom(LushAdvice other) {
+        // Copy other's collections before locking this advice, so two advice merged into each other can't deadlock.
+        int statusCode = other.getStatusCode();
+        Map<String,Object> otherExtras = other.getExtras();
+        Collection<LushWarning> otherWarnings = other.getWarnings();
+
+        synchronized( this ) {
+            this.statusCode = statusCode;
+            if( !otherExtras.isEmpty() ) {
+                extras().putAll( otherExtras );
+            }
+            if( !otherWarnings.isEmpty() ) {
+                warnings().addAll( otherWarnings );
+            }
+        }
+    }
+
+    /**
+     * Return this advice to its initial state so it can be used for another request, any warnings and extras are
+     * removed.  Their collections are kept for the next request unless they grew large.
+     *
+     * @param traceId The trace id of the request.
+     * @param statusCode The initial status code.
+     */
+    public synchronized void reset(String traceId, int statusCode) {
+        setTraceId( traceId );
+        this.statusCode = statusCode;
+        if( extras != null ) {
+            if( extras.size() > MAX_RETAINED_SIZE ) {
+                extras = null;
+            }
+            else {
+                extras.clear();
+            }
+        }
+        if( warnings != null ) {
+            if( warnings.size() > MAX_RETAINED_SIZE ) {
+                warnings = null;
+            }
+            else {
+                warnings.clear();
+            }
+        }
+    }
+
     /**
      * Get any extras that have been added to this advice.
-     * @return Map of extras, could be empty.
+     * @return Copy of the extras, could be empty.
      */
-    public Map<String, Object> getExtras() {
-        return Collections.unmodifiableMap(extras);
+    public synchronized Map<String, Object> getExtras() {
+        return hasExtras() ? Collections.unmodifiableMap(new HashMap<>(extras)) : Collections.emptyMap();
+    }
+
+    /**
+     * @return true if any extras have been added to this advice.
+     */
+    public synchronized boolean hasExtras() {
+        Map<String,Object> extras = this.extras;
+        return extras != null && !extras.isEmpty();
     }
 
     /**
@@ -44,17 +145,25 @@ public class LushAdvice {
      * @param key key.
      * @param value value to send back.
      */
-    public void putExtra(final String key, final Object value ) {
-        this.extras.put( key, value );
+    public synchronized void putExtra(final String key, final Object value ) {
+        extras().put( key, value );
     }
 
     /**
      * Get any warnings contained in this advice.
      *
-     * @return The detail of the result.
+     * @return Copy of the warnings, could be empty.
      */
-    public Collection<LushWarning> getWarnings() {
-        return Collections.unmodifiableList(warnings);
+    public synchronized Collection<LushWarning> getWarnings() {
+        return hasWarnings() ? Collections.unmodifiableList(new ArrayList<>(warnings)) : Collections.emptyList();
+    }
+
+    /**
+     * @return true if any warnings have been added to this advice.
+     */
+    public synchronized boolean hasWarnings() {
+        List<LushWarning> warnings = this.warnings;
+        return warnings != null && !warnings.isEmpty();
     }
 
     /**
@@ -62,8 +171,31 @@ public class LushAdvice {
      *
      * @param warning A ResultDetail instance to add to this advice.
      */
-    public void addWarning(LushWarning warning) {
-        this.warnings.add(warning);
+    public synchronized void addWarning(LushWarning warning) {
+        warnings().add(warning);
+    }
+
+    private synchronized void resolveTraceId() {
+        Supplier<String> deferred = deferredTraceId;
+        if( deferred != null ) {
+            traceId = deferred.get();
+            deferredTraceId = null;
+        }
+    }
+
+    // Only called while synchronized on the advice.
+    private Map<String,Object> extras() {
+        if( extras == null ) {
+            extras = new HashMap<>();
+        }
+        return extras;
+    }
+
+    private List<LushWarning> warnings() {
+        if( warnings == null ) {
+            warnings = new ArrayList<>();
+        }
+        return warnings;
     }
 
     @Data
@@ -0,0 +1,451 @@
+package com.px3j.lush.core.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.px3j.lush.core.exception.LushException;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact binary (CBOR, RFC 8949) encoding of a LushAdvice, used for the x-lush-advice header when a caller asks for it
+ * with <b>x-lush-advice-encoding: cbor</b>.  The header value is the Base64 of the encoding.  The advice is a map with
+ * the same keys as its JSON form:
+ * <pre>
+ *  {"traceId": text, "statusCode": int, "warnings": [{"code": int, "detail": map}], "extras": map}
+ * </pre>
+ * Extras may be strings, numbers, booleans, maps and lists, any other value is encoded as the JSON tree Gson would
+ * produce for it.  When decoded, integers are Longs and floating point numbers Doubles.
+ * <br/><br/>
+ * Only definite lengths are written and read.  Input that isn't an advice written by encode (ie: truncated, a length
+ * past the end of the input, a value of the wrong type or a warning without a code) is rejected with a LushException.
+ *
+ * @author Paul Parrone
+ */
+public final class LushAdviceCbor {
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int DOUBLE = 0xFB;
+
+    private static final Gson gson = new Gson();
+
+    private LushAdviceCbor() {
+    }
+
+    /**
+     * @param advice The advice to encode.
+     * @return The advice as Base64 encoded CBOR.
+     */
+    public static String encodeToString(LushAdvice advice) {
+        return Base64.getEncoder().encodeToString( encode(advice) );
+    }
+
+    /**
+     * @param value Base64 encoded CBOR, ie: the value of the x-lush-advice header.
+     * @return The decoded advice.
+     */
+    public static LushAdvice decodeFromString(String value) {
+        try {
+            return decode( Base64.getDecoder().decode(value) );
+        }
+        catch (IllegalArgumentException e) {
+            throw new LushException( "Malformed CBOR Lush advice", e );
+        }
+    }
+
+    /**
+     * @param advice The advice to encode.
+     * @return The advice as CBOR.
+     */
+    public static byte[] encode(LushAdvice advice) {
+        Writer out = new Writer();
+
+        int entries = advice.getTraceId() != null ? 4 : 3;
+        out.header( MAJOR_MAP, entries );
+        if( advice.getTraceId() != null ) {
+            out.text( "traceId" );
+            out.text( advice.getTraceId() );
+        }
+        out.text( "statusCode" );
+        out.integer( advice.getStatusCode() );
+
+        out.text( "warnings" );
+        Collection<LushAdvice.LushWarning> warnings = advice.getWarnings();
+        out.header( MAJOR_ARRAY, warnings.size() );
+        for( LushAdvice.LushWarning warning : warnings ) {
+            out.header( MAJOR_MAP, 2 );
+            out.text( "code" );
+            out.integer( warning.getCode() );
+            out.text( "detail" );
+            out.value( warning.getDetail() );
+        }
+
+        out.text( "extras" );
+        out.value( advice.getExtras() );
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @param bytes CBOR written by encode.
+     * @return The decoded advice.
+     * @throws LushException If the bytes are not a CBOR Lush advice.
+     */
+    @SuppressWarnings("unchecked")
+    public static LushAdvice decode(byte[] bytes) {
+        if( bytes == null ) {
+            throw new LushException( "Malformed CBOR Lush advice, no input" );
+        }
+
+        try {
+            Reader reader = new Reader(bytes);
+            Map<String,Object> map = as( reader.value(), Map.class, "advice" );
+            if( reader.remaining() != 0 ) {
+                throw new LushException( "Malformed CBOR Lush advice, " + reader.remaining() + " bytes after the advice" );
+            }
+
+            LushAdvice advice = new LushAdvice();
+            advice.setTraceId( as(map.get("traceId"), String.class, "traceId") );
+            Number statusCode = as( map.get("statusCode"), Number.class, "statusCode" );
+            if( statusCode != null ) {
+                advice.setStatusCode( statusCode.intValue() );
+            }
+
+            List<Object> warnings = as( map.get("warnings"), List.class, "warnings" );
+            if( warnings != null ) {
+                for( Object w : warnings ) {
+                    Map<String,Object> warning = as( w, Map.class, "warning" );
+                    if( warning == null ) {
+                        throw new LushException( "Malformed CBOR Lush advice, null warning" );
+                    }
+
+                    Number code = as( warning.get("code"), Number.class, "warning code" );
+                    if( code == null ) {
+                        throw new LushException( "Malformed CBOR Lush advice, warning without a code" );
+                    }
+
+                    Map<String,Object> detail = as( warning.get("detail"), Map.class, "warning detail" );
+                    advice.addWarning( new LushAdvice.LushWarning(code.intValue(), detail != null ? detail : new HashMap<>()) );
+                }
+            }
+
+            Map<String,Object> extras = as( map.get("extras"), Map.class, "extras" );
+            if( extras != null ) {
+                extras.forEach( advice::putExtra );
+            }
+
+            return advice;
+        }
+        catch (LushException e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            throw new LushException( "Malformed CBOR Lush advice", e );
+        }
+    }
+
+    /**
+     * @return The value as the expected type, or null if it is null.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T as(Object value, Class<?> type, String what) {
+        if( value != null && !type.isInstance(value) ) {
+            throw new LushException(
+                    "Malformed CBOR Lush advice, " + what + " is a " + value.getClass().getSimpleName()
+                            + " not a " + type.getSimpleName()
+            );
+        }
+        return (T) value;
+    }
+
+    private static final class Writer {
+        private byte[] bytes = new byte[128];
+        private int length;
+
+        void header(int major, long value) {
+            int type = major << 5;
+            if( value < 24 ) {
+                write( type | (int) value );
+            }
+            else if( value <= 0xFF ) {
+                write( type | 24 );
+                write( (int) value );
+            }
+            else if( value <= 0xFFFF ) {
+                write( type | 25 );
+                writeBigEndian( value, 2 );
+            }
+            else if( value <= 0xFFFFFFFFL ) {
+                write( type | 26 );
+                writeBigEndian( value, 4 );
+            }
+            else {
+                write( type | 27 );
+                writeBigEndian( value, 8 );
+            }
+        }
+
+        void integer(long value) {
+            if( value >= 0 ) {
+                header( MAJOR_UNSIGNED, value );
+            }
+            else {
+                header( MAJOR_NEGATIVE, -1 - value );
+            }
+        }
+
+        void text(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            header( MAJOR_TEXT, utf8.length );
+            ensure( utf8.length );
+            System.arraycopy( utf8, 0, bytes, length, utf8.length );
+            length += utf8.length;
+        }
+
+        void value(Object value) {
+            if( value == null ) {
+                write( NULL );
+            }
+            else if( value instanceof Boolean ) {
+                write( (Boolean) value ? TRUE : FALSE );
+            }
+            else if( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+                integer( ((Number) value).longValue() );
+            }
+            else if( value instanceof Double || value instanceof Float ) {
+                write( DOUBLE );
+                writeBigEndian( Double.doubleToRawLongBits(((Number) value).doubleValue()), 8 );
+            }
+            else if( value instanceof CharSequence || value instanceof Character || value instanceof Enum ) {
+                text( value.toString() );
+            }
+            else if( value instanceof Map ) {
+                // Like Gson, entries with a null value are left out.
+                Map<?,?> map = (Map<?,?>) value;
+                header( MAJOR_MAP, map.values().stream().filter(Objects::nonNull).count() );
+                map.forEach( (k, v) -> {
+                    if( v != null ) {
+                        text( String.valueOf(k) );
+                        value( v );
+                    }
+                });
+            }
+            else if( value instanceof Collection ) {
+                Collection<?> collection = (Collection<?>) value;
+                header( MAJOR_ARRAY, collection.size() );
+                collection.forEach( this::value );
+            }
+            else if( value.getClass().isArray() ) {
+                int n = Array.getLength(value);
+                header( MAJOR_ARRAY, n );
+                for( int i=0; i<n; i++ ) {
+                    value( Array.get(value, i) );
+                }
+            }
+            else {
+                json( gson.toJsonTree(value) );
+            }
+        }
+
+        private void json(JsonElement element) {
+            if( element == null || element.isJsonNull() ) {
+                write( NULL );
+            }
+            else if( element.isJsonPrimitive() ) {
+                JsonPrimitive primitive = element.getAsJsonPrimitive();
+                if( primitive.isBoolean() ) {
+                    write( primitive.getAsBoolean() ? TRUE : FALSE );
+                }
+                else if( primitive.isNumber() ) {
+                    double d = primitive.getAsDouble();
+                    if( d == Math.rint(d) && Math.abs(d) < 1L << 53 ) {
+                        integer( (long) d );
+                    }
+                    else {
+                        value( d );
+                    }
+                }
+                else {
+                    text( primitive.getAsString() );
+                }
+            }
+            else if( element.isJsonArray() ) {
+                header( MAJOR_ARRAY, element.getAsJsonArray().size() );
+                element.getAsJsonArray().forEach( this::json );
+            }
+            else {
+                JsonObject object = element.getAsJsonObject();
+                header( MAJOR_MAP, object.size() );
+                object.entrySet().forEach( e -> {
+                    text( e.getKey() );
+                    json( e.getValue() );
+                });
+            }
+        }
+
+        private void write(int b) {
+            ensure( 1 );
+            bytes[length++] = (byte) b;
+        }
+
+        private void writeBigEndian(long value, int n) {
+            ensure( n );
+            for( int shift = (n - 1) * 8; shift >= 0; shift -= 8 ) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void ensure(int extra) {
+            if( length + extra > bytes.length ) {
+                bytes = Arrays.copyOf( bytes, Math.max(bytes.length * 2, length + extra) );
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf( bytes, length );
+        }
+    }
+
+    private static final class Reader {
+        // Deeper than any advice needs, keeps malicious nesting from exhausting the stack.
+        private static final int MAX_DEPTH = 64;
+
+        private final byte[] bytes;
+        private int position;
+        private int depth;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int remaining() {
+            return bytes.length - position;
+        }
+
+        Object value() {
+            int initial = readByte();
+            int major = initial >>> 5;
+            int info = initial & 0x1F;
+
+            if( major == MAJOR_SIMPLE ) {
+                switch (initial) {
+                    case FALSE:
+                        return Boolean.FALSE;
+                    case TRUE:
+                        return Boolean.TRUE;
+                    case NULL:
+                        return null;
+                    case DOUBLE:
+                        return Double.longBitsToDouble( readBigEndian(8) );
+                    default:
+                        throw new LushException( "Unsupported CBOR value in Lush advice: " + initial );
+                }
+            }
+
+            long argument = argument(info);
+            switch (major) {
+                case MAJOR_UNSIGNED:
+                    return argument;
+                case MAJOR_NEGATIVE:
+                    return -1 - argument;
+                case MAJOR_TEXT:
+                    int length = (int) require( argument, 1 );
+                    String s = new String( bytes, position, length, StandardCharsets.UTF_8 );
+                    position += length;
+                    return s;
+                case MAJOR_ARRAY:
+                    enter();
+                    // Each element takes at least a byte, so a length past the end of the input is rejected before
+                    // anything is allocated for it.
+                    List<Object> list = new ArrayList<>( (int) require(argument, 1) );
+                    for( long i=0; i<argument; i++ ) {
+                        list.add( value() );
+                    }
+                    depth--;
+                    return list;
+                case MAJOR_MAP:
+                    enter();
+                    require( argument, 2 );
+                    Map<String,Object> map = new HashMap<>();
+                    for( long i=0; i<argument; i++ ) {
+                        Object key = value();
+                        if( !(key instanceof String) ) {
+                            throw new LushException( "Malformed CBOR Lush advice, map key is not text" );
+                        }
+                        map.put( (String) key, value() );
+                    }
+                    depth--;
+                    return map;
+                default:
+                    throw new LushException( "Unsupported CBOR type in Lush advice: " + major );
+            }
+        }
+
+        private long argument(int info) {
+            if( info < 24 ) {
+                return info;
+            }
+            switch (info) {
+                case 24:
+                    return readBigEndian(1);
+                case 25:
+                    return readBigEndian(2);
+                case 26:
+                    return readBigEndian(4);
+                case 27:
+                    return readBigEndian(8);
+                default:
+                    throw new LushException( "Indefinite lengths are not supported in CBOR Lush advice" );
+            }
+        }
+
+        private void enter() {
+            if( ++depth > MAX_DEPTH ) {
+                throw new LushException( "Malformed CBOR Lush advice, nested deeper than " + MAX_DEPTH );
+            }
+        }
+
+        /**
+         * Check that count items of at least size bytes each fit in what is left of the input.
+         */
+        private long require(long count, int size) {
+            if( count < 0 || count > remaining() / size ) {
+                throw new LushException( "Malformed CBOR Lush advice, length " + count + " is past the end of the input" );
+            }
+            return count;
+        }
+
+        private int readByte() {
+            if( position >= bytes.length ) {
+                throw new LushException( "Malformed CBOR Lush advice, truncated" );
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readBigEndian(int n) {
+            long value = 0;
+            for( int i=0; i<n; i++ ) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.px3j.lush.core.model;
 
 import lombok.*;
 
+import java.util.function.Supplier;
+
 /**
  * Context that will be injected to a Controller method if listed as a parameter.  Provides access to an ResponseAdvice
  * instance to be used to convey outcome to the caller (usually a UI).
  *
- * The tradeId is a unique key that can be used to trace a request throughout the system.
+ * The tradeId is a unique key that can be used to trace a request throughout the system.  It may be deferred (see
+ * deferTraceId), it is then only built when first read.  A pooled context (see LushContextPool) is read by the threads
+ * of several requests in turn, so the trace id is volatile and building it synchronizes on the context.
  *
  * @author Paul Parrone
  */
@@ -14,5 +18,37 @@ import lombok.*;
 @Data
 public class LushContext {
     private LushAdvice advice;
-    private String traceId;
+    private volatile String traceId;
+    @ToString.Exclude @EqualsAndHashCode.Exclude
+    private transient volatile Supplier<String> deferredTraceId;
+
+    public String getTraceId() {
+        if( deferredTraceId != null ) {
+            resolveTraceId();
+        }
+        return traceId;
+    }
+
+    public synchronized void setTraceId(String traceId) {
+        this.deferredTraceId = null;
+        this.traceId = traceId;
+    }
+
+    /**
+     * Set the trace id to one that is only built when it is first read.
+     *
+     * @param traceId Supplies the trace id, called at most once unless it is shared.
+     */
+    public synchronized void deferTraceId(Supplier<String> traceId) {
+        this.traceId = null;
+        this.deferredTraceId = traceId;
+    }
+
+    private synchronized void resolveTraceId() {
+        Supplier<String> deferred = deferredTraceId;
+        if( deferred != null ) {
+            traceId = deferred.get();
+            deferredTraceId = null;
+        }
+    }
 }
\ No newline at end of file
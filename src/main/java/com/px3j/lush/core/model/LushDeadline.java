@@ -0,0 +1,87 @@
+package com.px3j.lush.core.model;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The point in time by which a request must complete.  Lush puts the deadline of a LushControllerMethod in the Reactor
+ * context so code called by the controller can size its own timeouts, ie:
+ * <pre>
+ *     return LushDeadline.current()
+ *             .map( LushDeadline::remaining )
+ *             .defaultIfEmpty( Duration.ofSeconds(5) )
+ *             .flatMap( timeout -> webClient.get().uri(...).retrieve().bodyToMono(Cat.class).timeout(timeout) );
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+public final class LushDeadline {
+    private static final String KEY = LushDeadline.class.getName();
+
+    private final long deadlineNanos;
+
+    private LushDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param timeout Time from now.
+     * @return A deadline that is timeout from now.
+     */
+    public static LushDeadline after(Duration timeout) {
+        return new LushDeadline( System.nanoTime() + timeout.toNanos() );
+    }
+
+    /**
+     * @return The deadline of the current request, empty if it doesn't have one.
+     */
+    public static Mono<LushDeadline> current() {
+        return Mono.deferContextual( ctx -> Mono.justOrEmpty(from(ctx)) );
+    }
+
+    /**
+     * @param ctx The Reactor context.
+     * @return The deadline held in the context, if there is one.
+     */
+    public static Optional<LushDeadline> from(ContextView ctx) {
+        return ctx.getOrEmpty(KEY);
+    }
+
+    /**
+     * Put this deadline in the context, unless the context already holds an earlier one.
+     *
+     * @param ctx The Reactor context.
+     * @return The updated context.
+     */
+    public Context writeTo(Context ctx) {
+        Optional<LushDeadline> existing = from(ctx);
+        if( existing.isPresent() && existing.get().deadlineNanos - deadlineNanos <= 0 ) {
+            return ctx;
+        }
+        return ctx.put( KEY, this );
+    }
+
+    /**
+     * @return Time left before the deadline, zero if it has passed.
+     */
+    public Duration remaining() {
+        long remaining = deadlineNanos - System.nanoTime();
+        return remaining > 0 ? Duration.ofNanos(remaining) : Duration.ZERO;
+    }
+
+    /**
+     * @return true if the deadline has passed.
+     */
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "LushDeadline(remaining=" + remaining() + ")";
+    }
+}
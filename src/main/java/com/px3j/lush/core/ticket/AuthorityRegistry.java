@@ -0,0 +1,81 @@
+package com.px3j.lush.core.ticket;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide registry of authorities.  Each distinct authority is given a small index and a single shared
+ * SimpleGrantedAuthority instance.  Tickets use the index to keep their authorities as a bitset so authority checks are
+ * a bit test rather than a scan of the ticket's authorities.
+ * <br/><br/>
+ * The registry is bounded, once MAX_AUTHORITIES have been registered any new authority is not interned (it has no
+ * index) and checks for it fall back to scanning the ticket's authorities.
+ *
+ * @author Paul Parrone
+ */
+public final class AuthorityRegistry {
+    public static final int MAX_AUTHORITIES = 8192;
+
+    private static final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
+    private AuthorityRegistry() {
+    }
+
+    /**
+     * Return the shared instance for the passed in authority, registering it if necessary.
+     *
+     * @param authority Name of the authority.
+     * @return Shared SimpleGrantedAuthority, or a new instance if the registry is full.
+     */
+    public static SimpleGrantedAuthority intern(final String authority) {
+        Entry entry = entryFor(authority);
+        return entry != null ? entry.authority : new SimpleGrantedAuthority(authority);
+    }
+
+    /**
+     * Return the index of the passed in authority, registering it if necessary.
+     *
+     * @param authority Name of the authority.
+     * @return The index, or -1 if the registry is full.
+     */
+    public static int register(final String authority) {
+        Entry entry = entryFor(authority);
+        return entry != null ? entry.index : -1;
+    }
+
+    /**
+     * Return the index of the passed in authority without registering it.
+     *
+     * @param authority Name of the authority.
+     * @return The index, or -1 if the authority has not been registered.
+     */
+    public static int indexOf(final String authority) {
+        Entry entry = entries.get(authority);
+        return entry != null ? entry.index : -1;
+    }
+
+    private static Entry entryFor(final String authority) {
+        Entry entry = entries.get(authority);
+        if( entry != null || nextIndex.get() >= MAX_AUTHORITIES ) {
+            return entry;
+        }
+
+        return entries.computeIfAbsent( authority, a -> {
+            int index = nextIndex.getAndIncrement();
+            return index < MAX_AUTHORITIES ? new Entry(index, new SimpleGrantedAuthority(a)) : null;
+        });
+    }
+
+    private static final class Entry {
+        private final int index;
+        private final SimpleGrantedAuthority authority;
+
+        private Entry(int index, SimpleGrantedAuthority authority) {
+            this.index = index;
+            this.authority = authority;
+        }
+    }
+}
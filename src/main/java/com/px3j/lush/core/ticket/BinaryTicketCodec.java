@@ -0,0 +1,359 @@
+package com.px3j.lush.core.ticket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.px3j.lush.core.exception.LushException;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Compact, versioned binary encoding of a LushTicket.  The layout of version 1 is:
+ * <pre>
+ *  byte    MAGIC (never '{' so it can't be mistaken for a JSON ticket)
+ *  byte    VERSION
+ *  int32   dictionary id (CRC32 of the authority dictionary, 0 if there is no dictionary)
+ *  string  id, username, password
+ *  varint  authority count, followed by each authority:
+ *            varint (index &lt;&lt; 1 | 1) for an authority found in the dictionary
+ *            varint (length &lt;&lt; 1) followed by the UTF-8 bytes for any other authority
+ *  varint  extras count, followed by each extra: string key, byte type, value
+ * </pre>
+ * Strings are written as a varint of (length + 1) followed by their UTF-8 bytes, 0 represents null.
+ * <br/><br/>
+ * Only id, username and password are decoded up front, authorities and extras are decoded the first time the ticket
+ * is asked for them.
+ * <br/><br/>
+ * The authority dictionary must be the same on the service issuing tickets and the services consuming them, tickets
+ * encoded with a different dictionary are rejected.  Malformed tickets (ie: truncated, or a length past the end of the
+ * ticket) are rejected with a LushException, when they are decoded or when their authorities/extras are first accessed.
+ *
+ * @author Paul Parrone
+ */
+class BinaryTicketCodec {
+    static final byte MAGIC = (byte) 0xB7;
+    static final byte VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_TRUE = 4;
+    private static final byte TYPE_FALSE = 5;
+    private static final byte TYPE_JSON = 6;
+
+    private final List<String> dictionary;
+    private final Map<String,Integer> dictionaryIndex;
+    private final int dictionaryId;
+    private final Gson gson;
+
+    BinaryTicketCodec(List<String> dictionary, Gson gson) {
+        this.dictionary = List.copyOf(dictionary);
+        this.gson = gson;
+
+        this.dictionaryIndex = new HashMap<>();
+        for( int i=0; i<this.dictionary.size(); i++ ) {
+            dictionaryIndex.putIfAbsent( this.dictionary.get(i), i );
+        }
+
+        if( this.dictionary.isEmpty() ) {
+            this.dictionaryId = 0;
+        }
+        else {
+            CRC32 crc = new CRC32();
+            this.dictionary.forEach( a -> {
+                crc.update( a.getBytes(StandardCharsets.UTF_8) );
+                crc.update( 0 );
+            });
+            this.dictionaryId = (int) crc.getValue();
+        }
+    }
+
+    /**
+     * @param buffer Decrypted ticket bytes.
+     * @return true if the buffer contains a ticket in this binary format.
+     */
+    static boolean isBinary(ByteBuffer buffer) {
+        return buffer.hasRemaining() && buffer.get(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Encode the ticket.
+     *
+     * @param ticket The ticket to encode.
+     * @return A writer holding the encoded bytes.
+     */
+    Writer encode(LushTicket ticket) {
+        Writer out = new Writer();
+        out.writeByte( MAGIC );
+        out.writeByte( VERSION );
+        out.writeInt( dictionaryId );
+
+        out.writeString( ticket.getId() );
+        out.writeString( ticket.getUsername() );
+        out.writeString( ticket.getPassword() );
+
+        Collection<SimpleGrantedAuthority> authorities = ticket.getAuthorities();
+        out.writeVarint( authorities.size() );
+        for( SimpleGrantedAuthority authority : authorities ) {
+            String name = authority.getAuthority();
+            Integer index = dictionaryIndex.get(name);
+            if( index != null ) {
+                out.writeVarint( (index << 1) | 1 );
+            }
+            else {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeVarint( bytes.length << 1 );
+                out.writeBytes( bytes );
+            }
+        }
+
+        Map<String,Object> extras = ticket.getExtras();
+        out.writeVarint( extras.size() );
+        for( Map.Entry<String,Object> extra : extras.entrySet() ) {
+            out.writeString( extra.getKey() );
+            writeValue( out, extra.getValue() );
+        }
+
+        return out;
+    }
+
+    /**
+     * Decode a ticket, reading from the buffer's position to its limit.
+     *
+     * @param buffer The encoded ticket.
+     * @return The decoded ticket.
+     */
+    LushTicket decode(ByteBuffer buffer) {
+        try {
+            if( buffer.get() != MAGIC ) {
+                throw new LushException( "Not a binary Lush ticket" );
+            }
+
+            byte version = buffer.get();
+            if( version != VERSION ) {
+                throw new LushException( "Unsupported binary Lush ticket version: " + version );
+            }
+
+            int ticketDictionaryId = buffer.getInt();
+            if( ticketDictionaryId != dictionaryId ) {
+                throw new LushException( "Lush ticket was encoded with a different authority dictionary" );
+            }
+
+            LushTicket ticket = new LushTicket();
+            ticket.setId( readString(buffer) );
+            ticket.setUsername( readString(buffer) );
+            ticket.setPassword( readString(buffer) );
+
+            // Authorities and extras are decoded on first access, the buffer may be reused so keep a copy of them.
+            byte[] body = new byte[buffer.remaining()];
+            buffer.get(body);
+            ticket.defer( new DeferredBody(body) );
+
+            return ticket;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new LushException( "Malformed binary Lush ticket", e );
+        }
+    }
+
+    /**
+     * Decodes the authorities and extras section of a ticket.
+     */
+    private class DeferredBody implements LushTicket.Deferred {
+        private final byte[] body;
+
+        DeferredBody(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public void decode(Collection<SimpleGrantedAuthority> authorities, Map<String,Object> extras) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+
+                int authorityCount = readVarint(buffer);
+                for( int i=0; i<authorityCount; i++ ) {
+                    int v = readVarint(buffer);
+                    String name = (v & 1) == 1 ? dictionary.get(v >>> 1) : readUtf8(buffer, v >>> 1);
+                    authorities.add( AuthorityRegistry.intern(name) );
+                }
+
+                int extraCount = readVarint(buffer);
+                for( int i=0; i<extraCount; i++ ) {
+                    String key = readString(buffer);
+                    extras.put( key, readValue(buffer) );
+                }
+            }
+            catch (BufferUnderflowException | IndexOutOfBoundsException | JsonParseException e) {
+                throw new LushException( "Malformed binary Lush ticket", e );
+            }
+        }
+    }
+
+    private void writeValue(Writer out, Object value) {
+        if( value == null ) {
+            out.writeByte( TYPE_NULL );
+        }
+        else if( value instanceof String || value instanceof Character ) {
+            out.writeByte( TYPE_STRING );
+            out.writeString( value.toString() );
+        }
+        else if( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+            out.writeByte( TYPE_LONG );
+            long l = ((Number) value).longValue();
+            out.writeVarlong( (l << 1) ^ (l >> 63) );
+        }
+        else if( value instanceof Double || value instanceof Float ) {
+            out.writeByte( TYPE_DOUBLE );
+            out.writeLong( Double.doubleToRawLongBits(((Number) value).doubleValue()) );
+        }
+        else if( value instanceof Boolean ) {
+            out.writeByte( (Boolean) value ? TYPE_TRUE : TYPE_FALSE );
+        }
+        else {
+            out.writeByte( TYPE_JSON );
+            out.writeString( gson.toJson(value) );
+        }
+    }
+
+    private Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(buffer);
+            case TYPE_LONG:
+                long l = readVarlong(buffer);
+                return (l >>> 1) ^ -(l & 1);
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(buffer.getLong());
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_JSON:
+                return gson.fromJson( readString(buffer), Object.class );
+            default:
+                throw new LushException( "Unknown extra type in binary Lush ticket: " + type );
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        return length == 0 ? null : readUtf8(buffer, length - 1);
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int length) {
+        if( length < 0 || length > buffer.remaining() ) {
+            throw new LushException( "Malformed binary Lush ticket, string length " + length + " is past the end of the ticket" );
+        }
+
+        String s;
+        if( buffer.hasArray() ) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position( buffer.position() + length );
+        }
+        else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        long v = readVarlong(buffer);
+        if( v < 0 || v > Integer.MAX_VALUE ) {
+            throw new LushException( "Malformed binary Lush ticket, length out of range" );
+        }
+        return (int) v;
+    }
+
+    private static long readVarlong(ByteBuffer buffer) {
+        long result = 0;
+        for( int shift = 0; shift < 64; shift += 7 ) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if( (b & 0x80) == 0 ) {
+                return result;
+            }
+        }
+        throw new LushException( "Malformed binary Lush ticket, varint is too long" );
+    }
+
+    /**
+     * Growable byte array the ticket is encoded into.
+     */
+    static class Writer {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+
+        byte[] array() {
+            return bytes;
+        }
+
+        int length() {
+            return length;
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void writeBytes(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            for( int shift = 24; shift >= 0; shift -= 8 ) {
+                bytes[length++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for( int shift = 56; shift >= 0; shift -= 8 ) {
+                bytes[length++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeVarint(int v) {
+            writeVarlong( v & 0xFFFFFFFFL );
+        }
+
+        void writeVarlong(long v) {
+            ensure(10);
+            while( (v & ~0x7FL) != 0 ) {
+                bytes[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[length++] = (byte) v;
+        }
+
+        void writeString(String s) {
+            if( s == null ) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint( utf8.length + 1 );
+            writeBytes( utf8 );
+        }
+
+        private void ensure(int extra) {
+            if( length + extra > bytes.length ) {
+                bytes = Arrays.copyOf( bytes, Math.max(bytes.length * 2, length + extra) );
+            }
+        }
+    }
+}
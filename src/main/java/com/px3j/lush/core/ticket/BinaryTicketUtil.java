@@ -0,0 +1,64 @@
+package com.px3j.lush.core.ticket;
+
+import com.google.gson.Gson;
+import com.px3j.lush.core.util.CryptoHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Implementation of TicketUtil that encodes a LushTicket using a compact binary format before encrypting it.  This
+ * produces much smaller tickets than JSON and is cheaper to parse.  Tickets that were encrypted as JSON (by
+ * EncryptedTicketUtil) are still accepted so services can be migrated one at a time.
+ * <br/><br/>
+ * Active when <b>lush.ticket.format</b> is set to <b>binary</b>.  Authorities that are listed in
+ * <b>lush.ticket.authority-dictionary</b> are encoded as a small index rather than as a string, all services that share
+ * tickets must be configured with the same dictionary.
+ *
+ * @see BinaryTicketCodec
+ */
+@Component
+@Profile("!clear-ticket")
+@ConditionalOnProperty( name = "lush.ticket.format", havingValue = "binary" )
+@Slf4j( topic = "lush.core.debug")
+public class BinaryTicketUtil implements TicketUtil {
+    private final CryptoHelper cryptoHelper;
+    private final BinaryTicketCodec codec;
+    private final Gson gson;
+
+    @Autowired
+    public BinaryTicketUtil(
+            CryptoHelper cryptoHelper,
+            @Value("${lush.ticket.authority-dictionary:}") List<String> authorityDictionary
+    ) {
+        this.cryptoHelper = cryptoHelper;
+        this.gson = new Gson();
+        this.codec = new BinaryTicketCodec(authorityDictionary, gson);
+
+        log.debug( "Using BinaryTicketUtil, authority dictionary size: " + authorityDictionary.size() );
+    }
+
+    @Override
+    public String encrypt(LushTicket ticket) {
+        BinaryTicketCodec.Writer encoded = codec.encode(ticket);
+        return cryptoHelper.encrypt( encoded.array(), 0, encoded.length() );
+    }
+
+    @Override
+    public LushTicket decrypt(final String encryptedTicket) {
+        ByteBuffer decrypted = cryptoHelper.decryptToBuffer(encryptedTicket);
+
+        if( BinaryTicketCodec.isBinary(decrypted) ) {
+            return codec.decode(decrypted);
+        }
+
+        // Ticket issued before the switch to the binary format.
+        return JsonTicketDecoder.decode( gson, decrypted );
+    }
+}
@@ -21,6 +21,7 @@ public class ClearTicketUtil implements TicketUtil {
 
     @Override
     public String encrypt(LushTicket ticket) {
+        ticket.materialize();
         return new Gson().toJson(ticket);
     }
 
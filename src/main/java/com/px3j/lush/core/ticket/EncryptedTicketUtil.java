@@ -3,16 +3,21 @@ package com.px3j.lush.core.ticket;
 import com.google.gson.Gson;
 import com.px3j.lush.core.util.CryptoHelper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 /**
  * Default implementation of TicketUtil.  Encryption/decryption is done using the Crypto helper from Lush Core.
+ * <br/><br/>
+ * Active unless <b>lush.ticket.format</b> is set to something other than <b>json</b>.
  *
  * @see CryptoHelper
+ * @see BinaryTicketUtil
  */
 @Component
 @Profile("!clear-ticket")
+@ConditionalOnProperty( name = "lush.ticket.format", havingValue = "json", matchIfMissing = true )
 public class EncryptedTicketUtil implements TicketUtil {
     private final CryptoHelper cryptoHelper;
 
@@ -25,12 +30,13 @@ public class EncryptedTicketUtil implements TicketUtil {
     }
 
     public String encrypt( LushTicket ticket) {
+        ticket.materialize();
         String asJson = gson.toJson(ticket, LushTicket.class);
         return cryptoHelper.encrypt(asJson);
     }
 
     public LushTicket decrypt(final String encryptedJson ) {
-        String decryptedJson = cryptoHelper.decrypt(encryptedJson);
-        return gson.fromJson( decryptedJson, LushTicket.class);
+        // Decrypted bytes are parsed in place, no intermediate String is created.
+        return JsonTicketDecoder.decode( gson, cryptoHelper.decryptToBuffer(encryptedJson) );
     }
 }
@@ -0,0 +1,39 @@
+package com.px3j.lush.core.ticket;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.px3j.lush.core.util.ByteBufferReader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a JSON encoded LushTicket directly from decrypted bytes, without building an intermediate String.  The
+ * ticket's authorities are replaced by the shared instances from the AuthorityRegistry.
+ *
+ * @author Paul Parrone
+ */
+final class JsonTicketDecoder {
+    private static final ThreadLocal<ByteBufferReader> readers = ThreadLocal.withInitial(ByteBufferReader::new);
+
+    private JsonTicketDecoder() {
+    }
+
+    /**
+     * @param gson Gson instance used to bind the ticket.
+     * @param json UTF-8 JSON, read from the buffer's position to its limit.
+     * @return The decoded ticket.
+     */
+    static LushTicket decode(Gson gson, ByteBuffer json) {
+        ByteBufferReader reader = readers.get().reset(json);
+        try {
+            LushTicket ticket = gson.fromJson( new JsonReader(reader), LushTicket.class );
+            if( ticket != null ) {
+                ticket.internAuthorities();
+            }
+            return ticket;
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
@@ -3,9 +3,10 @@ package com.px3j.lush.core.ticket;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
-import org.springframework.beans.BeanUtils;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -13,6 +14,10 @@ import java.util.*;
  * LushTicket allows access to a Lush protected service.  Typically, the ticket will be generated by a service that
  * will create it based on a token (ie: JWT).  Once the ticket is obtained, it can be used to access any Lush
  * protected service.
+ * <br/><br/>
+ * A ticket may be decoded lazily (see BinaryTicketUtil): id, username and password are available immediately while
+ * authorities and extras are only decoded the first time they are accessed.  This is transparent to users of the
+ * ticket.
  */
 @ToString
 public class LushTicket implements Serializable {
@@ -25,12 +30,19 @@ public class LushTicket implements Serializable {
     @Getter
     @Setter
     private String password;
-    @Getter
-    @Setter
+
     private Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
 
     private final Map<String,Object> extras = new HashMap<>();
 
+    // Source of authorities/extras that haven't been decoded yet, null once they have been.
+    @ToString.Exclude
+    private transient volatile Deferred deferred;
+
+    // Authorities as a bitset of AuthorityRegistry indexes, built on the first call to hasAuthority().
+    @ToString.Exclude
+    private transient volatile AuthorityBits authorityBits;
+
     public LushTicket() {
         this.id = null;
         this.username = "unknown";
@@ -40,19 +52,94 @@ public class LushTicket implements Serializable {
     public LushTicket(String username, String password, Collection<SimpleGrantedAuthority> authorities) {
         this.username = username;
         this.password = password;
-        this.authorities = authorities;
+        this.authorities = authorities != null ? new ArrayList<>( authorities ) : new ArrayList<>();
     }
 
     /**
-     * Will update this LushTicket with all values from the other ticket.
+     * Will update this LushTicket with all values from the other ticket.  If the authorities/extras of the other ticket
+     * have not been decoded yet they will be decoded by this ticket on first access.
      *
      * @param other The source to copy values from.
      */
     public void populateFrom( LushTicket other ) {
-        BeanUtils.copyProperties( other, this );
+        Deferred otherDeferred = other.deferred;
+
+        this.id = other.id;
+        this.username = other.username;
+        this.password = other.password;
+        this.authorityBits = null;
+
+        if( otherDeferred != null ) {
+            this.authorities = new ArrayList<>();
+            this.deferred = otherDeferred;
+        }
+        else {
+            this.authorities = other.authorities != null ? new ArrayList<>( other.authorities ) : new ArrayList<>();
+            this.extras.putAll( other.extras );
+        }
+    }
+
+    /**
+     * A ticket may be shared by many requests (ie: one held by TicketCache, or the ticket of an RSocket connection), the
+     * ticket passed to a controller is a copy so changes made by one request are never seen by another.  The copy is
+     * shallow: values of extras are shared.
+     *
+     * @return A copy of this ticket.
+     */
+    public LushTicket copy() {
+        LushTicket copy = new LushTicket();
+        copy.populateFrom( this );
+
+        // The copy has the same authorities, until they are set.
+        copy.authorityBits = this.authorityBits;
+        return copy;
+    }
+
+    /**
+     * @return The authorities of the ticket, they can't be modified (use setAuthorities) so the bitset used by
+     * hasAuthority always matches them.
+     */
+    public Collection<SimpleGrantedAuthority> getAuthorities() {
+        materialize();
+        return authorities != null ? Collections.unmodifiableCollection( authorities ) : Collections.emptyList();
+    }
+
+    /**
+     * Replace the authorities of the ticket, they are copied.
+     *
+     * @param authorities The new authorities.
+     */
+    public void setAuthorities(Collection<SimpleGrantedAuthority> authorities) {
+        materialize();
+        this.authorities = authorities != null ? new ArrayList<>( authorities ) : new ArrayList<>();
+        this.authorityBits = null;
+    }
+
+    /**
+     * Check if this ticket has been granted the passed in authority.  The first check builds a bitset of the ticket's
+     * authorities, every check after that is a constant time bit test.
+     *
+     * @param authority Name of the authority.
+     * @return true if the ticket has the authority.
+     */
+    public boolean hasAuthority(final String authority) {
+        AuthorityBits bits = authorityBits;
+        if( bits == null ) {
+            bits = new AuthorityBits( getAuthorities() );
+            authorityBits = bits;
+        }
+
+        int index = AuthorityRegistry.indexOf(authority);
+        if( index >= 0 ) {
+            return bits.bits.get(index);
+        }
+
+        // Not registered - the ticket can only have it if some of its authorities didn't fit in the registry.
+        return bits.overflow && getAuthorities().stream().anyMatch( a -> authority.equals(a.getAuthority()) );
     }
 
     public Map<String, Object> getExtras() {
+        materialize();
         return Collections.unmodifiableMap(extras);
     }
 
@@ -63,6 +150,7 @@ public class LushTicket implements Serializable {
      * @param extras Map of extras to set, note that this will replace any extras that already exist.
      */
     public void setExtras( Map<String,Object> extras ) {
+        materialize();
         this.extras.putAll( extras );
     }
 
@@ -73,6 +161,86 @@ public class LushTicket implements Serializable {
      * @param value The value of the extra.
      */
     public void putExtra(final String key, final Object value ) {
+        materialize();
         this.extras.put( key, value );
     }
+
+    /**
+     * Defer decoding of authorities and extras until they are first accessed.
+     *
+     * @param deferred Decodes the authorities/extras into a ticket.
+     */
+    void defer(Deferred deferred) {
+        this.deferred = deferred;
+    }
+
+    /**
+     * Decode authorities/extras now if that was deferred.  Called before a ticket is serialized field by field (ie: by
+     * Gson) so nothing is lost.
+     */
+    void materialize() {
+        if( deferred == null ) {
+            return;
+        }
+
+        synchronized (this) {
+            Deferred d = deferred;
+            if( d != null ) {
+                Collection<SimpleGrantedAuthority> decodedAuthorities = new ArrayList<>();
+                Map<String,Object> decodedExtras = new HashMap<>();
+                d.decode( decodedAuthorities, decodedExtras );
+
+                this.authorities = decodedAuthorities;
+                this.extras.putAll( decodedExtras );
+                deferred = null;
+            }
+        }
+    }
+
+    /**
+     * Replace the authorities with the shared instances held by the AuthorityRegistry.
+     */
+    void internAuthorities() {
+        if( authorities == null ) {
+            return;
+        }
+
+        List<SimpleGrantedAuthority> interned = new ArrayList<>(authorities.size());
+        authorities.forEach( a -> interned.add(AuthorityRegistry.intern(a.getAuthority())) );
+        this.authorities = interned;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+
+    private static final class AuthorityBits {
+        private final BitSet bits = new BitSet();
+        private boolean overflow;
+
+        private AuthorityBits(Collection<SimpleGrantedAuthority> authorities) {
+            if( authorities == null ) {
+                return;
+            }
+
+            for( SimpleGrantedAuthority authority : authorities ) {
+                int index = AuthorityRegistry.register( authority.getAuthority() );
+                if( index >= 0 ) {
+                    bits.set(index);
+                }
+                else {
+                    overflow = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes authorities and extras on demand.  Implementations must be immutable, a single instance may be shared by
+     * several tickets (see populateFrom) and decoded more than once.
+     */
+    interface Deferred {
+        void decode(Collection<SimpleGrantedAuthority> authorities, Map<String,Object> extras);
+    }
 }
@@ -0,0 +1,131 @@
+package com.px3j.lush.core.util;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Reader that decodes UTF-8 directly from a ByteBuffer.  Allows a parser (ie: Gson) to stream over decrypted bytes
+ * without first building a String from them.  Decodes exactly as new String(bytes, UTF_8) does, each malformed sequence
+ * is replaced with U+FFFD.  An instance can be reused by calling reset() with the next buffer, it is not thread safe.
+ *
+ * @author Paul Parrone
+ */
+public class ByteBufferReader extends Reader {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private ByteBuffer buffer;
+    // Low surrogate left over when a 4 byte sequence didn't fit in the caller's array.
+    private int pendingLowSurrogate = -1;
+
+    /**
+     * Start reading from the passed in buffer, from its position to its limit.
+     *
+     * @param buffer The UTF-8 bytes to read.
+     * @return this reader.
+     */
+    public ByteBufferReader reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.pendingLowSurrogate = -1;
+        return this;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if( len == 0 ) {
+            return 0;
+        }
+
+        int count = 0;
+        if( pendingLowSurrogate >= 0 ) {
+            cbuf[off + count++] = (char) pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+        }
+
+        while( count < len && buffer.hasRemaining() ) {
+            int b = buffer.get() & 0xFF;
+            if( b < 0x80 ) {
+                cbuf[off + count++] = (char) b;
+                continue;
+            }
+
+            int codePoint = decode(b);
+            if( codePoint < 0 ) {
+                cbuf[off + count++] = REPLACEMENT;
+            }
+            else if( codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ) {
+                cbuf[off + count++] = (char) codePoint;
+            }
+            else {
+                cbuf[off + count++] = Character.highSurrogate(codePoint);
+                if( count < len ) {
+                    cbuf[off + count++] = Character.lowSurrogate(codePoint);
+                }
+                else {
+                    pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                }
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    /**
+     * Decode the rest of a multi byte sequence.
+     *
+     * @param b The first byte of the sequence.
+     * @return The code point, or -1 if the sequence is malformed.
+     */
+    private int decode(int b) {
+        if( b >= 0xC2 && b <= 0xDF ) {
+            int b2 = continuation(0x80, 0xBF);
+            return b2 < 0 ? -1 : ((b & 0x1F) << 6) | b2;
+        }
+
+        if( b >= 0xE0 && b <= 0xEF ) {
+            int b2 = continuation(b == 0xE0 ? 0xA0 : 0x80, 0xBF);
+            int b3 = b2 < 0 ? -1 : continuation(0x80, 0xBF);
+            if( b3 < 0 ) {
+                return -1;
+            }
+
+            // As the JDK does, an encoded surrogate is replaced as a whole.
+            int codePoint = ((b & 0x0F) << 12) | (b2 << 6) | b3;
+            return Character.isSurrogate((char) codePoint) ? -1 : codePoint;
+        }
+
+        if( b >= 0xF0 && b <= 0xF4 ) {
+            int b2 = continuation(b == 0xF0 ? 0x90 : 0x80, b == 0xF4 ? 0x8F : 0xBF);
+            int b3 = b2 < 0 ? -1 : continuation(0x80, 0xBF);
+            int b4 = b3 < 0 ? -1 : continuation(0x80, 0xBF);
+            return b4 < 0 ? -1 : ((b & 0x07) << 18) | (b2 << 12) | (b3 << 6) | b4;
+        }
+
+        // A continuation byte without a lead byte, an overlong lead byte or one past U+10FFFF.
+        return -1;
+    }
+
+    /**
+     * Consume the next byte if it is a continuation byte within [min, max], a byte that isn't is left to be read as the
+     * start of the next character.
+     *
+     * @return The 6 bits of the continuation byte, -1 if there isn't one.
+     */
+    private int continuation(int min, int max) {
+        if( !buffer.hasRemaining() ) {
+            return -1;
+        }
+
+        int b = buffer.get(buffer.position()) & 0xFF;
+        if( b < min || b > max ) {
+            return -1;
+        }
+
+        buffer.position( buffer.position() + 1 );
+        return b & 0x3F;
+    }
+}
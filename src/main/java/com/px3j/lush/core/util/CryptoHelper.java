@@ -2,60 +2,305 @@ package com.px3j.lush.core.util;
 
 import com.px3j.lush.core.exception.LushException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
 
+/**
+ * Encrypt/decrypt helper used by Lush.  Cipher instances are created once per thread and reused for every call made
+ * on that thread (the Netty event loops are long-lived so this avoids a provider lookup on every request).  Each
+ * thread also keeps reusable input/output buffers.
+ * <br/><br/>
+ * Two modes are supported, selected by <b>lush.crypto.mode</b>:
+ * <ul>
+ *     <li><b>cbc</b> (default) - AES/CBC using lush.crypto.secret-key and the fixed lush.crypto.access-key IV.</li>
+ *     <li><b>gcm</b> - authenticated AES/GCM using the active key of the key ring and a random nonce per call.  The
+ *     output is prefixed with a marker byte, the key id and the nonce.</li>
+ * </ul>
+ * Decryption accepts both formats (as long as the matching keys are configured) regardless of the mode, this allows
+ * services to be switched from cbc to gcm one at a time.
+ *
+ * @see CryptoKeys
+ * @see KeyRing
+ */
 @Component
 @Profile("!clear-ticket")
 public class CryptoHelper {
+    // Buffers larger than this are not kept around for reuse.
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final byte GCM_MARKER = 'G';
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int GCM_HEADER_LENGTH = 2 + GCM_NONCE_LENGTH;
+
+    private static final int[] BASE64_VALUES = new int[128];
+    static {
+        Arrays.fill( BASE64_VALUES, -1 );
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for( int i=0; i<alphabet.length(); i++ ) {
+            BASE64_VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
     private final String algorithm = "AES/CBC/PKCS5Padding";
+    private final String gcmAlgorithm = "AES/GCM/NoPadding";
     private final CryptoKeys cryptoKeys;
+    private final boolean gcm;
+
+    private final ThreadLocal<CipherState> cipherState = ThreadLocal.withInitial(CipherState::new);
 
-    @Autowired
     public CryptoHelper(CryptoKeys cryptoKeys) {
+        this( cryptoKeys, "cbc" );
+    }
+
+    @Autowired
+    public CryptoHelper(CryptoKeys cryptoKeys, @Value("${lush.crypto.mode:cbc}") String mode) {
         this.cryptoKeys = cryptoKeys;
+
+        if( "gcm".equalsIgnoreCase(mode) ) {
+            if( cryptoKeys.keyRing.getActiveKeyId() < 0 ) {
+                throw new LushException( "lush.crypto.key-ring and lush.crypto.active-key-id must be set when lush.crypto.mode is gcm" );
+            }
+            this.gcm = true;
+        }
+        else if( "cbc".equalsIgnoreCase(mode) ) {
+            if( cryptoKeys.secretKey == null ) {
+                throw new LushException( "lush.crypto.secret-key and lush.crypto.access-key must be set when lush.crypto.mode is cbc" );
+            }
+            this.gcm = false;
+        }
+        else {
+            throw new LushException( "Unsupported lush.crypto.mode: " + mode );
+        }
     }
 
     public String encrypt(String input) {
+        byte[] plainText = input.getBytes(StandardCharsets.UTF_8);
+        return encrypt( plainText, 0, plainText.length );
+    }
+
+    public String decrypt(String cipherText)  {
+        ByteBuffer plainText = decryptToBuffer(cipherText);
+        return new String(plainText.array(), plainText.position(), plainText.remaining(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encrypt a range of bytes and return the Base64 encoded cipher text.
+     *
+     * @param input The plain text.
+     * @param offset Offset of the first byte to encrypt.
+     * @param length Number of bytes to encrypt.
+     * @return Base64 encoded cipher text.
+     */
+    public String encrypt(byte[] input, int offset, int length) {
+        CipherState state = cipherState.get();
+        byte[] output = state.output( getOutputSize(length) );
+
+        int outputLength = encrypt( state, ByteBuffer.wrap(input, offset, length), ByteBuffer.wrap(output) );
+        return Base64.getEncoder().encodeToString( Arrays.copyOf(output, outputLength) );
+    }
+
+    /**
+     * Decrypt Base64 encoded cipher text into this thread's reusable buffer.  The Base64 text is decoded straight into
+     * a reusable buffer too, so no intermediate arrays or Strings are created.  The returned buffer is only valid until
+     * the next call to CryptoHelper on the same thread, copy anything that needs to outlive that.
+     *
+     * @param cipherText Base64 encoded cipher text.
+     * @return A buffer positioned at the start of the plain text, with its limit set to the end of the plain text.
+     */
+    public ByteBuffer decryptToBuffer(CharSequence cipherText) {
+        CipherState state = cipherState.get();
+        byte[] input = state.input( cipherText.length() * 3 / 4 );
+        int inputLength = decodeBase64( cipherText, input );
+        byte[] output = state.output( getOutputSize(inputLength) );
+
+        int length = decrypt( state, ByteBuffer.wrap(input, 0, inputLength), ByteBuffer.wrap(output) );
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * Encrypt the remaining bytes of input into output.  No Base64 encoding is done, use this overload when you are
+     * working with raw bytes and want to avoid intermediate copies.
+     *
+     * @param input Plain text, read from its position to its limit.
+     * @param output Receives the cipher text, must have at least getOutputSize(input.remaining()) bytes remaining.
+     * @return The number of bytes written to output.
+     */
+    public int encrypt(ByteBuffer input, ByteBuffer output) {
+        return encrypt( cipherState.get(), input, output );
+    }
+
+    /**
+     * Decrypt the remaining bytes of input into output.  The input is expected to be raw cipher text (ie: already Base64
+     * decoded).
+     *
+     * @param input Cipher text, read from its position to its limit.
+     * @param output Receives the plain text, must have at least getOutputSize(input.remaining()) bytes remaining.
+     * @return The number of bytes written to output.
+     */
+    public int decrypt(ByteBuffer input, ByteBuffer output) {
+        return decrypt( cipherState.get(), input, output );
+    }
+
+    /**
+     * Return the maximum number of bytes that encrypting/decrypting inputLength bytes may produce.  Use this to size the
+     * output buffer passed to the ByteBuffer overloads.
+     *
+     * @param inputLength The number of input bytes.
+     * @return The maximum number of output bytes.
+     */
+    public int getOutputSize(int inputLength) {
+        // Covers a block of CBC padding, or the GCM header plus its authentication tag.
+        return inputLength + GCM_HEADER_LENGTH + GCM_TAG_BITS / 8;
+    }
+
+    private int encrypt(CipherState state, ByteBuffer input, ByteBuffer output) {
         try {
-            SecretKey key = cryptoKeys.secretKey;
-            IvParameterSpec iv = cryptoKeys.accessKey;
+            if( !gcm ) {
+                return state.cbcEncryptor().doFinal(input, output);
+            }
 
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            byte[] cipherText = cipher.doFinal(input.getBytes());
-            return Base64.getEncoder().encodeToString(cipherText);
+            int keyId = cryptoKeys.keyRing.getActiveKeyId();
+            byte[] nonce = state.nonce();
+
+            Cipher cipher = state.gcmCipher();
+            cipher.init( Cipher.ENCRYPT_MODE, cryptoKeys.keyRing.get(keyId), new GCMParameterSpec(GCM_TAG_BITS, nonce) );
+
+            output.put( GCM_MARKER );
+            output.put( (byte) keyId );
+            output.put( nonce );
+            return GCM_HEADER_LENGTH + cipher.doFinal(input, output);
         }
-        catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException |
-                 InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+        catch (GeneralSecurityException e) {
+            state.reset();
             throw new LushException( "Failed to encrypt", e );
         }
     }
 
-    public String decrypt(String cipherText)  {
+    private int decrypt(CipherState state, ByteBuffer input, ByteBuffer output) {
         try {
-            SecretKey key = cryptoKeys.secretKey;
-            IvParameterSpec iv = cryptoKeys.accessKey;
+            if( isGcm(input) ) {
+                int outputPosition = output.position();
+                try {
+                    ByteBuffer gcmInput = input.duplicate();
+                    gcmInput.get();
+                    SecretKey key = cryptoKeys.keyRing.get( gcmInput.get() & 0xFF );
 
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            byte[] plainText = cipher.doFinal(Base64.getDecoder()
-                    .decode(cipherText));
-            return new String(plainText);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException |
-                 InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                    Cipher cipher = state.gcmCipher();
+                    cipher.init( Cipher.DECRYPT_MODE, key, gcmParameters(gcmInput) );
+                    gcmInput.position( gcmInput.position() + GCM_NONCE_LENGTH );
+
+                    int length = cipher.doFinal(gcmInput, output);
+                    input.position( input.limit() );
+                    return length;
+                }
+                catch (AEADBadTagException e) {
+                    // Only fall back if the data could be cbc cipher text that happens to look like a gcm header.
+                    if( cryptoKeys.secretKey == null ) {
+                        throw e;
+                    }
+                    output.position( outputPosition );
+                }
+            }
+
+            if( cryptoKeys.secretKey == null ) {
+                throw new LushException( "Failed to decrypt, not encrypted with a key in the key ring" );
+            }
+            return state.cbcDecryptor().doFinal(input, output);
+        }
+        catch (GeneralSecurityException e) {
+            state.reset();
             throw new LushException( "Failed to decrypt", e);
         }
     }
 
+    private boolean isGcm(ByteBuffer input) {
+        int position = input.position();
+        return input.remaining() >= GCM_HEADER_LENGTH + GCM_TAG_BITS / 8
+                && input.get(position) == GCM_MARKER
+                && cryptoKeys.keyRing.get( input.get(position + 1) & 0xFF ) != null;
+    }
+
+    /**
+     * Decode standard (RFC 4648) Base64 text into dst.  Accepts and rejects exactly what Base64.getDecoder() does (the
+     * encrypted text is written by Base64.getEncoder()): padding is optional but must be correct when present, nothing
+     * may follow it, and a final unit of a single character is rejected.
+     *
+     * @param src The Base64 text.
+     * @param dst Receives the decoded bytes, must hold at least src.length() * 3 / 4 bytes.
+     * @return The number of decoded bytes.
+     */
+    static int decodeBase64(CharSequence src, byte[] dst) {
+        int length = src.length();
+        int bits = 0;
+        int shift = 18;
+        int written = 0;
+        int i = 0;
+        while( i < length ) {
+            char c = src.charAt(i++);
+            int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+            if( value < 0 ) {
+                if( c != '=' ) {
+                    throw new LushException( "Failed to decrypt, invalid Base64 character at index: " + (i - 1) );
+                }
+
+                // Padding ends the text, it completes a unit of 2 (xx==) or 3 (xxx=) characters.
+                if( shift == 18 || (shift == 6 && (i == length || src.charAt(i++) != '=')) ) {
+                    throw new LushException( "Failed to decrypt, invalid Base64 padding at index: " + (i - 1) );
+                }
+                break;
+            }
+
+            bits |= value << shift;
+            shift -= 6;
+            if( shift < 0 ) {
+                dst[written++] = (byte) (bits >> 16);
+                dst[written++] = (byte) (bits >> 8);
+                dst[written++] = (byte) bits;
+                bits = 0;
+                shift = 18;
+            }
+        }
+
+        if( shift == 6 ) {
+            dst[written++] = (byte) (bits >> 16);
+        }
+        else if( shift == 0 ) {
+            dst[written++] = (byte) (bits >> 16);
+            dst[written++] = (byte) (bits >> 8);
+        }
+        else if( shift == 12 ) {
+            throw new LushException( "Failed to decrypt, Base64 text ends with a single character" );
+        }
+
+        if( i < length ) {
+            throw new LushException( "Failed to decrypt, Base64 text continues after its padding at index: " + i );
+        }
+        return written;
+    }
+
+    private static GCMParameterSpec gcmParameters(ByteBuffer input) {
+        if( input.hasArray() ) {
+            return new GCMParameterSpec( GCM_TAG_BITS, input.array(), input.arrayOffset() + input.position(), GCM_NONCE_LENGTH );
+        }
+
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        input.duplicate().get(nonce);
+        return new GCMParameterSpec( GCM_TAG_BITS, nonce );
+    }
+
     public static SecretKey generateKey(int n) throws NoSuchAlgorithmException {
         KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
         keyGenerator.init(n);
@@ -82,8 +327,90 @@ public class CryptoHelper {
 
         System.out.println("         lush.crypto.secret-key: " + encodedKey);
         System.out.println("         lush.crypto.access-key: " + encodedIv);
+        System.out.println();
+        System.out.println("         (gcm mode) lush.crypto.key-ring: <key id>:" + encodedKey);
 
         System.out.println();
         System.out.println( "Lush :: be sure to use these keys in any services that use Lush to encrypt/decrypt");
     }
-}
\ No newline at end of file
+
+    /**
+     * Per-thread ciphers and input/output buffers.  A cbc Cipher returns to its initialized state after doFinal() so it can be
+     * reused as-is for the next call, the gcm Cipher is initialized with a new nonce on every call.
+     */
+    private class CipherState {
+        private Cipher cbcEncryptor;
+        private Cipher cbcDecryptor;
+        private Cipher gcmCipher;
+        private SecureRandom random;
+        private final byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        private byte[] input = new byte[1024];
+        private byte[] output = new byte[1024];
+
+        Cipher cbcEncryptor() throws GeneralSecurityException {
+            if( cbcEncryptor == null ) {
+                cbcEncryptor = newCbcCipher(Cipher.ENCRYPT_MODE);
+            }
+            return cbcEncryptor;
+        }
+
+        Cipher cbcDecryptor() throws GeneralSecurityException {
+            if( cbcDecryptor == null ) {
+                cbcDecryptor = newCbcCipher(Cipher.DECRYPT_MODE);
+            }
+            return cbcDecryptor;
+        }
+
+        Cipher gcmCipher() throws GeneralSecurityException {
+            if( gcmCipher == null ) {
+                gcmCipher = Cipher.getInstance(gcmAlgorithm);
+            }
+            return gcmCipher;
+        }
+
+        byte[] nonce() {
+            if( random == null ) {
+                random = new SecureRandom();
+            }
+            random.nextBytes(nonce);
+            return nonce;
+        }
+
+        byte[] input(int size) {
+            if( size <= input.length ) {
+                return input;
+            }
+
+            byte[] larger = new byte[size];
+            if( size <= MAX_RETAINED_BUFFER ) {
+                input = larger;
+            }
+            return larger;
+        }
+
+        byte[] output(int size) {
+            if( size <= output.length ) {
+                return output;
+            }
+
+            byte[] larger = new byte[size];
+            if( size <= MAX_RETAINED_BUFFER ) {
+                output = larger;
+            }
+            return larger;
+        }
+
+        /**
+         * Discard the ciphers, a failed doFinal() may leave them in an unknown state.
+         */
+        void reset() {
+            cbcEncryptor = cbcDecryptor = gcmCipher = null;
+        }
+
+        private Cipher newCbcCipher(int mode) throws GeneralSecurityException {
+            Cipher cipher = Cipher.getInstance(algorithm);
+            cipher.init(mode, cryptoKeys.secretKey, cryptoKeys.accessKey);
+            return cipher;
+        }
+    }
+}
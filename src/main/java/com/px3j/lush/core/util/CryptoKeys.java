@@ -1,5 +1,6 @@
 package com.px3j.lush.core.util;
 
+import com.px3j.lush.core.exception.LushException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -9,31 +10,66 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * Class that holds required keys for Lush to encrypt/decrypt information as needed.  The keys are defined by the
  * following properties:
  * <pre>
- *  lush.crypto.secret-key - the secret key for encrypting/decrypting
- *  lush.crypto.access-key - the secret key for encrypting/decrypting
+ *  lush.crypto.secret-key    - the secret key for encrypting/decrypting (cbc mode)
+ *  lush.crypto.access-key    - the secret key for encrypting/decrypting (cbc mode)
+ *  lush.crypto.key-ring      - comma-separated list of id:key pairs, id is 0-255 (gcm mode)
+ *  lush.crypto.active-key-id - id of the key-ring key used to encrypt (gcm mode)
  * </pre>
  *
+ * The secret/access keys are still used in gcm mode, when present, to decrypt data that was encrypted in cbc mode.
+ *
+ * @see KeyRing
  */
 @Component
 @Profile("!clear-ticket")
 public class CryptoKeys {
     public final SecretKey secretKey;
     public final IvParameterSpec accessKey;
+    public final KeyRing keyRing;
+
+    public CryptoKeys(final String secretKey, final String accessKey) {
+        this( secretKey, accessKey, List.of(), -1 );
+    }
 
     @Autowired
     public CryptoKeys(
-            @Value("${lush.crypto.secret-key}") final String secretKey,
-            @Value("${lush.crypto.access-key}") final String accessKey
+            @Value("${lush.crypto.secret-key:}") final String secretKey,
+            @Value("${lush.crypto.access-key:}") final String accessKey,
+            @Value("${lush.crypto.key-ring:}") final List<String> keyRing,
+            @Value("${lush.crypto.active-key-id:-1}") final int activeKeyId
     ) {
-        byte[] decodedSecret = Base64.getDecoder().decode(secretKey);
-        byte[] decodedAccess = Base64.getDecoder().decode(accessKey);
+        if( secretKey.isEmpty() || accessKey.isEmpty() ) {
+            this.secretKey = null;
+            this.accessKey = null;
+        }
+        else {
+            byte[] decodedSecret = Base64.getDecoder().decode(secretKey);
+            byte[] decodedAccess = Base64.getDecoder().decode(accessKey);
+
+            this.secretKey = new SecretKeySpec(decodedSecret, 0, decodedSecret.length, "AES");
+            this.accessKey = new IvParameterSpec(decodedAccess);
+        }
+
+        this.keyRing = new KeyRing();
+        for( String entry : keyRing ) {
+            int separator = entry.indexOf(':');
+            if( separator < 1 ) {
+                throw new LushException( "lush.crypto.key-ring entries must be in the form id:key" );
+            }
+
+            int keyId = Integer.parseInt( entry.substring(0, separator).trim() );
+            byte[] decodedKey = Base64.getDecoder().decode( entry.substring(separator + 1).trim() );
+            this.keyRing.register( keyId, new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES") );
+        }
 
-        this.secretKey = new SecretKeySpec(decodedSecret, 0, decodedSecret.length, "AES");
-        this.accessKey = new IvParameterSpec(decodedAccess);
+        if( activeKeyId >= 0 ) {
+            this.keyRing.activate(activeKeyId);
+        }
     }
 }
@@ -0,0 +1,83 @@
+package com.px3j.lush.core.util;
+
+import com.px3j.lush.core.exception.LushException;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Set of AES keys, each identified by a one byte key id.  One of the keys is active and is used to encrypt, any key in
+ * the ring can be used to decrypt.  The key id is carried with the encrypted data so the decrypting key is found with a
+ * single array lookup.
+ * <br/><br/>
+ * Keys can be registered, activated and retired at runtime which allows keys to be rotated without a restart:
+ * <ol>
+ *     <li>register the new key on every service</li>
+ *     <li>activate it on the services that issue tickets</li>
+ *     <li>retire the old key once tickets encrypted with it have expired</li>
+ * </ol>
+ *
+ * @author Paul Parrone
+ */
+public class KeyRing {
+    public static final int MAX_KEY_ID = 255;
+
+    private final AtomicReferenceArray<SecretKey> keys = new AtomicReferenceArray<>(MAX_KEY_ID + 1);
+    private volatile int activeKeyId = -1;
+
+    /**
+     * Add (or replace) a key in the ring.
+     *
+     * @param keyId Id of the key, 0 - 255.
+     * @param key The key.
+     */
+    public void register(int keyId, SecretKey key) {
+        keys.set( checkKeyId(keyId), key );
+    }
+
+    /**
+     * Make a registered key the one used to encrypt.
+     *
+     * @param keyId Id of a registered key.
+     */
+    public void activate(int keyId) {
+        if( keys.get(checkKeyId(keyId)) == null ) {
+            throw new LushException( "No key registered with id: " + keyId );
+        }
+        activeKeyId = keyId;
+    }
+
+    /**
+     * Remove a key from the ring, data encrypted with it can no longer be decrypted.  The active key cannot be retired.
+     *
+     * @param keyId Id of the key to remove.
+     */
+    public void retire(int keyId) {
+        if( keyId == activeKeyId ) {
+            throw new LushException( "Cannot retire the active key: " + keyId );
+        }
+        keys.set( checkKeyId(keyId), null );
+    }
+
+    /**
+     * @param keyId Id of the key.
+     * @return The key or null if no key is registered with that id.
+     */
+    public SecretKey get(int keyId) {
+        return keyId < 0 || keyId > MAX_KEY_ID ? null : keys.get(keyId);
+    }
+
+    /**
+     * @return Id of the active key, -1 if no key has been activated.
+     */
+    public int getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    private static int checkKeyId(int keyId) {
+        if( keyId < 0 || keyId > MAX_KEY_ID ) {
+            throw new LushException( "Key id must be between 0 and " + MAX_KEY_ID + ": " + keyId );
+        }
+        return keyId;
+    }
+}
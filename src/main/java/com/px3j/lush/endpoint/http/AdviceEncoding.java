@@ -0,0 +1,45 @@
+package com.px3j.lush.endpoint.http;
+
+/**
+ * How the LushAdvice of a response is sent, chosen by the caller with the x-lush-advice-encoding request header:
+ * <pre>
+ *  json - the advice as JSON (the default)
+ *  cbor - the advice as Base64 encoded CBOR (see LushAdviceCbor), smaller and cheaper to parse for service to service
+ *         calls
+ *  none - no advice is sent, neither the header nor the trailing frame of streamed results
+ * </pre>
+ * Responses with advice in an encoding other than json have an x-lush-advice-encoding header naming it.  Advice moved
+ * into the body, and trailing frames, are always JSON.
+ *
+ * @author Paul Parrone
+ */
+public enum AdviceEncoding {
+    JSON,
+    CBOR,
+    NONE;
+
+    /**
+     * @param value Value of the x-lush-advice-encoding header, may be null.
+     * @param defaultEncoding Encoding used when the value is null or not recognized.
+     * @return The encoding named by the value.
+     */
+    public static AdviceEncoding from(String value, AdviceEncoding defaultEncoding) {
+        if( value == null ) {
+            return defaultEncoding;
+        }
+
+        for( AdviceEncoding encoding : values() ) {
+            if( encoding.name().equalsIgnoreCase(value.trim()) ) {
+                return encoding;
+            }
+        }
+        return defaultEncoding;
+    }
+
+    /**
+     * @return The name used in the x-lush-advice-encoding header.
+     */
+    public String headerValue() {
+        return name().toLowerCase();
+    }
+}
@@ -7,5 +7,6 @@ package com.px3j.lush.endpoint.http;
  */
 public class Constants {
     public static final String ADVICE_HEADER_NAME = "x-lush-advice";
+    public static final String ADVICE_ENCODING_HEADER_NAME = "x-lush-advice-encoding";
     public static final String TICKET_HEADER_NAME = "x-lush-ticket";
 }
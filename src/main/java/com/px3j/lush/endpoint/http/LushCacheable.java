@@ -0,0 +1,48 @@
+package com.px3j.lush.endpoint.http;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Cache the results of a LushControllerMethod.  Identical requests that arrive while the method is running share its
+ * result (single-flight), later ones are served from the cache until the ttl expires.  The LushAdvice produced by the
+ * call that ran the method is replayed to every request served from the cache, with an extra of
+ * <b>lush.cacheHit</b> set to true.
+ * <pre>
+ *     &#64;LushControllerMethod
+ *     &#64;LushCacheable( ttl = "30s", key = LushCacheable.Key.ARGUMENTS_AND_USER )
+ *     public Flux&lt;Cat&gt; cats( LushTicket ticket, String breed ) {
+ * </pre>
+ * Arguments that make up the key (a &#64;RequestBody included) must implement equals/hashCode.  A Flux is collected in
+ * full before it is cached, so only use this for bounded results.  Results whose advice has a negative (Lush) status
+ * code, ie: a timeout, are not cached.
+ *
+ * @author Paul Parrone
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LushCacheable {
+    enum Key {
+        /** Requests with the same arguments share results. */
+        ARGUMENTS,
+        /** Requests with the same arguments from the same user (ticket username) share results. */
+        ARGUMENTS_AND_USER
+    }
+
+    /**
+     * @return How long a result is cached (ie: "30s", "5m").
+     */
+    String ttl() default "1m";
+
+    /**
+     * @return Maximum number of results cached for the method.
+     */
+    long maximumSize() default 1000;
+
+    /**
+     * @return What makes up the cache key, the LushTicket and LushContext arguments are never part of it.
+     */
+    Key key() default Key.ARGUMENTS;
+}
@@ -10,10 +10,47 @@ import java.lang.annotation.Target;
 /**
  * Lush annotation to be used to inject Lush related functionality into a controller method.  Lush will automatically
  * decorate methods that have this annotation and that return either a Mono or a Flux.
+ * <br/><br/>
+ * Methods that block (ie: JDBC or other blocking clients, even when wrapped in Mono.fromCallable) should set
+ * <b>blocking = true</b>, Lush then runs them on LushBlockingScheduler rather than on a Netty event loop:
+ * <pre>
+ *     &#64;LushControllerMethod( blocking = true )
+ * </pre>
+ * A method that doesn't complete within its <b>timeout</b> (or <b>lush.decoration.timeout</b> if it doesn't specify one)
+ * is cancelled and the advice is given a status code of LushAdvice.STATUS_TIMEOUT:
+ * <pre>
+ *     &#64;LushControllerMethod( timeout = "2s" )
+ * </pre>
+ * A Flux method that publishes many small elements (ie: a bulk export) can set a <b>batchSize</b>, its encoded elements
+ * are then written (and flushed) in batches rather than one at a time.  A batch is written once it holds batchSize
+ * elements or, if a <b>batchWindow</b> is set, once the window has passed since its first element:
+ * <pre>
+ *     &#64;LushControllerMethod( batchSize = 500, batchWindow = "100ms" )
+ * </pre>
  *
  * @see ExampleController
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface LushControllerMethod {
+    /**
+     * @return true if the method blocks and must be run off the event loop.
+     */
+    boolean blocking() default false;
+
+    /**
+     * @return Maximum time the method may take (ie: "500ms", "2s"), "0" for no limit.  Defaults to the value of
+     * lush.decoration.timeout.
+     */
+    String timeout() default "";
+
+    /**
+     * @return Number of elements of a Flux written together, 0 (the default) writes each element on its own.
+     */
+    int batchSize() default 0;
+
+    /**
+     * @return Maximum time (ie: "100ms") spent collecting a batch before it is written, "" for no limit.
+     */
+    String batchWindow() default "";
 }
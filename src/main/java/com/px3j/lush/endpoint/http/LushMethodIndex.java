@@ -0,0 +1,45 @@
+package com.px3j.lush.endpoint.http;
+
+/**
+ * Describes the LushControllerMethod methods of a single controller.  Implementations are generated at compile time
+ * by the lush-processor annotation processor and found using java.util.ServiceLoader, this lets Lush know which
+ * methods to decorate (and whether they return a Mono or a Flux) without scanning annotations at runtime.
+ * <br/><br/>
+ * Controllers that aren't compiled with lush-processor continue to work, their annotations are read at runtime.
+ *
+ * @see LushMethods
+ * @author Paul Parrone
+ */
+public interface LushMethodIndex {
+    /**
+     * @return The controller this index describes.
+     */
+    Class<?> controllerClass();
+
+    /**
+     * Describe each LushControllerMethod method of the controller to the registry.
+     *
+     * @param registry Receives the methods.
+     */
+    void describe(Registry registry);
+
+    interface Registry {
+        void mono(String name, Class<?>... parameterTypes);
+        void flux(String name, Class<?>... parameterTypes);
+
+        /**
+         * Called in addition to mono/flux for methods declared with LushControllerMethod(blocking = true).
+         */
+        void blocking(String name, Class<?>... parameterTypes);
+
+        /**
+         * Called in addition to mono/flux for methods that declare a LushControllerMethod timeout.
+         */
+        void timeout(String timeout, String name, Class<?>... parameterTypes);
+
+        /**
+         * Called in addition to flux for methods that declare a LushControllerMethod batchSize.
+         */
+        void batch(int size, String window, String name, Class<?>... parameterTypes);
+    }
+}
@@ -0,0 +1,217 @@
+package com.px3j.lush.endpoint.http;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers whether a method is a LushControllerMethod, what kind of publisher it returns, whether it blocks, the
+ * timeout it declares and how its output is batched.  Generated indexes (see
+ * LushMethodIndex) are loaded once, methods of controllers without an index fall back to reading the annotation,
+ * either way the answer is cached per method.
+ *
+ * @author Paul Parrone
+ */
+@Slf4j( topic = "lush.core.debug")
+public final class LushMethods {
+    public enum Kind { MONO, FLUX, NONE }
+
+    private static final Map<Class<?>,Map<String,Kind>> indexed = new HashMap<>();
+    private static final Map<Class<?>,Set<String>> indexedBlocking = new HashMap<>();
+    private static final Map<Method,Kind> kinds = new ConcurrentHashMap<>();
+    private static final Map<Class<?>,Map<String,String>> indexedTimeouts = new HashMap<>();
+    private static final Map<Method,Boolean> blocking = new ConcurrentHashMap<>();
+    private static final Map<Class<?>,Map<String,Batch>> indexedBatches = new HashMap<>();
+    private static final Map<Method,Batch> batches = new ConcurrentHashMap<>();
+
+    static {
+        loadIndexes();
+    }
+
+    private LushMethods() {
+    }
+
+    /**
+     * @param method The method to check.
+     * @return MONO or FLUX for a LushControllerMethod, otherwise NONE.
+     */
+    public static Kind kindOf(final Method method) {
+        Kind kind = kinds.get(method);
+        if( kind == null ) {
+            kind = resolve(method);
+            kinds.put( method, kind );
+        }
+        return kind;
+    }
+
+    /**
+     * @param method The method to check.
+     * @return true if the method is a LushControllerMethod.
+     */
+    public static boolean isLushControllerMethod(final Method method) {
+        return kindOf(method) != Kind.NONE;
+    }
+
+    /**
+     * @param method The method to check.
+     * @return true if the method is a LushControllerMethod declared with blocking = true.
+     */
+    public static boolean isBlocking(final Method method) {
+        Boolean isBlocking = blocking.get(method);
+        if( isBlocking == null ) {
+            isBlocking = resolveBlocking(method);
+            blocking.put( method, isBlocking );
+        }
+        return isBlocking;
+    }
+
+    private static boolean resolveBlocking(final Method method) {
+        Set<String> controllerMethods = indexedBlocking.get( method.getDeclaringClass() );
+        if( controllerMethods != null ) {
+            return controllerMethods.contains( key(method.getName(), method.getParameterTypes()) );
+        }
+
+        LushControllerMethod annotation = method.getAnnotation(LushControllerMethod.class);
+        return annotation != null && annotation.blocking();
+    }
+
+    /**
+     * @param method The method to check.
+     * @return The timeout declared by the method's LushControllerMethod annotation, "" if it doesn't declare one.
+     */
+    public static String timeoutOf(final Method method) {
+        Map<String,String> controllerMethods = indexedTimeouts.get( method.getDeclaringClass() );
+        if( controllerMethods != null ) {
+            return controllerMethods.getOrDefault( key(method.getName(), method.getParameterTypes()), "" );
+        }
+
+        LushControllerMethod annotation = method.getAnnotation(LushControllerMethod.class);
+        return annotation != null ? annotation.timeout() : "";
+    }
+
+    /**
+     * @param method The method to check.
+     * @return The batching declared by the method's LushControllerMethod annotation, Batch.NONE if it doesn't batch.
+     */
+    public static Batch batchOf(final Method method) {
+        Batch batch = batches.get(method);
+        if( batch == null ) {
+            batch = resolveBatch(method);
+            batches.put( method, batch );
+        }
+        return batch;
+    }
+
+    private static Batch resolveBatch(final Method method) {
+        Map<String,Batch> controllerMethods = indexedBatches.get( method.getDeclaringClass() );
+        if( controllerMethods != null ) {
+            return controllerMethods.getOrDefault( key(method.getName(), method.getParameterTypes()), Batch.NONE );
+        }
+
+        LushControllerMethod annotation = method.getAnnotation(LushControllerMethod.class);
+        return annotation != null && annotation.batchSize() > 0
+                ? new Batch( annotation.batchSize(), annotation.batchWindow() )
+                : Batch.NONE;
+    }
+
+    private static Kind resolve(final Method method) {
+        Map<String,Kind> controllerMethods = indexed.get( method.getDeclaringClass() );
+        if( controllerMethods != null ) {
+            return controllerMethods.getOrDefault( key(method.getName(), method.getParameterTypes()), Kind.NONE );
+        }
+
+        if( !method.isAnnotationPresent(LushControllerMethod.class) ) {
+            return Kind.NONE;
+        }
+        if( Flux.class.isAssignableFrom(method.getReturnType()) ) {
+            return Kind.FLUX;
+        }
+        return Mono.class.isAssignableFrom(method.getReturnType()) ? Kind.MONO : Kind.NONE;
+    }
+
+    private static void loadIndexes() {
+        for( LushMethodIndex index : ServiceLoader.load(LushMethodIndex.class, LushMethods.class.getClassLoader()) ) {
+            Map<String,Kind> controllerMethods = new HashMap<>();
+            Set<String> blockingMethods = new HashSet<>();
+            Map<String,String> timeouts = new HashMap<>();
+            Map<String,Batch> batchMethods = new HashMap<>();
+            index.describe( new LushMethodIndex.Registry() {
+                @Override
+                public void mono(String name, Class<?>... parameterTypes) {
+                    controllerMethods.put( key(name, parameterTypes), Kind.MONO );
+                }
+
+                @Override
+                public void flux(String name, Class<?>... parameterTypes) {
+                    controllerMethods.put( key(name, parameterTypes), Kind.FLUX );
+                }
+
+                @Override
+                public void blocking(String name, Class<?>... parameterTypes) {
+                    blockingMethods.add( key(name, parameterTypes) );
+                }
+
+                @Override
+                public void timeout(String timeout, String name, Class<?>... parameterTypes) {
+                    timeouts.put( key(name, parameterTypes), timeout );
+                }
+
+                @Override
+                public void batch(int size, String window, String name, Class<?>... parameterTypes) {
+                    batchMethods.put( key(name, parameterTypes), new Batch(size, window) );
+                }
+            });
+
+            indexed.put( index.controllerClass(), controllerMethods );
+            indexedBlocking.put( index.controllerClass(), blockingMethods );
+            indexedTimeouts.put( index.controllerClass(), timeouts );
+            indexedBatches.put( index.controllerClass(), batchMethods );
+            log.debug( "Loaded Lush method index for: " + index.controllerClass().getName() );
+        }
+    }
+
+    private static String key(String name, Class<?>[] parameterTypes) {
+        StringBuilder key = new StringBuilder(name).append('(');
+        for( Class<?> type : parameterTypes ) {
+            key.append( type.getName() ).append( ',' );
+        }
+        return key.append(')').toString();
+    }
+
+    /**
+     * Batching of a Flux method's output, see LushControllerMethod::batchSize.
+     */
+    public static final class Batch {
+        public static final Batch NONE = new Batch(0, "");
+
+        private final int size;
+        private final String window;
+
+        Batch(int size, String window) {
+            this.size = size;
+            this.window = window;
+        }
+
+        /**
+         * @return Number of elements written together, 0 if the method doesn't batch.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return Maximum time spent collecting a batch, "" for no limit.
+         */
+        public String window() {
+            return window;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.px3j.lush.endpoint.http;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * Everything Lush knows about a request: its LushContext (and so its advice and trace id) and its ticket.  There is one
+ * instance per request, held as an attribute of the exchange and in the Reactor context under KEY, so each is found
+ * with a single lookup.
+ * <br/><br/>
+ * The context is set by EndpointFilter and the ticket by LushSecurityContextRepository once it has decoded it, along
+ * with the ticket as it was sent so it can be forwarded to other Lush services (see LushExchangeFilter).  Each can
+ * only be set once, later calls are ignored.  The ticket is null if the request has no (valid) ticket, or if
+ * Spring Security hasn't loaded it yet (ie: on a public path).
+ *
+ * @author Paul Parrone
+ */
+public final class LushRequestState {
+    /**
+     * Key of the state in the Reactor context.
+     */
+    public static final Class<LushRequestState> KEY = LushRequestState.class;
+
+    private static final String ATTRIBUTE = LushRequestState.class.getName();
+
+    private volatile LushContext context;
+    private volatile LushTicket ticket;
+    private volatile String encodedTicket;
+
+    private LushRequestState() {
+    }
+
+    /**
+     * Get the state of the request, creating it if this is the first time it is asked for.
+     *
+     * @param exchange The exchange of the request.
+     * @return The state of the request.
+     */
+    public static LushRequestState of(ServerWebExchange exchange) {
+        LushRequestState state = exchange.getAttribute(ATTRIBUTE);
+        if( state == null ) {
+            state = (LushRequestState) exchange.getAttributes().computeIfAbsent( ATTRIBUTE, k -> new LushRequestState() );
+        }
+        return state;
+    }
+
+    /**
+     * Create the state of a request that has no exchange (ie: one received over RSocket), it is only held in the Reactor
+     * context.
+     *
+     * @return A new, empty, state.
+     */
+    public static LushRequestState create() {
+        return new LushRequestState();
+    }
+
+    /**
+     * @param ctx The Reactor context of the request.
+     * @return The state of the request, null if the request didn't pass through EndpointFilter.
+     */
+    public static LushRequestState from(ContextView ctx) {
+        return ctx.getOrDefault( KEY, null );
+    }
+
+    /**
+     * @return A Mono of the state of the current request, empty if there is none.
+     */
+    public static Mono<LushRequestState> current() {
+        return Mono.deferContextual( ctx -> Mono.justOrEmpty(from(ctx)) );
+    }
+
+    public LushContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return The advice of the request, null if the context hasn't been set.
+     */
+    public LushAdvice getAdvice() {
+        LushContext c = context;
+        return c != null ? c.getAdvice() : null;
+    }
+
+    /**
+     * @return The trace id of the request, null if the context hasn't been set.
+     */
+    public String getTraceId() {
+        LushContext c = context;
+        return c != null ? c.getTraceId() : null;
+    }
+
+    public LushTicket getTicket() {
+        return ticket;
+    }
+
+    /**
+     * @return The ticket as it was sent in the x-lush-ticket header, null unless the ticket has been set.
+     */
+    public String getEncodedTicket() {
+        return encodedTicket;
+    }
+
+    /**
+     * Set the context of the request, ignored if it has already been set.
+     *
+     * @param context The context.
+     * @return The context of the request, ie: the one that was already set.
+     */
+    public synchronized LushContext setContext(LushContext context) {
+        if( this.context == null ) {
+            this.context = context;
+        }
+        return this.context;
+    }
+
+    /**
+     * Set the ticket of the request, ignored if it has already been set.
+     *
+     * @param ticket The decoded ticket.
+     */
+    public void setTicket(LushTicket ticket) {
+        setTicket( ticket, null );
+    }
+
+    /**
+     * Set the ticket of the request, ignored if it has already been set.
+     *
+     * @param ticket The decoded ticket.
+     * @param encodedTicket The ticket as it was sent in the x-lush-ticket header.
+     */
+    public synchronized void setTicket(LushTicket ticket, String encodedTicket) {
+        if( this.ticket == null ) {
+            this.ticket = ticket;
+            this.encodedTicket = encodedTicket;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.endpoint.http.AdviceEncoding;
+import com.px3j.lush.endpoint.http.Constants;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Response that adds the x-lush-advice header (written by AdviceHeaderWriter) when it is committed.
+ * Access-Control-Expose-Headers is only added for cross-origin requests, the only ones it applies to.
+ * <br/><br/>
+ * Advice larger than the header budget would trip the header limits of proxies.  For a JSON result of a Lush
+ * controller method it is moved into the body instead, the result is wrapped in an envelope:
+ * <pre>
+ *  {"x-lush-advice":{...},"body":&lt;the result&gt;}
+ * </pre>
+ * and the header is reduced to the trace id and status code with an extra of <b>lush.adviceInBody</b>.  Otherwise the
+ * header is reduced the same way with an extra of <b>lush.adviceTruncated</b>, streamed results still receive the full
+ * advice in their trailing frame (see AdviceTrailerResponse).
+ * <br/><br/>
+ * The header is written in the encoding the caller asked for, JSON or CBOR (see AdviceEncoding), advice moved into the
+ * body is always JSON.
+ *
+ * @author Paul Parrone
+ */
+class AdviceHeaderResponse extends ServerHttpResponseDecorator {
+    static final String IN_BODY_EXTRA = "lush.adviceInBody";
+    static final String TRUNCATED_EXTRA = "lush.adviceTruncated";
+
+    private static final byte[] ENVELOPE_START = ("{\"" + Constants.ADVICE_HEADER_NAME + "\":").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENVELOPE_BODY = ",\"body\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENVELOPE_END = "}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENVELOPE_EMPTY_END = "null}".getBytes(StandardCharsets.UTF_8);
+
+    private final ServerWebExchange exchange;
+    private final AdviceHeaderWriter adviceWriter;
+    private final AdviceEncoding encoding;
+
+    // Set when the advice is moved into the body, before the response is committed.
+    private String headerValue;
+
+    AdviceHeaderResponse(ServerHttpResponse delegate, ServerWebExchange exchange, AdviceHeaderWriter adviceWriter, AdviceEncoding encoding) {
+        super(delegate);
+        this.exchange = exchange;
+        this.adviceWriter = adviceWriter;
+        this.encoding = encoding;
+
+        delegate.beforeCommit( () -> Mono.fromRunnable(this::writeHeader) );
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if( !canEnvelope() ) {
+            return super.writeWith( body );
+        }
+
+        // Decide once the first buffer (or completion) arrives, by then the method has produced its advice.
+        Flux<DataBuffer> enveloped = Flux.<DataBuffer>from(body).switchOnFirst( (signal, buffers) -> {
+            LushAdvice advice = LushRequestState.of(exchange).getAdvice();
+            if( advice == null || signal.isOnError() ) {
+                return buffers;
+            }
+
+            String value = adviceWriter.write( advice, encoding );
+            if( adviceWriter.fitsHeader(value) ) {
+                headerValue = value;
+                return buffers;
+            }
+
+            String json = encoding == AdviceEncoding.JSON ? value : adviceWriter.write( advice );
+            headerValue = adviceWriter.writeSummary( advice, IN_BODY_EXTRA, encoding );
+            getHeaders().remove( HttpHeaders.CONTENT_LENGTH );
+
+            DataBuffer start = bufferFactory().allocateBuffer( ENVELOPE_START.length + json.length() + ENVELOPE_BODY.length );
+            start.write( ENVELOPE_START ).write( json, StandardCharsets.UTF_8 ).write( ENVELOPE_BODY );
+            return signal.hasValue()
+                    ? Flux.concat( Mono.just(start), buffers, Mono.fromSupplier(() -> bufferFactory().wrap(ENVELOPE_END)) )
+                    : Flux.concat( Mono.just(start), Mono.fromSupplier(() -> bufferFactory().wrap(ENVELOPE_EMPTY_END)) );
+        });
+
+        return super.writeWith( enveloped );
+    }
+
+    /**
+     * @return true for a JSON (not streamed) result of a Lush controller method.
+     */
+    private boolean canEnvelope() {
+        MediaType contentType = getHeaders().getContentType();
+        return contentType != null
+                && MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                && LushResultHandler.isLushControllerMethod( exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) );
+    }
+
+    private void writeHeader() {
+        String value = headerValue;
+        if( value == null ) {
+            LushAdvice advice = LushRequestState.of(exchange).getAdvice();
+            if( advice == null ) {
+                return;
+            }
+
+            value = adviceWriter.write( advice, encoding );
+            if( !adviceWriter.fitsHeader(value) ) {
+                value = adviceWriter.writeSummary( advice, TRUNCATED_EXTRA, encoding );
+            }
+        }
+
+        HttpHeaders headers = getHeaders();
+        boolean crossOrigin = exchange.getRequest().getHeaders().getOrigin() != null;
+        if( crossOrigin ) {
+            headers.add( HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, Constants.ADVICE_HEADER_NAME );
+        }
+        if( encoding != AdviceEncoding.JSON ) {
+            if( crossOrigin ) {
+                headers.add( HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, Constants.ADVICE_ENCODING_HEADER_NAME );
+            }
+            headers.set( Constants.ADVICE_ENCODING_HEADER_NAME, encoding.headerValue() );
+        }
+        headers.add( Constants.ADVICE_HEADER_NAME, value );
+    }
+}
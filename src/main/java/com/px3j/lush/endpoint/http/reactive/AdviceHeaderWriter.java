@@ -0,0 +1,338 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushAdviceCbor;
+import com.px3j.lush.endpoint.http.AdviceEncoding;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes a LushAdvice as JSON, in the same form Gson does (so callers parse it as before), for the x-lush-advice header
+ * and the other places the advice is sent.
+ * <br/><br/>
+ * The advice is written directly into a StringBuilder that each thread reuses, as are warnings and extras whose values
+ * are strings, numbers, booleans, maps or collections of those.  Any other value (ie: a POJO) is turned into a JSON tree
+ * by Gson and the tree is written the same way.  Every string (keys and values) is escaped so the result is printable
+ * ASCII, a valid header value whatever the advice holds.  Default advice (status code 200, no warnings or extras) - the
+ * case for most responses - is a constant around the trace id.
+ * <br/><br/>
+ * For callers that ask for it (see AdviceEncoding) the header is written as Base64 encoded CBOR instead.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.advice.header-budget - the largest x-lush-advice header (in bytes) written, larger advice is moved into
+ *                              the response body (see AdviceHeaderResponse) (default: 4096)
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+class AdviceHeaderWriter {
+    private static final String DEFAULT_PREFIX = "{\"traceId\":\"";
+    private static final String DEFAULT_SUFFIX = "\",\"statusCode\":200,\"warnings\":[],\"extras\":{}}";
+
+    // Buffers that grew beyond this (ie: for a huge advice) aren't kept.
+    private static final int MAX_RETAINED = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial( () -> new StringBuilder(256) );
+
+    private final Gson gson = new Gson();
+    private final int headerBudget;
+
+    @Autowired
+    AdviceHeaderWriter(@Value("${lush.advice.header-budget:4096}") final int headerBudget) {
+        this.headerBudget = headerBudget;
+        log.debug( String.format("Lush :: AdviceHeaderWriter header-budget: %d", headerBudget) );
+    }
+
+    /**
+     * @param advice The advice to write.
+     * @return The advice as JSON.
+     */
+    String write(LushAdvice advice) {
+        String traceId = advice.getTraceId();
+        if( advice.getStatusCode() == 200 && !advice.hasWarnings() && !advice.hasExtras() && traceId != null && isPlain(traceId) ) {
+            return DEFAULT_PREFIX + traceId + DEFAULT_SUFFIX;
+        }
+
+        StringBuilder json = buffer();
+        try {
+            writeHead( json, advice );
+
+            json.append( ",\"warnings\":[" );
+            boolean first = true;
+            for( LushAdvice.LushWarning warning : advice.getWarnings() ) {
+                if( !first ) {
+                    json.append( ',' );
+                }
+                writeWarning( json, warning );
+                first = false;
+            }
+
+            json.append( "],\"extras\":{" );
+            first = true;
+            for( Map.Entry<String,Object> extra : advice.getExtras().entrySet() ) {
+                // Gson leaves out null values.
+                if( extra.getValue() == null ) {
+                    continue;
+                }
+                if( !first ) {
+                    json.append( ',' );
+                }
+                writeString( json, extra.getKey() );
+                json.append( ':' );
+                writeValue( json, extra.getValue() );
+                first = false;
+            }
+
+            return json.append( "}}" ).toString();
+        }
+        finally {
+            release( json );
+        }
+    }
+
+    /**
+     * @param advice The advice to write.
+     * @param encoding The encoding of the header, JSON or CBOR.
+     * @return The advice in the given encoding.
+     */
+    String write(LushAdvice advice, AdviceEncoding encoding) {
+        return encoding == AdviceEncoding.CBOR ? LushAdviceCbor.encodeToString(advice) : write(advice);
+    }
+
+    /**
+     * @param advice The advice to write.
+     * @param extra Name of the extra that explains why the advice was left out.
+     * @param encoding The encoding of the header, JSON or CBOR.
+     * @return The summary (see writeSummary) in the given encoding.
+     */
+    String writeSummary(LushAdvice advice, String extra, AdviceEncoding encoding) {
+        if( encoding != AdviceEncoding.CBOR ) {
+            return writeSummary( advice, extra );
+        }
+
+        LushAdvice summary = new LushAdvice( advice.getTraceId(), advice.getStatusCode() );
+        summary.putExtra( extra, true );
+        return LushAdviceCbor.encodeToString( summary );
+    }
+
+    /**
+     * Write only the trace id and status code of the advice, with a single extra set to true.  Used in place of advice
+     * that doesn't fit in the header.
+     *
+     * @param advice The advice to write.
+     * @param extra Name of the extra that explains why the advice was left out.
+     * @return The summary as JSON.
+     */
+    String writeSummary(LushAdvice advice, String extra) {
+        StringBuilder json = buffer();
+        try {
+            writeHead( json, advice );
+            json.append( ",\"warnings\":[],\"extras\":{" );
+            writeString( json, extra );
+            return json.append( ":true}}" ).toString();
+        }
+        finally {
+            release( json );
+        }
+    }
+
+    /**
+     * @param json Advice written by this writer, in either encoding.
+     * @return true if its UTF-8 encoding is within the header budget.
+     */
+    boolean fitsHeader(String json) {
+        // Each char is at least a byte, at most 3 (a surrogate pair is 4 bytes for 2 chars).
+        if( json.length() > headerBudget ) {
+            return false;
+        }
+        if( json.length() * 3L <= headerBudget ) {
+            return true;
+        }
+
+        long bytes = 0;
+        for( int i=0; i<json.length(); i++ ) {
+            char c = json.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes <= headerBudget;
+    }
+
+    private static void writeHead(StringBuilder json, LushAdvice advice) {
+        json.append( '{' );
+        if( advice.getTraceId() != null ) {
+            json.append( "\"traceId\":" );
+            writeString( json, advice.getTraceId() );
+            json.append( ',' );
+        }
+        json.append( "\"statusCode\":" ).append( advice.getStatusCode() );
+    }
+
+    private void writeWarning(StringBuilder json, LushAdvice.LushWarning warning) {
+        json.append( "{\"code\":" ).append( warning.getCode() );
+        if( warning.getDetail() != null ) {
+            json.append( ",\"detail\":" );
+            writeValue( json, warning.getDetail() );
+        }
+        json.append( '}' );
+    }
+
+    /**
+     * Write a value as Gson would.  Strings, numbers, booleans, maps and collections are written directly, anything
+     * else goes through a Gson JSON tree.  Null members of a map are left out, as Gson does.
+     */
+    private void writeValue(StringBuilder json, Object value) {
+        if( value == null ) {
+            json.append( "null" );
+        }
+        else if( value instanceof String ) {
+            writeString( json, (String) value );
+        }
+        else if( value instanceof Boolean || value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigInteger || value instanceof BigDecimal ) {
+            json.append( value );
+        }
+        else if( value instanceof Double && Double.isFinite((Double) value) ) {
+            json.append( value );
+        }
+        else if( value instanceof Map ) {
+            json.append( '{' );
+            boolean first = true;
+            for( Map.Entry<?,?> member : ((Map<?,?>) value).entrySet() ) {
+                if( member.getValue() == null ) {
+                    continue;
+                }
+                if( !first ) {
+                    json.append( ',' );
+                }
+                writeString( json, String.valueOf(member.getKey()) );
+                json.append( ':' );
+                writeValue( json, member.getValue() );
+                first = false;
+            }
+            json.append( '}' );
+        }
+        else if( value instanceof Collection ) {
+            json.append( '[' );
+            boolean first = true;
+            for( Object item : (Collection<?>) value ) {
+                if( !first ) {
+                    json.append( ',' );
+                }
+                writeValue( json, item );
+                first = false;
+            }
+            json.append( ']' );
+        }
+        else {
+            writeJson( json, gson.toJsonTree(value) );
+        }
+    }
+
+    /**
+     * Write a JSON tree as Gson would, except that strings are written by writeString.  Objects have no null members,
+     * Gson leaves them out of the tree.
+     */
+    private static void writeJson(StringBuilder json, JsonElement element) {
+        if( element == null || element.isJsonNull() ) {
+            json.append( "null" );
+        }
+        else if( element.isJsonPrimitive() ) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if( primitive.isString() ) {
+                writeString( json, primitive.getAsString() );
+            }
+            else {
+                // Numbers and booleans, as Gson writes them.
+                json.append( primitive.toString() );
+            }
+        }
+        else if( element.isJsonArray() ) {
+            json.append( '[' );
+            boolean first = true;
+            for( JsonElement item : element.getAsJsonArray() ) {
+                if( !first ) {
+                    json.append( ',' );
+                }
+                writeJson( json, item );
+                first = false;
+            }
+            json.append( ']' );
+        }
+        else {
+            json.append( '{' );
+            boolean first = true;
+            for( Map.Entry<String,JsonElement> member : element.getAsJsonObject().entrySet() ) {
+                if( !first ) {
+                    json.append( ',' );
+                }
+                writeString( json, member.getKey() );
+                json.append( ':' );
+                writeJson( json, member.getValue() );
+                first = false;
+            }
+            json.append( '}' );
+        }
+    }
+
+    /**
+     * Write a JSON string, anything other than printable ASCII is escaped so the result is a valid header value.
+     */
+    private static void writeString(StringBuilder json, String s) {
+        json.append( '"' );
+        for( int i=0; i<s.length(); i++ ) {
+            char c = s.charAt(i);
+            if( c == '"' || c == '\\' ) {
+                json.append( '\\' ).append( c );
+            }
+            else if( c < 0x20 || c > 0x7E ) {
+                json.append( "\\u" );
+                String hex = Integer.toHexString(c);
+                for( int pad = hex.length(); pad < 4; pad++ ) {
+                    json.append( '0' );
+                }
+                json.append( hex );
+            }
+            else {
+                json.append( c );
+            }
+        }
+        json.append( '"' );
+    }
+
+    /**
+     * @return true if the string can be written as is.
+     */
+    private static boolean isPlain(String s) {
+        for( int i=0; i<s.length(); i++ ) {
+            char c = s.charAt(i);
+            if( c == '"' || c == '\\' || c < 0x20 || c > 0x7E ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder json = buffers.get();
+        json.setLength( 0 );
+        return json;
+    }
+
+    private static void release(StringBuilder json) {
+        if( json.capacity() > MAX_RETAINED ) {
+            buffers.remove();
+        }
+    }
+}
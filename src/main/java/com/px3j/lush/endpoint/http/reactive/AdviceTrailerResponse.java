@@ -0,0 +1,79 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.endpoint.http.Constants;
+import com.px3j.lush.endpoint.http.LushMethods;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Response that ends a streamed (NDJSON or SSE) Flux result of a Lush controller method with a trailing frame holding
+ * the final LushAdvice.  The x-lush-advice header is written when the response is committed, ie: with the first
+ * element, so it misses any advice added after that - the trailing frame has all of it.  Elements are still written
+ * (and flushed) one at a time, nothing is buffered.
+ * <br/><br/>
+ * The trailing frame is:
+ * <pre>
+ *  application/x-ndjson - a final line of {"x-lush-advice":{...}}
+ *  text/event-stream    - a final event named x-lush-advice with the advice as its data
+ * </pre>
+ * Any other response is written as is.
+ * <br/><br/>
+ * The trailing frame changes what a caller reads from the stream, it is only added when
+ * <b>lush.streaming.advice-trailer</b> is true (see EndpointFilter).
+ *
+ * @author Paul Parrone
+ */
+class AdviceTrailerResponse extends ServerHttpResponseDecorator {
+    private final ServerWebExchange exchange;
+    private final AdviceHeaderWriter adviceWriter;
+
+    AdviceTrailerResponse(ServerHttpResponse delegate, ServerWebExchange exchange, AdviceHeaderWriter adviceWriter) {
+        super(delegate);
+        this.exchange = exchange;
+        this.adviceWriter = adviceWriter;
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        // Streaming writers write with flushes, other writers aren't affected.
+        MediaType contentType = getHeaders().getContentType();
+        boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType);
+        boolean sse = MediaType.TEXT_EVENT_STREAM.isCompatibleWith(contentType);
+        if( (!ndjson && !sse) || !isLushFlux() ) {
+            return super.writeAndFlushWith( body );
+        }
+
+        // The trailer is rendered once the body completes so it has the final advice.
+        Mono<Publisher<DataBuffer>> trailer = Mono.fromSupplier( () -> Mono.just(trailer(ndjson)) );
+        return super.writeAndFlushWith( Flux.concat(body, trailer) );
+    }
+
+    private boolean isLushFlux() {
+        Object handler = exchange.getAttribute( HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE );
+        return handler instanceof HandlerMethod
+                && LushMethods.kindOf( ((HandlerMethod) handler).getMethod() ) == LushMethods.Kind.FLUX;
+    }
+
+    private DataBuffer trailer(boolean ndjson) {
+        LushAdvice lushAdvice = LushRequestState.of(exchange).getAdvice();
+        String advice = lushAdvice != null ? adviceWriter.write(lushAdvice) : "null";
+
+        String frame = ndjson
+                ? "{\"" + Constants.ADVICE_HEADER_NAME + "\":" + advice + "}\n"
+                : "event:" + Constants.ADVICE_HEADER_NAME + "\ndata:" + advice + "\n\n";
+
+        return bufferFactory().wrap( frame.getBytes(StandardCharsets.UTF_8) );
+    }
+}
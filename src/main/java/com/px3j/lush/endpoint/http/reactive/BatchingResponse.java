@@ -0,0 +1,285 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.endpoint.http.LushMethods;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Response that writes the encoded elements of a Flux result in batches, for Lush controller methods that declare a
+ * batchSize (see LushControllerMethod).  The buffers of a batch are joined into a single DataBuffer, so a batch costs
+ * one write - and for streamed (NDJSON or SSE) results one flush - rather than one per element.  A streamed element
+ * may be encoded as several buffers (ie: an SSE event), they are joined first so an element is never split across
+ * flushes.
+ * <br/><br/>
+ * A batch is written once it holds batchSize elements, once the batchWindow has passed since its first element (even if
+ * no other element arrives), and when the result completes.  Elements are only requested a batch at a time while the
+ * response is asking for batches, so backpressure is kept: a batch whose window passes while the response isn't asking
+ * (ie: a slow caller) is held until it does, rather than failing the response as Reactor's bufferTimeout would.
+ * <br/><br/>
+ * Any other response is written as is.
+ *
+ * @author Paul Parrone
+ */
+class BatchingResponse extends ServerHttpResponseDecorator {
+    private final ServerWebExchange exchange;
+
+    BatchingResponse(ServerHttpResponse delegate, ServerWebExchange exchange) {
+        super(delegate);
+        this.exchange = exchange;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        LushMethods.Batch batch = batchOf();
+        return batch.size() > 0
+                ? super.writeWith( batch(Flux.from(body), batch) )
+                : super.writeWith( body );
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        LushMethods.Batch batch = batchOf();
+        if( batch.size() == 0 ) {
+            return super.writeAndFlushWith( body );
+        }
+
+        // Streaming writers flush after each element, flush after each batch instead.
+        Flux<DataBuffer> elements = Flux.from(body).concatMap( DataBufferUtils::join, 1 );
+        return super.writeAndFlushWith( batch(elements, batch).map(Mono::just) );
+    }
+
+    private LushMethods.Batch batchOf() {
+        Object handler = exchange.getAttribute( HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE );
+        if( !(handler instanceof HandlerMethod) ) {
+            return LushMethods.Batch.NONE;
+        }
+
+        Method method = ((HandlerMethod) handler).getMethod();
+        return LushMethods.kindOf(method) == LushMethods.Kind.FLUX ? LushMethods.batchOf(method) : LushMethods.Batch.NONE;
+    }
+
+    private Flux<DataBuffer> batch(Flux<? extends DataBuffer> buffers, LushMethods.Batch batch) {
+        Duration window = batch.window().isEmpty() ? Duration.ZERO : DurationStyle.detectAndParse( batch.window() );
+        return batch( buffers, batch.size(), window, bufferFactory() );
+    }
+
+    /**
+     * Join buffers in batches of size, a batch is emitted early once window has passed since its first buffer.
+     *
+     * @param window Duration.ZERO to only emit full batches (and the last one).
+     */
+    static Flux<DataBuffer> batch(Flux<? extends DataBuffer> buffers, int size, Duration window, DataBufferFactory bufferFactory) {
+        Flux<DataBuffer> batches = window.isZero()
+                ? buffers.buffer( size ).map( bufferFactory::join )
+                : Flux.create( sink -> {
+                    WindowedBatches windowed = new WindowedBatches( sink, size, window, bufferFactory );
+                    buffers.subscribe( windowed );
+                    sink.onRequest( n -> windowed.requestMore() );
+                    sink.onDispose( windowed::dispose );
+                });
+
+        return batches.doOnDiscard( DataBuffer.class, DataBufferUtils::release );
+    }
+
+    /**
+     * Collects the batches of a batchWindow.  No more than a batch's worth of buffers is requested from the body at a
+     * time, and only while the response is asking for batches.  A batch that is emitted while the response isn't
+     * asking (its window passed) is queued by the sink, the buffers requested for it that are still to arrive start
+     * the next batch.
+     * <br/><br/>
+     * Signals come from the body and from the window's timer, the state is guarded by locking.  The response takes
+     * locks of its own while it requests and writes (ie: ChannelSendOperator), so no lock is held while calling it or
+     * the body: closed batches are queued and emitted, in order, by a single thread at a time.
+     */
+    private static final class WindowedBatches extends BaseSubscriber<DataBuffer> {
+        private final FluxSink<DataBuffer> sink;
+        private final int size;
+        private final Duration window;
+        private final DataBufferFactory bufferFactory;
+
+        private List<DataBuffer> batch = new ArrayList<>();
+        // Closed batches waiting to be emitted.
+        private final Queue<List<DataBuffer>> ready = new ArrayDeque<>();
+        // Buffers requested from the body that haven't arrived yet.
+        private int outstanding;
+        // Tells the window's timer apart from the timers of batches that were already closed.
+        private long batchNumber;
+        private Disposable timer;
+        private boolean done;
+        private Throwable error;
+
+        // Threads that asked to emit, only the first one does.
+        private final AtomicInteger emitters = new AtomicInteger();
+
+        private WindowedBatches(FluxSink<DataBuffer> sink, int size, Duration window, DataBufferFactory bufferFactory) {
+            this.sink = sink;
+            this.size = size;
+            this.window = window;
+            this.bufferFactory = bufferFactory;
+        }
+
+        @Override
+        public Context currentContext() {
+            // The body reads the request's state (ie: its security context) from the response's context.
+            return Context.of( sink.contextView() );
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            // Nothing is requested until the response asks for a batch.
+        }
+
+        @Override
+        protected void hookOnNext(DataBuffer buffer) {
+            synchronized( this ) {
+                outstanding--;
+                batch.add( buffer );
+                if( batch.size() == 1 ) {
+                    final long number = batchNumber;
+                    timer = Schedulers.parallel().schedule( () -> windowPassed(number), window.toNanos(), TimeUnit.NANOSECONDS );
+                }
+                if( batch.size() >= size ) {
+                    close();
+                }
+            }
+            emit();
+            requestMore();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized( this ) {
+                close();
+                done = true;
+            }
+            emit();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized( this ) {
+                release( batch );
+                done = true;
+                error = throwable;
+            }
+            emit();
+        }
+
+        void requestMore() {
+            int wanted;
+            synchronized( this ) {
+                wanted = size - batch.size() - outstanding;
+                if( wanted <= 0 || sink.requestedFromDownstream() == 0 || isDisposed() ) {
+                    return;
+                }
+                outstanding += wanted;
+            }
+            request( wanted );
+        }
+
+        private void windowPassed(long number) {
+            synchronized( this ) {
+                if( number != batchNumber || isDisposed() ) {
+                    return;
+                }
+                close();
+            }
+            emit();
+            requestMore();
+        }
+
+        /**
+         * Queue the batch being collected, called holding the lock.
+         */
+        private void close() {
+            if( batch.isEmpty() ) {
+                return;
+            }
+
+            ready.add( batch );
+            batch = new ArrayList<>( size );
+            batchNumber++;
+            timer.dispose();
+        }
+
+        /**
+         * Emit the queued batches, and then the end of the body.  A thread that finds another one emitting leaves its
+         * batches to it.
+         */
+        private void emit() {
+            if( emitters.getAndIncrement() != 0 ) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                List<DataBuffer> next;
+                boolean ended;
+                Throwable failure;
+                do {
+                    synchronized( this ) {
+                        next = ready.poll();
+                        ended = done && ready.isEmpty();
+                        failure = error;
+                    }
+                    if( next != null ) {
+                        sink.next( bufferFactory.join(next) );
+                    }
+                } while( next != null && !ended );
+
+                if( ended ) {
+                    if( failure != null ) {
+                        sink.error( failure );
+                    }
+                    else {
+                        sink.complete();
+                    }
+                }
+                missed = emitters.addAndGet( -missed );
+            } while( missed != 0 );
+        }
+
+        private static void release(List<DataBuffer> buffers) {
+            buffers.forEach( DataBufferUtils::release );
+            buffers.clear();
+        }
+
+        @Override
+        public void dispose() {
+            super.dispose();
+            synchronized( this ) {
+                if( timer != null ) {
+                    timer.dispose();
+                }
+                release( batch );
+                ready.forEach( WindowedBatches::release );
+                ready.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive (AIMD) concurrency limit per Lush controller method, shared by both decoration engines.  A call that would
+ * exceed the method's limit is rejected straight away rather than queued: the method isn't called and the advice is
+ * given a status code of LushAdvice.STATUS_OVERLOADED with the following extras:
+ * <pre>
+ *  lush.isRejected       - true
+ *  lush.concurrencyLimit - the limit at the time of the rejection
+ * </pre>
+ * The limit grows by one when a call completes in time while at least half the limit is in use, and is multiplied by
+ * the backoff ratio when a call fails, is cancelled by its timeout or takes longer than the latency threshold.  The
+ * latency of a Flux is the time to its first element, a long-lived stream is not slow.  A call cancelled for any other
+ * reason (ie: the caller went away) only releases its permit, it says nothing about the method.
+ * <br/><br/>
+ * The permit is taken when the call is subscribed to and released when that subscription terminates, a call that is
+ * never subscribed to (ie: the client went away before the response was written) holds no permit, and one subscribed
+ * to twice takes two.  Counters are atomics, there are no locks on the request path.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.limiter.enabled           - true to enable limiting (default: false)
+ *  lush.limiter.initial-limit     - limit of each method to start with (default: 20)
+ *  lush.limiter.min-limit         - the limit never drops below this (default: 1)
+ *  lush.limiter.max-limit         - the limit never grows above this (default: 200)
+ *  lush.limiter.backoff-ratio     - limit is multiplied by this on a drop (default: 0.9)
+ *  lush.limiter.latency-threshold - calls slower than this count as a drop (default: 5s)
+ * </pre>
+ * Each method's limit, calls in flight and rejections are published as lush.limiter.limit, lush.limiter.inflight and
+ * lush.limiter.rejected, tagged with the method (ie: ExampleController.slowPing(LushContext)).
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+class ConcurrencyLimiter implements MeterBinder {
+    static final String REJECTED_EXTRA = "lush.isRejected";
+    static final String LIMIT_EXTRA = "lush.concurrencyLimit";
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private final Map<Method,Limit> limits = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    @Autowired
+    ConcurrencyLimiter(
+            @Value("${lush.limiter.enabled:false}") final boolean enabled,
+            @Value("${lush.limiter.initial-limit:20}") final int initialLimit,
+            @Value("${lush.limiter.min-limit:1}") final int minLimit,
+            @Value("${lush.limiter.max-limit:200}") final int maxLimit,
+            @Value("${lush.limiter.backoff-ratio:0.9}") final double backoffRatio,
+            @Value("${lush.limiter.latency-threshold:5s}") final Duration latencyThreshold
+    ) {
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+
+        log.debug( String.format("Lush :: ConcurrencyLimiter enabled: %s, initial-limit: %d", enabled, initialLimit) );
+    }
+
+    /**
+     * @param method The Lush controller method.
+     * @return The limit of the method, null if limiting is disabled.
+     */
+    Limit limitFor(Method method) {
+        if( !enabled ) {
+            return null;
+        }
+
+        Limit limit = limits.get(method);
+        if( limit == null ) {
+            limit = limits.computeIfAbsent( method, m -> new Limit(nameOf(m), initialLimit) );
+            MeterRegistry r = registry;
+            if( r != null ) {
+                limit.bindTo(r);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Populate the advice of a rejected call.
+     *
+     * @param lushContext The context of the rejected call.
+     * @param limit The limit that was reached.
+     */
+    private void rejected(LushContext lushContext, Limit limit) {
+        LushAdvice advice = lushContext != null ? lushContext.getAdvice() : null;
+        if( advice != null ) {
+            advice.setStatusCode( LushAdvice.STATUS_OVERLOADED );
+            advice.putExtra( REJECTED_EXTRA, true );
+            advice.putExtra( LIMIT_EXTRA, limit.limit.get() );
+        }
+    }
+
+    /**
+     * Limit a call of a method returning a Mono.  Each subscription takes a permit, and calls invocation only if it got
+     * one, the permit is released once the Mono terminates, adjusting the limit.  A rejected call completes empty, with
+     * the advice populated (see rejected).
+     *
+     * @param method The Lush controller method.
+     * @param lushContext The context of the call.
+     * @param timeout The timeout of the method, Duration.ZERO if it has none.
+     * @param invocation Calls the method.
+     */
+    <T> Mono<T> mono(Method method, LushContext lushContext, Duration timeout, Supplier<Mono<T>> invocation) {
+        final Limit limit = limitFor( method );
+        if( limit == null ) {
+            return Mono.defer( invocation );
+        }
+
+        return Mono.defer( () -> {
+            if( !limit.tryAcquire() ) {
+                rejected( lushContext, limit );
+                return Mono.empty();
+            }
+
+            final Call call = new Call( limit, timeout );
+            return Mono.defer( invocation ).doFinally( call::release );
+        });
+    }
+
+    /**
+     * Limit a call of a method returning a Flux, see mono.  The latency of the call is the time to its first element.
+     */
+    <T> Flux<T> flux(Method method, LushContext lushContext, Duration timeout, Supplier<Flux<T>> invocation) {
+        final Limit limit = limitFor( method );
+        if( limit == null ) {
+            return Flux.defer( invocation );
+        }
+
+        return Flux.defer( () -> {
+            if( !limit.tryAcquire() ) {
+                rejected( lushContext, limit );
+                return Flux.empty();
+            }
+
+            final Call call = new Call( limit, timeout );
+            return Flux.defer( invocation )
+                    .doOnNext( element -> call.next() )
+                    .doFinally( call::release );
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        limits.values().forEach( l -> l.bindTo(registry) );
+    }
+
+    /**
+     * @return Name of the method used to tag its meters, the parameter types tell overloads apart.
+     */
+    static String nameOf(Method method) {
+        StringJoiner parameters = new StringJoiner( ",", "(", ")" );
+        for( Class<?> type : method.getParameterTypes() ) {
+            parameters.add( type.getSimpleName() );
+        }
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName() + parameters;
+    }
+
+    /**
+     * A single tracked call.  Signals of a publisher are serialized, so the latency needs no synchronization.
+     */
+    private final class Call {
+        private final Limit limit;
+        private final long timeoutNanos;
+        private final long start = System.nanoTime();
+        // Time to the first element, -1 until it arrives.
+        private long latency = -1;
+
+        private Call(Limit limit, Duration timeout) {
+            this.limit = limit;
+            this.timeoutNanos = timeout.toNanos();
+        }
+
+        private void next() {
+            if( latency < 0 ) {
+                latency = System.nanoTime() - start;
+            }
+        }
+
+        private void release(SignalType signal) {
+            long elapsed = System.nanoTime() - start;
+
+            if( signal == SignalType.CANCEL ) {
+                boolean timedOut = timeoutNanos > 0 && elapsed >= timeoutNanos;
+                if( timedOut ) {
+                    limit.release( true );
+                }
+                else {
+                    limit.release();
+                }
+                return;
+            }
+
+            boolean slow = (latency >= 0 ? latency : elapsed) > latencyThresholdNanos;
+            limit.release( signal != SignalType.ON_COMPLETE || slow );
+        }
+    }
+
+    /**
+     * AIMD limit of a single method.
+     */
+    final class Limit {
+        private final String name;
+        private final AtomicInteger limit;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final LongAdder rejections = new LongAdder();
+        private volatile boolean bound;
+
+        private Limit(String name, int initialLimit) {
+            this.name = name;
+            this.limit = new AtomicInteger(initialLimit);
+        }
+
+        /**
+         * @return true if the call may go ahead, the permit must then be released once it terminates.
+         */
+        private boolean tryAcquire() {
+            if( inflight.incrementAndGet() > limit.get() ) {
+                inflight.decrementAndGet();
+                rejections.increment();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Release a permit without adjusting the limit.
+         */
+        private void release() {
+            inflight.decrementAndGet();
+        }
+
+        /**
+         * Release a permit and adjust the limit.
+         *
+         * @param drop true if the call failed or was too slow.
+         */
+        private void release(boolean drop) {
+            int inflightAtCompletion = inflight.getAndDecrement();
+
+            if( drop ) {
+                limit.updateAndGet( l -> Math.max(minLimit, (int) (l * backoffRatio)) );
+            }
+            else if( inflightAtCompletion * 2 >= limit.get() ) {
+                limit.updateAndGet( l -> Math.min(maxLimit, l + 1) );
+            }
+        }
+
+        private synchronized void bindTo(MeterRegistry registry) {
+            if( bound ) {
+                return;
+            }
+            bound = true;
+
+            Gauge.builder( "lush.limiter.limit", limit, AtomicInteger::get )
+                    .description( "Concurrency limit of a Lush controller method" )
+                    .tag( "method", name )
+                    .register( registry );
+            Gauge.builder( "lush.limiter.inflight", inflight, AtomicInteger::get )
+                    .description( "Calls of a Lush controller method in flight" )
+                    .tag( "method", name )
+                    .register( registry );
+            FunctionCounter.builder( "lush.limiter.rejected", rejections, LongAdder::sum )
+                    .description( "Calls of a Lush controller method rejected by its concurrency limit" )
+                    .tag( "method", name )
+                    .register( registry );
+        }
+    }
+}
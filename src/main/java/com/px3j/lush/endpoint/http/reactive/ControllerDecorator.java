@@ -1,41 +1,60 @@
 package com.px3j.lush.endpoint.http.reactive;
 
 import brave.baggage.BaggageField;
-import com.px3j.lush.core.model.LushAdvice;
-import com.px3j.lush.core.exception.StackTraceToLoggerWriter;
 import com.px3j.lush.core.model.LushContext;
 import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushRequestState;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.lang.reflect.Method;
-import java.util.Optional;
+import java.time.Duration;
+
 
 /**
  * Decorator, applied via AOP, that intercepts calls to any Lush based controllers.  It silently intercepts and provides
  * the Lush functionality.
+ * <br/><br/>
+ * This is the default decoration engine, set <b>lush.decoration.engine</b> to <b>handler</b> to use LushResultHandler
+ * instead.
  *
  * @author Paul Parrone
  */
 @Aspect
 @Component
+@ConditionalOnProperty( name = "lush.decoration.engine", havingValue = "aop", matchIfMissing = true )
 @Slf4j( topic = "lush.core.debug")
 public class ControllerDecorator {
     private final BaggageField lushUserNameField;
+    private final UnexpectedErrorHandler unexpectedErrorHandler;
+    private final LushBlockingScheduler blockingScheduler;
+    private final DeadlinePolicy deadlinePolicy;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ResponseCache responseCache;
 
     @Autowired
-    public ControllerDecorator(BaggageField lushUserNameField) {
+    public ControllerDecorator(
+            BaggageField lushUserNameField,
+            UnexpectedErrorHandler unexpectedErrorHandler,
+            LushBlockingScheduler blockingScheduler,
+            DeadlinePolicy deadlinePolicy,
+            ConcurrencyLimiter concurrencyLimiter,
+            ResponseCache responseCache
+    ) {
         this.lushUserNameField = lushUserNameField;
+        this.unexpectedErrorHandler = unexpectedErrorHandler;
+        this.blockingScheduler = blockingScheduler;
+        this.deadlinePolicy = deadlinePolicy;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.responseCache = responseCache;
     }
 
     @Pointcut("@annotation(com.px3j.lush.endpoint.http.LushControllerMethod)")
@@ -49,19 +68,17 @@ public class ControllerDecorator {
         }
 
         return Mono.deferContextual( ctx -> {
-            LushContext lushContext = ctx.get(LushContext.class.getName());
-            log.debug( "LushContext: " + lushContext );
-
-            return ReactiveSecurityContextHolder.getContext()
-                    .map( sc -> (LushTicket) sc.getAuthentication().getPrincipal() )
-                    .map(ticket -> {
-                        if( log.isDebugEnabled() ) log.debug( "ticket user: " + ticket.getUsername() );
-                        lushUserNameField.updateValue(ticket.getUsername());
-                        return ticket;
-                    })
-                    .flatMap( (ticket) -> (Mono)decoratorImpl(pjp, lushContext, ticket,false) );
+            LushRequestState state = LushRequestState.from( ctx );
+            LushContext lushContext = state.getContext();
+            if( log.isDebugEnabled() ) log.debug( "LushContext: " + lushContext );
+
+            // The ticket is normally held by the request's state already, it only has to be loaded on a public path.
+            LushTicket ticket = state.getTicket();
+            if( ticket != null ) {
+                return (Mono) invoke( pjp, lushContext, ticket, false );
+            }
+            return LushArgumentResolver.loadTicket().flatMap( t -> (Mono) invoke(pjp, lushContext, t, false) );
         });
-
     }
 
     @Around("lushControllerMethods() && execution(public reactor.core.publisher.Flux *..*(..))")
@@ -72,37 +89,46 @@ public class ControllerDecorator {
         }
 
         return Flux.deferContextual( ctx -> {
-            LushContext lushContext = ctx.get(LushContext.class.getName());
-            log.debug( "LushContext: " + lushContext );
-
-            return ReactiveSecurityContextHolder.getContext()
-                    .map( sc -> (LushTicket) sc.getAuthentication().getPrincipal() )
-                    .map(ticket -> {
-                        if( log.isDebugEnabled() ) log.debug( "ticket user: " + ticket.getUsername() );
-                        lushUserNameField.updateValue(ticket.getUsername());
-                        return ticket;
-                    })
-                    .flatMapMany( (ticket) -> (Flux)decoratorImpl(pjp, lushContext, ticket,true) );
+            LushRequestState state = LushRequestState.from( ctx );
+            LushContext lushContext = state.getContext();
+            if( log.isDebugEnabled() ) log.debug( "LushContext: " + lushContext );
+
+            LushTicket ticket = state.getTicket();
+            if( ticket != null ) {
+                return (Flux) invoke( pjp, lushContext, ticket, true );
+            }
+            return LushArgumentResolver.loadTicket().flatMapMany( t -> (Flux) invoke(pjp, lushContext, t, true) );
         });
     }
 
+    private Object invoke(ProceedingJoinPoint pjp, LushContext lushContext, LushTicket ticket, boolean fluxOnError) {
+        if( log.isDebugEnabled() ) log.debug( "ticket user: " + ticket.getUsername() );
+        lushUserNameField.updateValue( ticket.getUsername() );
+
+        return decoratorImpl( pjp, lushContext, ticket, fluxOnError );
+    }
+
     private Object decoratorImpl(ProceedingJoinPoint pjp, LushContext apiContext, LushTicket ticket, boolean fluxOnError ) {
 //        CarryingContext apiContext = (CarryingContext)ThreadLocalApiContext.get();
 
         try {
-            // Get the target method from the join point, use this to inject parameters.
-            Method method = getMethodBeingCalled(pjp);
+            // Get the cached plan for the target method.  LushTicket/LushContext arguments are supplied by
+            // LushArgumentResolver so there is nothing to inject here.
+            InvocationPlan plan = InvocationPlan.of(pjp);
+            if( log.isDebugEnabled() ) {
+                log.debug( String.format( "invoking: %s::%s", plan.method.getDeclaringClass(), plan.method.getName()));
+            }
 
-            // If the method declares an argument of LushContext, inject it (we inject it by copying the values)
-            injectLushContext( method, pjp, apiContext );
-            // If the method declares an argument of LushTicket, inject it (we inject it by copying the values)
-            injectTicket( method, pjp, ticket);
+            // Methods annotated with LushCacheable are only invoked if their result isn't cached (or being fetched).
+            ResponseCache.Cached cached = responseCache.cacheFor( plan.method );
+            if( plan.flux ) {
+                Flux<?> result = cached == null
+                        ? invokeFlux( pjp, plan, apiContext )
+                        : cached.flux( cached.keyOf(pjp.getArgs(), ticket.getUsername()), apiContext, () -> invokeFlux(pjp, plan, apiContext) );
 
-            // Invoke the target method wrapped in a publisher - this allows us to handle exceptions in the Lush way
-            if( fluxOnError ) {
-                return Flux.from((Publisher<?>) pjp.proceed())
+                return result
                         .onErrorResume( throwable -> {
-                            errorHandler(apiContext, throwable);
+                            unexpectedErrorHandler.handle(apiContext, throwable);
                             return Flux.empty();
                         })
                         .doOnComplete( () -> {
@@ -110,9 +136,13 @@ public class ControllerDecorator {
                         });
             }
             else {
-                return Mono.from((Publisher<?>) pjp.proceed())
+                Mono<?> result = cached == null
+                        ? invokeMono( pjp, plan, apiContext )
+                        : cached.mono( cached.keyOf(pjp.getArgs(), ticket.getUsername()), apiContext, () -> invokeMono(pjp, plan, apiContext) );
+
+                return result
                         .onErrorResume( throwable -> {
-                            errorHandler(apiContext, throwable);
+                            unexpectedErrorHandler.handle(apiContext, throwable);
                             return Mono.empty();
                         })
                         .doOnSuccess( o -> {
@@ -123,11 +153,7 @@ public class ControllerDecorator {
 
         // Catch all error handler.  Returns an empty Mono or Flux
         catch (final Throwable throwable) {
-            throwable.printStackTrace( new StackTraceToLoggerWriter(log) );
-
-            LushAdvice advice = apiContext.getAdvice();
-            advice.setStatusCode( -99 );
-            advice.putExtra( "lush.isUnexpectedException", true );
+            unexpectedErrorHandler.handle( apiContext, throwable );
 
             if( log.isDebugEnabled() ) log.debug( "****" );
             return fluxOnError ? Flux.empty() : Mono.empty();
@@ -135,94 +161,46 @@ public class ControllerDecorator {
     }
 
     /**
-     * Helper method to populate the returned LushAdvice properly in the event that an unexpected exception occurs during
-     * this call.
-     *
-     * @param lushContext The context to populate.
-     * @param throwable The exception causing the error.
+     * Invoke a method returning a Flux wrapped in a publisher - this allows us to handle exceptions in the Lush way.
+     * The call is rejected straight away if the method is at its concurrency limit, blocking methods are invoked (and
+     * subscribed to) on the blocking scheduler, methods that take longer than their timeout are cancelled.
      */
-    private void errorHandler(LushContext lushContext, Throwable throwable ) {
-        throwable.printStackTrace( new StackTraceToLoggerWriter(log) );
-
-        LushAdvice advice = lushContext.getAdvice();
-        if( advice != null ) {
-            log.warn( "advice is null in context - cannot set status codes" );
-            advice.setStatusCode( -99 );
-            advice.putExtra( "lush.isUnexpectedException", true );
-        }
+    private Flux<Object> invokeFlux(ProceedingJoinPoint pjp, InvocationPlan plan, LushContext apiContext) {
+        Duration timeout = deadlinePolicy.timeoutFor( plan.method );
+        Flux<Object> result = concurrencyLimiter.flux( plan.method, apiContext, timeout, () -> plan.blocking
+                ? blockingScheduler.flux( () -> (Publisher<Object>) pjp.proceed() )
+                : Flux.from( proceed(pjp) )
+        );
+
+        return deadlinePolicy.apply( result, timeout, apiContext );
     }
 
     /**
-     * Helper method to inject the LushTicket if the method being called requests it.
-     *
-     * @param method The method being called.
-     * @param pjp The joinpoint.
-     * @param ticket The ticket instance to inject.
+     * Invoke a method returning a Mono, see invokeFlux.
      */
-    private void injectTicket(Method method, ProceedingJoinPoint pjp, LushTicket ticket) {
-        findArgumentIndex( method, LushTicket.class )
-                .ifPresent( (i) -> {
-                    LushTicket contextArg = (LushTicket) pjp.getArgs()[i];
-                    contextArg.populateFrom(ticket);
-                });
+    private Mono<Object> invokeMono(ProceedingJoinPoint pjp, InvocationPlan plan, LushContext apiContext) {
+        Duration timeout = deadlinePolicy.timeoutFor( plan.method );
+        Mono<Object> result = concurrencyLimiter.mono( plan.method, apiContext, timeout, () -> plan.blocking
+                ? blockingScheduler.mono( () -> (Publisher<Object>) pjp.proceed() )
+                : Mono.from( proceed(pjp) )
+        );
+
+        return deadlinePolicy.apply( result, timeout, apiContext );
     }
 
     /**
-     * Helper method to inject the LushContext if the method being called requests it.
+     * Invoke the target method, an exception it throws is returned as an error signal so it is handled (and counted by
+     * the concurrency limiter) the same way as an error published by the method.
      *
-     * @param method The method being called
      * @param pjp The joinpoint.
-     * @param lushContext The context instance to inject.
+     * @return The publisher returned by the method.
      */
-    private void injectLushContext(Method method, ProceedingJoinPoint pjp, LushContext lushContext) {
-        findArgumentIndex( method, LushContext.class )
-                .ifPresent( (i) -> {
-                    LushContext contextArg = (LushContext) pjp.getArgs()[i];
-                    contextArg.setTraceId( lushContext.getTraceId() );
-                    contextArg.setAdvice( lushContext.getAdvice() );
-                });
-    }
-
-    /**
-     * Find the argument index of the parameter of type clazz (if there is one) and return the index.
-     *
-     * @param method The method object to check.
-     * @param clazz The type of argument to find.
-     *
-     * @return The index if found, or empty.
-     */
-    private Optional<Integer> findArgumentIndex(Method method, Class clazz ) {
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        for( int i=0; i<parameterTypes.length; i++ ) {
-            if( parameterTypes[i] == clazz ) {
-                return Optional.of(i);
-            }
-        }
-
-        return Optional.empty();
-    }
-
-    /**
-     * Extract a Method object representing the method being called from the joinpoint.
-     *
-     * @param pjp The joinpoint to inspect.
-     * @return A Method instance represent the method being called.
-     *
-     * @throws NoSuchMethodException If the method being called cannot be found.
-     * @throws SecurityException If the method cannot be accessed.
-     */
-    private Method getMethodBeingCalled(ProceedingJoinPoint pjp ) throws NoSuchMethodException, SecurityException {
-        MethodSignature signature = (MethodSignature)pjp.getSignature();
-        Method method = signature.getMethod();
-
-        if( method.getDeclaringClass().isInterface() ) {
-            method = pjp.getTarget().getClass().getDeclaredMethod( signature.getName(), method.getParameterTypes() );
+    private static Publisher<Object> proceed(ProceedingJoinPoint pjp) {
+        try {
+            return (Publisher<Object>) pjp.proceed();
         }
-
-        if( log.isDebugEnabled() ) {
-            log.debug( String.format( "invoking: %s::%s", method.getDeclaringClass(), method.getName()));
+        catch (Throwable throwable) {
+            return Flux.error( throwable );
         }
-
-        return method;
     }
 }
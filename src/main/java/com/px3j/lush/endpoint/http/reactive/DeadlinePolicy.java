@@ -0,0 +1,102 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.exception.LushException;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.model.LushDeadline;
+import com.px3j.lush.endpoint.http.LushMethods;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enforces the timeout of Lush controller methods, shared by both decoration engines.  A method that doesn't complete
+ * in time is cancelled (the publisher it returned is cancelled) and the advice is given a status code of
+ * LushAdvice.STATUS_TIMEOUT with the following extras:
+ * <pre>
+ *  lush.isTimeout     - true
+ *  lush.timeoutMillis - the timeout that was exceeded
+ * </pre>
+ * The deadline is put in the Reactor context (see LushDeadline).  For a Flux the timeout covers the whole stream, not
+ * the time between elements.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+class DeadlinePolicy {
+    static final String TIMEOUT_EXTRA = "lush.isTimeout";
+    static final String TIMEOUT_MILLIS_EXTRA = "lush.timeoutMillis";
+
+    private final Duration defaultTimeout;
+    private final Map<Method,Duration> timeouts = new ConcurrentHashMap<>();
+
+    @Autowired
+    DeadlinePolicy(@Value("${lush.decoration.timeout:0}") final String defaultTimeout) {
+        this.defaultTimeout = parse(defaultTimeout);
+    }
+
+    /**
+     * @param method The Lush controller method.
+     * @return The method's timeout, Duration.ZERO if it has none.
+     */
+    Duration timeoutFor(Method method) {
+        Duration timeout = timeouts.get(method);
+        if( timeout == null ) {
+            String declared = LushMethods.timeoutOf(method);
+            timeout = declared.isEmpty() ? defaultTimeout : parse(declared);
+            timeouts.put( method, timeout );
+        }
+        return timeout;
+    }
+
+    <T> Mono<T> apply(Mono<T> mono, Duration timeout, LushContext lushContext) {
+        if( timeout.isZero() ) {
+            return mono;
+        }
+
+        return mono
+                .timeout( timeout, Mono.fromRunnable(() -> timedOut(lushContext, timeout)) )
+                .contextWrite( ctx -> LushDeadline.after(timeout).writeTo(ctx) );
+    }
+
+    <T> Flux<T> apply(Flux<T> flux, Duration timeout, LushContext lushContext) {
+        if( timeout.isZero() ) {
+            return flux;
+        }
+
+        return flux
+                .takeUntilOther( Mono.delay(timeout).doOnNext(t -> timedOut(lushContext, timeout)) )
+                .contextWrite( ctx -> LushDeadline.after(timeout).writeTo(ctx) );
+    }
+
+    private void timedOut(LushContext lushContext, Duration timeout) {
+        log.warn( "Lush controller method didn't complete within: " + timeout );
+
+        LushAdvice advice = lushContext != null ? lushContext.getAdvice() : null;
+        if( advice != null ) {
+            advice.setStatusCode( LushAdvice.STATUS_TIMEOUT );
+            advice.putExtra( TIMEOUT_EXTRA, true );
+            advice.putExtra( TIMEOUT_MILLIS_EXTRA, timeout.toMillis() );
+        }
+    }
+
+    private static Duration parse(String timeout) {
+        try {
+            Duration duration = DurationStyle.detectAndParse(timeout.trim());
+            return duration.isNegative() ? Duration.ZERO : duration;
+        }
+        catch (IllegalArgumentException e) {
+            throw new LushException( "Invalid Lush controller method timeout: " + timeout, e );
+        }
+    }
+}
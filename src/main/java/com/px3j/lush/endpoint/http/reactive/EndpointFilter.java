@@ -1,73 +1,106 @@
 package com.px3j.lush.endpoint.http.reactive;
 
-import com.google.gson.Gson;
-import com.px3j.lush.core.model.LushAdvice;
 import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.endpoint.http.AdviceEncoding;
 import com.px3j.lush.endpoint.http.Constants;
+import com.px3j.lush.endpoint.http.LushRequestState;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cloud.sleuth.Span;
-import org.springframework.cloud.sleuth.Tracer;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 /**
  * WebFilter that applies Lush behaviors to a request/response.
+ * <br/><br/>
+ * The advice is returned in the x-lush-advice header (see AdviceHeaderResponse).
+ * When <b>lush.streaming.advice-trailer</b> is true Flux results of Lush controller methods streamed as NDJSON or SSE
+ * end with a trailing frame holding the final LushAdvice (see AdviceTrailerResponse).  The frame is an element callers
+ * don't expect, so it is off by default.  Flux results of
+ * methods that declare a batchSize are written in batches (see BatchingResponse).
+ * <br/><br/>
+ * The caller chooses how the advice is sent with the x-lush-advice-encoding request header (see AdviceEncoding),
+ * <b>lush.advice.default-encoding</b> is used for requests without it.  With an encoding of none the response is
+ * written without any of the advice decorators.
+ * <br/><br/>
+ * The trace id of each request comes from TraceIdGenerator and is only built when it is read.  The LushContext of each
+ * request is taken from LushContextPool, which recycles them when <b>lush.advice.pool.enabled</b> is true.
  *
  * @author Paul Parrone
  */
 @Slf4j
 @Component
 public class EndpointFilter implements WebFilter {
-    private final Tracer tracer;
+    private final TraceIdGenerator traceIds;
+    private final AdviceHeaderWriter adviceWriter;
+    private final LushContextPool contextPool;
+    private final boolean adviceTrailer;
+    private final AdviceEncoding defaultEncoding;
 
     @Autowired
-    public EndpointFilter(Tracer tracer) {
-        this.tracer = tracer;
+    public EndpointFilter(
+            TraceIdGenerator traceIds,
+            AdviceHeaderWriter adviceWriter,
+            LushContextPool contextPool,
+            @Value("${lush.streaming.advice-trailer:false}") final boolean adviceTrailer,
+            @Value("${lush.advice.default-encoding:json}") final String defaultEncoding
+    ) {
+        this.traceIds = traceIds;
+        this.adviceWriter = adviceWriter;
+        this.contextPool = contextPool;
+        this.adviceTrailer = adviceTrailer;
+        this.defaultEncoding = AdviceEncoding.from( defaultEncoding, AdviceEncoding.JSON );
     }
 
     @Override
     public Mono<Void> filter(final ServerWebExchange exchange, WebFilterChain webFilterChain) {
-        return webFilterChain.filter(exchange)
-                // Add a LushAdvice instance to the publisher context so that it can be used by the decorator
+        AdviceEncoding encoding = AdviceEncoding.from(
+                exchange.getRequest().getHeaders().getFirst(Constants.ADVICE_ENCODING_HEADER_NAME),
+                defaultEncoding
+        );
+
+        ServerHttpResponse response = new BatchingResponse( exchange.getResponse(), exchange );
+        if( encoding != AdviceEncoding.NONE ) {
+            if( adviceTrailer ) {
+                response = new AdviceTrailerResponse( response, exchange, adviceWriter );
+            }
+            response = new AdviceHeaderResponse( response, exchange, adviceWriter, encoding );
+        }
+
+        Mono<Void> filtered = webFilterChain.filter( exchange.mutate().response(response).build() )
+                // Add the request's state (LushContext, LushAdvice...) to the publisher context so that it can be used
+                // by the decorator
                 //
                 .contextWrite(ctx -> {
-                    final String requestKey = generateTraceId();
-                    final LushAdvice advice = new LushAdvice(requestKey, 200);
+                    LushContext created = contextPool.acquire( traceIds.next() );
 
-                    LushContext lushContext = new LushContext();
-                    lushContext.setTraceId( requestKey );
-                    lushContext.setAdvice( advice );
-
-                    // Set up the exchange to add the Lush advice response header once the controller has done it's work.
-                    exchange.getResponse().beforeCommit( () -> Mono.deferContextual(Mono::just).doOnNext(ctx2 -> {
-                        HttpHeaders headers = exchange.getResponse().getHeaders();
-                        headers.add(  HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, Constants.ADVICE_HEADER_NAME );
-                        headers.add( Constants.ADVICE_HEADER_NAME, new Gson().toJson(lushContext.getAdvice()));
-                    }).then());
+                    // The state of the request may already exist (ie: holding the ticket), it is available from the
+                    // exchange and from the publisher context.  The advice is written to the response by
+                    // AdviceHeaderResponse once the controller has done it's work.
+                    LushRequestState state = LushRequestState.of( exchange );
+                    if( state.setContext(created) != created ) {
+                        contextPool.release( created );
+                    }
 
                     // return the updated context
-                    return ctx.put( LushContext.class.getName(), lushContext );
+                    return ctx.put( LushRequestState.KEY, state );
                 });
-    }
-
-    /**
-     * Generate a request key that matches the current span of the Tracer
-     *
-     * @return A String containing the request key.
-     */
-    private String generateTraceId() {
-        String contextKey = "?/?";
 
-        Span currentSpan = tracer.currentSpan();
-        if( currentSpan != null ) {
-            contextKey = currentSpan.context().traceId() + "," + currentSpan.context().spanId();
+        if( !contextPool.isEnabled() ) {
+            return filtered;
         }
 
-        return contextKey;
+        // The response has been written once the chain completes, see LushContextPool for why failed and cancelled
+        // requests keep their context.
+        return filtered.doFinally( signal -> {
+            if( signal == SignalType.ON_COMPLETE ) {
+                contextPool.release( LushRequestState.of(exchange).getContext() );
+            }
+        });
     }
 }
@@ -0,0 +1,75 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.endpoint.http.LushMethods;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything ControllerDecorator needs to know about a Lush controller method, worked out once per method and cached.
+ * Without this each call would resolve the target method reflectively.
+ * <br/><br/>
+ * Plans are cached per target class, the same interface method resolves to a different method on each implementation.
+ *
+ * @author Paul Parrone
+ */
+final class InvocationPlan {
+    private static final ClassValue<Map<Method,InvocationPlan>> plans = new ClassValue<>() {
+        @Override
+        protected Map<Method,InvocationPlan> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    final Method method;
+    final boolean flux;
+    final boolean blocking;
+
+    private InvocationPlan(Method method) {
+        this.method = method;
+        this.flux = Flux.class.isAssignableFrom( method.getReturnType() );
+        this.blocking = LushMethods.isBlocking( method );
+    }
+
+    /**
+     * Return the plan for the method being called at the joinpoint, creating it on the first call.
+     *
+     * @param pjp The joinpoint to inspect.
+     * @return The plan for the method being called.
+     *
+     * @throws NoSuchMethodException If the method being called cannot be found.
+     * @throws SecurityException If the method cannot be accessed.
+     */
+    static InvocationPlan of(ProceedingJoinPoint pjp) throws NoSuchMethodException, SecurityException {
+        MethodSignature signature = (MethodSignature)pjp.getSignature();
+        Method signatureMethod = signature.getMethod();
+        Class<?> targetClass = pjp.getTarget() != null ? pjp.getTarget().getClass() : signatureMethod.getDeclaringClass();
+
+        Map<Method,InvocationPlan> classPlans = plans.get(targetClass);
+        InvocationPlan plan = classPlans.get(signatureMethod);
+        if( plan == null ) {
+            plan = new InvocationPlan( resolveMethod(signatureMethod, targetClass) );
+            InvocationPlan existing = classPlans.putIfAbsent( signatureMethod, plan );
+            if( existing != null ) {
+                plan = existing;
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * Resolve the method actually being called, if the signature refers to an interface method look it up on the target.
+     */
+    private static Method resolveMethod(Method method, Class<?> targetClass) throws NoSuchMethodException {
+        if( method.getDeclaringClass().isInterface() ) {
+            return targetClass.getDeclaredMethod( method.getName(), method.getParameterTypes() );
+        }
+
+        return method;
+    }
+}
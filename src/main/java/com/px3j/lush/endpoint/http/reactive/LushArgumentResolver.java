@@ -0,0 +1,65 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.reactive.BindingContext;
+import org.springframework.web.reactive.result.method.HandlerMethodArgumentResolver;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves LushTicket and LushContext controller method arguments.  The context passed to the controller is the one
+ * held by the request's LushRequestState.  The ticket is a copy of the request's (see LushTicket.copy), the request's
+ * ticket may be shared with other requests.
+ * <br/><br/>
+ * If there is no ticket (ie: on a public path) or no context an empty instance is passed so a controller never sees
+ * null.
+ *
+ * @author Paul Parrone
+ */
+public class LushArgumentResolver implements HandlerMethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return type == LushTicket.class || type == LushContext.class;
+    }
+
+    @Override
+    public Mono<Object> resolveArgument(MethodParameter parameter, BindingContext bindingContext, ServerWebExchange exchange) {
+        LushRequestState state = LushRequestState.of( exchange );
+
+        if( parameter.getParameterType() == LushContext.class ) {
+            LushContext lushContext = state.getContext();
+            return Mono.just( lushContext != null ? lushContext : new LushContext() );
+        }
+
+        LushTicket ticket = state.getTicket();
+        if( ticket != null ) {
+            return Mono.just( ticket.copy() );
+        }
+
+        return loadTicket()
+                .map( LushTicket::copy )
+                .cast( Object.class )
+                .switchIfEmpty( Mono.fromSupplier(LushTicket::new) );
+    }
+
+    /**
+     * Load the ticket from the security context, only needed when the request's state doesn't hold it yet (ie: the
+     * security context isn't loaded up front on a public path).
+     *
+     * @return The ticket, empty if the request doesn't have one.
+     */
+    static Mono<LushTicket> loadTicket() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map( SecurityContext::getAuthentication )
+                .map( Authentication::getPrincipal )
+                .filter( LushTicket.class::isInstance )
+                .cast( LushTicket.class );
+    }
+}
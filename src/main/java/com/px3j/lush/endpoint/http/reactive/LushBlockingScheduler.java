@@ -0,0 +1,181 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs LushControllerMethod(blocking = true) methods off the Netty event loops.  When the JVM supports virtual threads
+ * each call gets its own virtual thread, otherwise calls are run on a bounded elastic scheduler.  Lush targets Java 14
+ * so virtual threads are looked up reflectively at startup.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.blocking.virtual-threads - false to always use the bounded elastic scheduler (default: true)
+ *  lush.blocking.max-threads     - thread cap of the bounded elastic scheduler (default: 10 x available processors)
+ *  lush.blocking.max-queued      - calls that may wait for a thread before being rejected (default: 100000)
+ * </pre>
+ * The number of calls waiting for a thread and running are published as the lush.blocking.queued and
+ * lush.blocking.active gauges.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+public class LushBlockingScheduler implements MeterBinder, DisposableBean {
+    /** Prefix of the names of the threads (virtual or not) blocking methods run on. */
+    public static final String THREAD_NAME_PREFIX = "lush-blocking";
+
+    private final Scheduler scheduler;
+    private final String type;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    @Autowired
+    public LushBlockingScheduler(
+            @Value("${lush.blocking.virtual-threads:true}") final boolean virtualThreads,
+            @Value("${lush.blocking.max-threads:0}") final int maxThreads,
+            @Value("${lush.blocking.max-queued:100000}") final int maxQueued
+    ) {
+        ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+
+        if( virtualThreadExecutor != null ) {
+            this.scheduler = Schedulers.fromExecutorService( virtualThreadExecutor, THREAD_NAME_PREFIX );
+            this.type = "virtual";
+        }
+        else {
+            int threadCap = maxThreads > 0 ? maxThreads : 10 * Runtime.getRuntime().availableProcessors();
+            this.scheduler = Schedulers.newBoundedElastic( threadCap, maxQueued, THREAD_NAME_PREFIX, 60, true );
+            this.type = "bounded-elastic";
+        }
+
+        log.debug( "Lush :: LushBlockingScheduler using: " + type );
+    }
+
+    /**
+     * @return "virtual" or "bounded-elastic".
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Call the body, and subscribe to the Mono it returns, on this scheduler.
+     *
+     * @param body The (blocking) work to do.
+     * @return A Mono that publishes the result of body.
+     */
+    public <T> Mono<T> mono(final Body<T> body) {
+        return Mono.defer( () -> {
+            AtomicBoolean started = queue();
+            return Mono.defer( () -> Mono.from(start(started, body)) )
+                    .subscribeOn( scheduler )
+                    .doFinally( s -> dequeue(started) );
+        });
+    }
+
+    /**
+     * Call the body, and subscribe to the Flux it returns, on this scheduler.
+     *
+     * @param body The (blocking) work to do.
+     * @return A Flux that publishes the results of body.
+     */
+    public <T> Flux<T> flux(final Body<T> body) {
+        return Flux.defer( () -> {
+            AtomicBoolean started = queue();
+            return Flux.defer( () -> start(started, body) )
+                    .subscribeOn( scheduler )
+                    .doFinally( s -> dequeue(started) );
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder( "lush.blocking.queued", queued, AtomicInteger::get )
+                .description( "Blocking Lush controller calls waiting for a thread" )
+                .tag( "type", type )
+                .register( registry );
+        Gauge.builder( "lush.blocking.active", active, AtomicInteger::get )
+                .description( "Blocking Lush controller calls running" )
+                .tag( "type", type )
+                .register( registry );
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    private AtomicBoolean queue() {
+        queued.incrementAndGet();
+        return new AtomicBoolean();
+    }
+
+    private void dequeue(AtomicBoolean started) {
+        // Cancelled (or rejected) before it started.
+        if( started.compareAndSet(false, true) ) {
+            queued.decrementAndGet();
+        }
+    }
+
+    private <T> Flux<T> start(AtomicBoolean started, Body<T> body) {
+        if( started.compareAndSet(false, true) ) {
+            queued.decrementAndGet();
+        }
+
+        active.incrementAndGet();
+        try {
+            return Flux.<T>from( body.call() ).doFinally( s -> active.decrementAndGet() );
+        }
+        catch (Throwable throwable) {
+            active.decrementAndGet();
+            return Flux.error( throwable );
+        }
+    }
+
+    /**
+     * Build the equivalent of Executors.newVirtualThreadPerTaskExecutor(), only available (without preview features)
+     * from Java 21, whose threads are named lush-blocking-N rather than left unnamed.
+     *
+     * @return The executor, or null if this JVM doesn't support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Thread.ofVirtual().name( prefix, 0 ).factory()
+            Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke( builder, THREAD_NAME_PREFIX + "-", 0L );
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke( builder );
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke( null, factory );
+        }
+        catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            log.debug( "Lush :: virtual threads are not available: " + e );
+            return null;
+        }
+    }
+
+    /**
+     * Work to run on the scheduler, may throw anything (ie: ProceedingJoinPoint::proceed).
+     */
+    @FunctionalInterface
+    public interface Body<T> {
+        Publisher<T> call() throws Throwable;
+    }
+}
@@ -0,0 +1,149 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Optional pool of LushContext (and their LushAdvice) that EndpointFilter takes the context of each request from, and
+ * returns it to once the response has been written.  A recycled advice is reset (see LushAdvice.reset), its warning
+ * and extra collections are kept for the next request unless they grew large.
+ * <br/><br/>
+ * The pool is split into stripes, a power of two no larger than the number of processors, each with its share of the
+ * pool's size.  A thread takes and returns contexts to the stripe picked by its id, so the event loops rarely contend
+ * for the same lock.  A context may be returned by another thread than the one that took it, it then ends up in that
+ * thread's stripe.
+ * <br/><br/>
+ * A context is only returned when the request completes normally: failed requests still have their advice written by
+ * LushExceptionHandler, and cancelled ones may still have the controller working on it.  Enable the pool only when
+ * controllers don't hold on to their LushContext (or LushAdvice) after their result completes, ie: in work they
+ * started on another thread.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.advice.pool.enabled - true to recycle contexts (default: false)
+ *  lush.advice.pool.size    - most contexts kept for reuse, more are left to the garbage collector (default: 256)
+ * </pre>
+ * The contexts held and the contexts reused are published as lush.context-pool.size and lush.context-pool.reused.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+class LushContextPool implements MeterBinder {
+    private final List<BlockingQueue<LushContext>> stripes;
+    private final int mask;
+    private final LongAdder reused = new LongAdder();
+
+    @Autowired
+    LushContextPool(
+            @Value("${lush.advice.pool.enabled:false}") final boolean enabled,
+            @Value("${lush.advice.pool.size:256}") final int size
+    ) {
+        if( enabled && size > 0 ) {
+            int stripeCount = Integer.highestOneBit( Math.min(size, Runtime.getRuntime().availableProcessors()) );
+            this.stripes = newStripes( stripeCount, size / stripeCount );
+            this.mask = stripeCount - 1;
+        }
+        else {
+            this.stripes = null;
+            this.mask = 0;
+        }
+
+        log.debug( String.format("Lush :: LushContextPool enabled: %s, size: %d", enabled, size) );
+    }
+
+    boolean isEnabled() {
+        return stripes != null;
+    }
+
+    /**
+     * @param traceId Supplies the trace id of the request (see TraceIdGenerator).
+     * @return A context for the request, with an advice of status code 200.
+     */
+    LushContext acquire(Supplier<String> traceId) {
+        LushContext context = stripes != null ? stripe().poll() : null;
+        if( context == null ) {
+            context = new LushContext();
+            context.setAdvice( new LushAdvice(null, 200) );
+        }
+        else {
+            reused.increment();
+            if( context.getAdvice() == null ) {
+                context.setAdvice( new LushAdvice(null, 200) );
+            }
+            else {
+                context.getAdvice().reset( null, 200 );
+            }
+        }
+
+        context.deferTraceId( traceId );
+        context.getAdvice().deferTraceId( traceId );
+        return context;
+    }
+
+    /**
+     * Return a context once its request is done with it, ignored if the pool is disabled or full.
+     *
+     * @param context The context.
+     */
+    void release(LushContext context) {
+        if( stripes != null && context != null ) {
+            stripe().offer( context );
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if( stripes == null ) {
+            return;
+        }
+
+        Gauge.builder( "lush.context-pool.size", this, LushContextPool::size )
+                .description( "LushContexts held for reuse" )
+                .register( registry );
+        FunctionCounter.builder( "lush.context-pool.reused", reused, LongAdder::sum )
+                .description( "LushContexts reused for a request" )
+                .register( registry );
+    }
+
+    /**
+     * @return The number of contexts held for reuse.
+     */
+    int size() {
+        int size = 0;
+        if( stripes != null ) {
+            for( BlockingQueue<LushContext> stripe : stripes ) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private BlockingQueue<LushContext> stripe() {
+        return stripes.get( (int) Thread.currentThread().getId() & mask );
+    }
+
+    private static List<BlockingQueue<LushContext>> newStripes(int count, int capacity) {
+        // Each stripe is an array, offering and polling doesn't allocate.
+        List<BlockingQueue<LushContext>> stripes = new ArrayList<>( count );
+        for( int i=0; i<count; i++ ) {
+            stripes.add( new ArrayBlockingQueue<>(capacity) );
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,55 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebExceptionHandler;
+import reactor.core.publisher.Mono;
+
+/**
+ * Part of the handler decoration engine (see LushResultHandler).  Handles an exception raised by LushHandlerAdapter
+ * before a Lush controller method is called, the same way the AOP engine does: the advice is marked as an unexpected
+ * exception and an empty response is returned.  Exceptions thrown by the method itself are handled by
+ * LushResultHandler.
+ * <br/><br/>
+ * ResponseStatusExceptions (ie: a request that can't be bound to the method's arguments) are left to WebFlux.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@ConditionalOnProperty( name = "lush.decoration.engine", havingValue = "handler" )
+public class LushExceptionHandler implements WebExceptionHandler, Ordered {
+    private final UnexpectedErrorHandler unexpectedErrorHandler;
+
+    @Autowired
+    public LushExceptionHandler(UnexpectedErrorHandler unexpectedErrorHandler) {
+        this.unexpectedErrorHandler = unexpectedErrorHandler;
+    }
+
+    @Override
+    public int getOrder() {
+        // Ahead of Spring Boot's error handler.
+        return -2;
+    }
+
+    @Override
+    public Mono<Void> handle(ServerWebExchange exchange, Throwable throwable) {
+        LushContext lushContext = LushRequestState.of( exchange ).getContext();
+
+        if( lushContext == null
+                || throwable instanceof ResponseStatusException
+                || exchange.getResponse().isCommitted()
+                || !LushResultHandler.isLushControllerMethod(exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE)) ) {
+            return Mono.error( throwable );
+        }
+
+        unexpectedErrorHandler.handle( lushContext, throwable );
+        return exchange.getResponse().setComplete();
+    }
+}
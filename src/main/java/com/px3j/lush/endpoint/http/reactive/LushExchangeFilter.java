@@ -0,0 +1,125 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.px3j.lush.core.exception.LushException;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushAdviceCbor;
+import com.px3j.lush.endpoint.http.AdviceEncoding;
+import com.px3j.lush.endpoint.http.Constants;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * WebClient filter for calls from a Lush service to other Lush services, add it to the WebClient the controller uses:
+ * <pre>
+ *  WebClient.builder().filter( lushExchangeFilter ).build()
+ * </pre>
+ * The x-lush-ticket header of the current request is forwarded as it was received, so the ticket isn't encrypted
+ * again for each call.  Only a ticket that was successfully decoded is forwarded, and a request that already has an
+ * x-lush-ticket header keeps it.  Calls made outside of a Lush request are left as they are.
+ * <br/><br/>
+ * The downstream advice is asked for as CBOR (see AdviceEncoding) and, once the response arrives, its warnings and
+ * extras are added to the advice of the current request.  The status code of the current request isn't changed, nor
+ * are extras Lush itself adds (those whose key starts with "lush."), the downstream service's are left out.  Advice that
+ * can't be decoded or merged is logged and ignored, the response is passed on either way.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.client.merge-advice - false to leave the downstream advice out of the current request's (default: true)
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+public class LushExchangeFilter implements ExchangeFilterFunction {
+    private static final String LUSH_EXTRA_PREFIX = "lush.";
+
+    private final Gson gson = new Gson();
+    private final boolean mergeAdvice;
+
+    @Autowired
+    public LushExchangeFilter(@Value("${lush.client.merge-advice:true}") final boolean mergeAdvice) {
+        this.mergeAdvice = mergeAdvice;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual( ctx -> {
+            LushRequestState state = LushRequestState.from( ctx );
+            if( state == null ) {
+                return next.exchange( request );
+            }
+
+            ClientRequest.Builder forwarded = ClientRequest.from( request );
+            String encodedTicket = state.getEncodedTicket();
+            if( encodedTicket != null && !request.headers().containsKey(Constants.TICKET_HEADER_NAME) ) {
+                forwarded.header( Constants.TICKET_HEADER_NAME, encodedTicket );
+            }
+
+            LushAdvice advice = state.getAdvice();
+            if( !mergeAdvice || advice == null ) {
+                return next.exchange( forwarded.build() );
+            }
+
+            if( !request.headers().containsKey(Constants.ADVICE_ENCODING_HEADER_NAME) ) {
+                forwarded.header( Constants.ADVICE_ENCODING_HEADER_NAME, AdviceEncoding.CBOR.headerValue() );
+            }
+
+            return next.exchange( forwarded.build() ).doOnNext( response -> {
+                try {
+                    merge( advice, response );
+                }
+                catch (RuntimeException e) {
+                    log.debug( "Lush :: unable to merge downstream advice: " + e );
+                }
+            });
+        });
+    }
+
+    private void merge(LushAdvice advice, ClientResponse response) {
+        String value = response.headers().asHttpHeaders().getFirst( Constants.ADVICE_HEADER_NAME );
+        if( value == null ) {
+            return;
+        }
+
+        LushAdvice downstream;
+        try {
+            // Services that don't know about encodings answer with JSON.
+            String encoding = response.headers().asHttpHeaders().getFirst( Constants.ADVICE_ENCODING_HEADER_NAME );
+            downstream = AdviceEncoding.from(encoding, AdviceEncoding.JSON) == AdviceEncoding.CBOR
+                    ? LushAdviceCbor.decodeFromString( value )
+                    : gson.fromJson( value, LushAdvice.class );
+        }
+        catch (LushException | JsonParseException e) {
+            log.debug( "Lush :: ignoring malformed downstream advice: " + e.getMessage() );
+            return;
+        }
+
+        if( downstream == null || (!downstream.hasWarnings() && !downstream.hasExtras()) ) {
+            return;
+        }
+
+        // Calls fanned out by the same request may complete together, and with the controller changing the advice.  Its
+        // changes synchronize on the advice, so the merge is applied as a whole.
+        synchronized (advice) {
+            downstream.getWarnings().forEach( advice::addWarning );
+            for( Map.Entry<String,Object> extra : downstream.getExtras().entrySet() ) {
+                if( !extra.getKey().startsWith(LUSH_EXTRA_PREFIX) ) {
+                    advice.putExtra( extra.getKey(), extra.getValue() );
+                }
+            }
+        }
+    }
+}
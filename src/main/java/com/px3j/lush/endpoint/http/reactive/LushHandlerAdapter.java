@@ -0,0 +1,263 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.exception.LushException;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushMethods;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.BindingContext;
+import org.springframework.web.reactive.HandlerAdapter;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.reactive.result.method.HandlerMethodArgumentResolver;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HandlerAdapter of the handler decoration engine (see LushResultHandler), it calls Lush controller methods in place of
+ * WebFlux's RequestMappingHandlerAdapter.  Arguments are resolved by the argument resolvers RequestMappingHandlerAdapter
+ * is configured with, the method is then called the way ControllerDecorator calls it:
+ * <ul>
+ *     <li>Without a ticket (ie: on a public path) the method isn't called, its result is empty.</li>
+ *     <li>LushCacheable methods are keyed on their arguments, and only called if their result isn't cached.</li>
+ *     <li>At its concurrency limit the method isn't called.</li>
+ *     <li>LushControllerMethod(blocking = true) methods are called, and subscribed to, on LushBlockingScheduler.</li>
+ *     <li>Methods that take longer than their timeout are cancelled.</li>
+ * </ul>
+ * The method is only called once its result is subscribed to, an exception it throws is published as an error and
+ * handled by LushResultHandler.
+ * <br/><br/>
+ * Unlike RequestMappingHandlerAdapter, @InitBinder, @ModelAttribute and @ExceptionHandler methods don't apply to Lush
+ * controller methods, their errors are handled by Lush.  RequestMappingHandlerAdapter doesn't expose its argument
+ * resolvers, they are read from it once, at startup.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@ConditionalOnProperty( name = "lush.decoration.engine", havingValue = "handler" )
+@Slf4j( topic = "lush.core.debug")
+class LushHandlerAdapter implements HandlerAdapter, Ordered {
+    private static final Object NO_VALUE = new Object();
+
+    private final RequestMappingHandlerAdapter requestMappingHandlerAdapter;
+    private final List<HandlerMethodArgumentResolver> argumentResolvers;
+    private final Map<MethodParameter,HandlerMethodArgumentResolver> argumentResolverCache = new ConcurrentHashMap<>();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final LushBlockingScheduler blockingScheduler;
+    private final DeadlinePolicy deadlinePolicy;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ResponseCache responseCache;
+
+    @Autowired
+    LushHandlerAdapter(
+            RequestMappingHandlerAdapter requestMappingHandlerAdapter,
+            LushBlockingScheduler blockingScheduler,
+            DeadlinePolicy deadlinePolicy,
+            ConcurrencyLimiter concurrencyLimiter,
+            ResponseCache responseCache
+    ) {
+        this.requestMappingHandlerAdapter = requestMappingHandlerAdapter;
+        this.argumentResolvers = argumentResolversOf( requestMappingHandlerAdapter );
+        this.blockingScheduler = blockingScheduler;
+        this.deadlinePolicy = deadlinePolicy;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.responseCache = responseCache;
+
+        log.debug( String.format("Lush :: LushHandlerAdapter argument resolvers: %d", argumentResolvers.size()) );
+    }
+
+    @Override
+    public int getOrder() {
+        // Ahead of RequestMappingHandlerAdapter, which supports every HandlerMethod.
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public boolean supports(Object handler) {
+        return LushResultHandler.isLushControllerMethod( handler );
+    }
+
+    @Override
+    public Mono<HandlerResult> handle(ServerWebExchange exchange, Object handler) {
+        final HandlerMethod handlerMethod = (HandlerMethod) handler;
+        final BindingContext bindingContext = new BindingContext( requestMappingHandlerAdapter.getWebBindingInitializer() );
+
+        return resolveArguments( handlerMethod, bindingContext, exchange )
+                .map( args -> new HandlerResult(
+                        handlerMethod,
+                        invocation( exchange, handlerMethod, args ),
+                        handlerMethod.getReturnType(),
+                        bindingContext
+                ));
+    }
+
+    /**
+     * @return The result of the method, the method is called when it is subscribed to.
+     */
+    private Publisher<?> invocation(ServerWebExchange exchange, HandlerMethod handlerMethod, Object[] args) {
+        final LushRequestState state = LushRequestState.of( exchange );
+        final LushContext lushContext = state.getContext();
+        final Method method = handlerMethod.getMethod();
+
+        // Methods annotated with LushCacheable are only called if their result isn't cached (or being fetched).
+        final ResponseCache.Cached cached = responseCache.cacheFor( method );
+
+        // The ticket is normally held by the request's state already, it only has to be loaded on a public path.
+        LushTicket ticket = state.getTicket();
+        Mono<LushTicket> tickets = ticket != null ? Mono.just( ticket ) : LushArgumentResolver.loadTicket();
+
+        if( LushMethods.kindOf(method) == LushMethods.Kind.FLUX ) {
+            return tickets.flatMapMany( t -> cached == null
+                    ? invokeFlux( handlerMethod, args, lushContext )
+                    : cached.flux( cached.keyOf(args, t.getUsername()), lushContext, () -> invokeFlux(handlerMethod, args, lushContext) )
+            );
+        }
+
+        return tickets.flatMap( t -> cached == null
+                ? invokeMono( handlerMethod, args, lushContext )
+                : cached.mono( cached.keyOf(args, t.getUsername()), lushContext, () -> invokeMono(handlerMethod, args, lushContext) )
+        );
+    }
+
+    /**
+     * Call a method returning a Flux, see ControllerDecorator.invokeFlux.
+     */
+    private Flux<Object> invokeFlux(HandlerMethod handlerMethod, Object[] args, LushContext lushContext) {
+        Method method = handlerMethod.getMethod();
+        Duration timeout = deadlinePolicy.timeoutFor( method );
+        Flux<Object> flux = concurrencyLimiter.flux( method, lushContext, timeout, () -> LushMethods.isBlocking( method )
+                ? blockingScheduler.flux( () -> invoke(handlerMethod, args) )
+                : Flux.from( call(handlerMethod, args) )
+        );
+        return deadlinePolicy.apply( flux, timeout, lushContext );
+    }
+
+    /**
+     * Call a method returning a Mono, see invokeFlux.
+     */
+    private Mono<Object> invokeMono(HandlerMethod handlerMethod, Object[] args, LushContext lushContext) {
+        Method method = handlerMethod.getMethod();
+        Duration timeout = deadlinePolicy.timeoutFor( method );
+        Mono<Object> mono = concurrencyLimiter.mono( method, lushContext, timeout, () -> LushMethods.isBlocking( method )
+                ? blockingScheduler.mono( () -> invoke(handlerMethod, args) )
+                : Mono.from( call(handlerMethod, args) )
+        );
+        return deadlinePolicy.apply( mono, timeout, lushContext );
+    }
+
+    /**
+     * Resolve the arguments of the method as RequestMappingHandlerAdapter does, each by the first resolver that
+     * supports it.
+     */
+    private Mono<Object[]> resolveArguments(HandlerMethod handlerMethod, BindingContext bindingContext, ServerWebExchange exchange) {
+        MethodParameter[] parameters = handlerMethod.getMethodParameters();
+        if( parameters.length == 0 ) {
+            return Mono.just( new Object[0] );
+        }
+
+        List<Mono<Object>> arguments = new ArrayList<>( parameters.length );
+        for( MethodParameter parameter : parameters ) {
+            parameter.initParameterNameDiscovery( parameterNameDiscoverer );
+            HandlerMethodArgumentResolver resolver = resolverFor( parameter );
+            if( resolver == null ) {
+                return Mono.error( new IllegalStateException(String.format(
+                        "No suitable resolver for argument %d of %s", parameter.getParameterIndex(), handlerMethod
+                )));
+            }
+            arguments.add( resolver.resolveArgument(parameter, bindingContext, exchange).defaultIfEmpty(NO_VALUE) );
+        }
+
+        return Mono.zip( arguments, values -> {
+            Object[] args = new Object[values.length];
+            for( int i=0; i<values.length; i++ ) {
+                args[i] = values[i] != NO_VALUE ? values[i] : null;
+            }
+            return args;
+        });
+    }
+
+    private HandlerMethodArgumentResolver resolverFor(MethodParameter parameter) {
+        HandlerMethodArgumentResolver resolver = argumentResolverCache.get( parameter );
+        if( resolver == null ) {
+            for( HandlerMethodArgumentResolver candidate : argumentResolvers ) {
+                if( candidate.supportsParameter(parameter) ) {
+                    resolver = candidate;
+                    argumentResolverCache.put( parameter, resolver );
+                    break;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Call the method, an exception it throws is returned as an error signal so it is handled (and counted by the
+     * concurrency limiter) the same way as an error published by the method.
+     */
+    private static Publisher<Object> call(HandlerMethod handlerMethod, Object[] args) {
+        try {
+            return invoke( handlerMethod, args );
+        }
+        catch (Throwable throwable) {
+            return Flux.error( throwable );
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Publisher<Object> invoke(HandlerMethod handlerMethod, Object[] args) throws Throwable {
+        Method method = BridgeMethodResolver.findBridgedMethod( handlerMethod.getMethod() );
+        ReflectionUtils.makeAccessible( method );
+        try {
+            return (Publisher<Object>) method.invoke( handlerMethod.getBean(), args );
+        }
+        catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * @return The argument resolvers of request mapping methods, custom resolvers (ie: LushArgumentResolver) included.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<HandlerMethodArgumentResolver> argumentResolversOf(RequestMappingHandlerAdapter adapter) {
+        try {
+            Object methodResolver = readField( adapter, "methodResolver" );
+            return (List<HandlerMethodArgumentResolver>) readField( methodResolver, "requestMappingResolvers" );
+        }
+        catch (RuntimeException e) {
+            throw new LushException( "lush.decoration.engine=handler can't read the argument resolvers of RequestMappingHandlerAdapter", e );
+        }
+    }
+
+    private static Object readField(Object target, String name) {
+        Field field = ReflectionUtils.findField( target.getClass(), name );
+        if( field == null ) {
+            throw new IllegalStateException( "No field " + name + " in " + target.getClass().getName() );
+        }
+        ReflectionUtils.makeAccessible( field );
+        return ReflectionUtils.getField( field, target );
+    }
+}
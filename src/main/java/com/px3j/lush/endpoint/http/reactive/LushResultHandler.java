@@ -0,0 +1,115 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.endpoint.http.LushMethods;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.reactive.HandlerResultHandler;
+import org.springframework.web.reactive.result.method.annotation.ResponseBodyResultHandler;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityResultHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+
+
+/**
+ * Decoration engine built on WebFlux's HandlerAdapter and HandlerResultHandler, an alternative to the AOP based
+ * ControllerDecorator.  Lush controller methods are called by LushHandlerAdapter, their results are given Lush error
+ * handling here and then written by the regular WebFlux result handlers.  There is no proxy around the controller and
+ * no extra context lookups per call, the only operator added to the result is onErrorResume.
+ * <br/><br/>
+ * Active when <b>lush.decoration.engine</b> is set to <b>handler</b>.  Works together with:
+ * <ul>
+ *     <li>LushHandlerAdapter - calls the method: ticket check, cache, concurrency limit, blocking and timeout.</li>
+ *     <li>LushArgumentResolver - supplies LushTicket/LushContext arguments (used by both engines).</li>
+ *     <li>LushExceptionHandler - handles exceptions raised before the method is called (ie: resolving its arguments).</li>
+ *     <li>TicketBaggageFilter - carries the username of the ticket into the logs.</li>
+ * </ul>
+ * As with the AOP engine, @InitBinder, @ModelAttribute and @ExceptionHandler methods don't apply to Lush controller
+ * methods.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@ConditionalOnProperty( name = "lush.decoration.engine", havingValue = "handler" )
+@Slf4j( topic = "lush.core.debug")
+public class LushResultHandler implements HandlerResultHandler, Ordered {
+    private final ResponseEntityResultHandler responseEntityResultHandler;
+    private final ResponseBodyResultHandler responseBodyResultHandler;
+    private final UnexpectedErrorHandler unexpectedErrorHandler;
+
+    @Autowired
+    public LushResultHandler(
+            ResponseEntityResultHandler responseEntityResultHandler,
+            ResponseBodyResultHandler responseBodyResultHandler,
+            UnexpectedErrorHandler unexpectedErrorHandler
+    ) {
+        this.responseEntityResultHandler = responseEntityResultHandler;
+        this.responseBodyResultHandler = responseBodyResultHandler;
+        this.unexpectedErrorHandler = unexpectedErrorHandler;
+    }
+
+    @Override
+    public int getOrder() {
+        // Ahead of the result handlers we delegate to.
+        return responseEntityResultHandler.getOrder() - 1;
+    }
+
+    @Override
+    public boolean supports(HandlerResult result) {
+        return isLushControllerMethod(result.getHandler()) && delegateFor(result) != null;
+    }
+
+    @Override
+    public Mono<Void> handleResult(ServerWebExchange exchange, HandlerResult result) {
+        final LushContext lushContext = LushRequestState.of( exchange ).getContext();
+        Object returnValue = result.getReturnValue();
+
+        Publisher<?> decorated;
+        if( returnValue instanceof Flux ) {
+            decorated = ((Flux<?>) returnValue).onErrorResume( throwable -> {
+                unexpectedErrorHandler.handle(lushContext, throwable);
+                return Flux.empty();
+            });
+        }
+        else if( returnValue instanceof Publisher ) {
+            decorated = Mono.from( (Publisher<?>) returnValue ).onErrorResume( throwable -> {
+                unexpectedErrorHandler.handle(lushContext, throwable);
+                return Mono.empty();
+            });
+        }
+        else {
+            // Not a reactive result, there is nothing that can fail later.
+            decorated = null;
+        }
+
+        HandlerResult decoratedResult = decorated == null
+                ? result
+                : new HandlerResult(result.getHandler(), decorated, result.getReturnTypeSource(), result.getBindingContext());
+
+        return delegateFor(result).handleResult( exchange, decoratedResult );
+    }
+
+    private HandlerResultHandler delegateFor(HandlerResult result) {
+        if( responseEntityResultHandler.supports(result) ) {
+            return responseEntityResultHandler;
+        }
+        return responseBodyResultHandler.supports(result) ? responseBodyResultHandler : null;
+    }
+
+    /**
+     * @param handler The handler selected for a request.
+     * @return true if the handler is a controller method annotated with LushControllerMethod.
+     */
+    static boolean isLushControllerMethod(Object handler) {
+        return handler instanceof HandlerMethod && LushMethods.isLushControllerMethod( ((HandlerMethod) handler).getMethod() );
+    }
+}
@@ -0,0 +1,18 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+
+/**
+ * Registers Lush extensions with Spring WebFlux.
+ *
+ * @author Paul Parrone
+ */
+@Configuration
+public class LushWebFluxConfigurer implements WebFluxConfigurer {
+    @Override
+    public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+        configurer.addCustomResolver( new LushArgumentResolver() );
+    }
+}
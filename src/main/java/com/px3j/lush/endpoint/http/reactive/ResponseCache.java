@@ -0,0 +1,223 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushCacheable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Response cache of methods annotated with LushCacheable, shared by both decoration engines.
+ * <br/><br/>
+ * Each method has its own cache holding a future of the result.  The first request for a key calls the method, any
+ * identical request that arrives before it completes waits on the same future so the method is only called once
+ * (single-flight).  Once complete the result is served from the cache until the ttl expires.  Requests that didn't call
+ * the method have the advice of the call that did copied into their own, along with an extra of
+ * <b>lush.cacheHit</b> set to true.
+ * <br/><br/>
+ * Failed calls, and calls whose advice has a negative (Lush) status code, are removed from the cache once complete -
+ * requests already waiting on them share the outcome, later requests call the method again.
+ * <br/><br/>
+ * Each method's cache is published as lush.response-cache, tagged with the method.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+class ResponseCache implements MeterBinder {
+    static final String CACHE_HIT_EXTRA = "lush.cacheHit";
+
+    private final Map<Method,Optional<Cached>> caches = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    /**
+     * @param method The Lush controller method.
+     * @return The cache of the method, null if the method isn't annotated with LushCacheable.
+     */
+    Cached cacheFor(Method method) {
+        Optional<Cached> cached = caches.get(method);
+        if( cached == null ) {
+            cached = caches.computeIfAbsent( method, this::create );
+        }
+        return cached.orElse(null);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        caches.values().forEach( c -> c.ifPresent(cached -> cached.bindTo(registry)) );
+    }
+
+    private Optional<Cached> create(Method method) {
+        LushCacheable cacheable = method.getAnnotation(LushCacheable.class);
+        if( cacheable == null ) {
+            return Optional.empty();
+        }
+
+        Cached cached = new Cached(
+                method.getDeclaringClass().getSimpleName() + "." + method.getName(),
+                cacheable
+        );
+        log.debug( String.format("Lush :: ResponseCache for %s, ttl: %s, key: %s", cached.name, cacheable.ttl(), cacheable.key()) );
+
+        MeterRegistry r = registry;
+        if( r != null ) {
+            cached.bindTo(r);
+        }
+        return Optional.of(cached);
+    }
+
+    /**
+     * The cache of a single method.
+     */
+    static final class Cached {
+        private final String name;
+        private final boolean perUser;
+        private final AsyncCache<Object,Entry> cache;
+        private volatile boolean bound;
+
+        private Cached(String name, LushCacheable cacheable) {
+            this.name = name;
+            this.perUser = cacheable.key() == LushCacheable.Key.ARGUMENTS_AND_USER;
+            this.cache = Caffeine.newBuilder()
+                    .expireAfterWrite( DurationStyle.detectAndParse(cacheable.ttl()) )
+                    .maximumSize( cacheable.maximumSize() )
+                    .recordStats()
+                    .buildAsync();
+        }
+
+        /**
+         * Build the key of a call.  LushTicket and LushContext arguments are left out, the ticket's username is added
+         * if the method is cached per user.
+         *
+         * @param args The arguments of the call.
+         * @param username Username of the caller's ticket.
+         * @return The cache key.
+         */
+        Object keyOf(Object[] args, String username) {
+            List<Object> key = new ArrayList<>(args.length + 1);
+            for( Object arg : args ) {
+                if( !(arg instanceof LushTicket) && !(arg instanceof LushContext) ) {
+                    key.add(arg);
+                }
+            }
+            if( perUser ) {
+                key.add(username);
+            }
+            return key;
+        }
+
+        /**
+         * @return true if the key includes the username of the caller.
+         */
+        boolean isPerUser() {
+            return perUser;
+        }
+
+        /**
+         * Serve a Mono from the cache, calling the method through invocation if it isn't cached.
+         */
+        @SuppressWarnings("unchecked")
+        <T> Mono<T> mono(Object key, LushContext lushContext, Supplier<Mono<T>> invocation) {
+            return lookup( key, lushContext, () -> Flux.from(invocation.get()) )
+                    .flatMap( entry -> entry.values.isEmpty() ? Mono.empty() : Mono.just((T) entry.values.get(0)) );
+        }
+
+        /**
+         * Serve a Flux from the cache, calling the method through invocation if it isn't cached.
+         */
+        @SuppressWarnings("unchecked")
+        <T> Flux<T> flux(Object key, LushContext lushContext, Supplier<Flux<T>> invocation) {
+            return lookup( key, lushContext, invocation )
+                    .flatMapIterable( entry -> (List<T>) entry.values );
+        }
+
+        private <T> Mono<Entry> lookup(Object key, LushContext lushContext, Supplier<Flux<T>> invocation) {
+            return Mono.deferContextual( ctx -> {
+                boolean[] called = { false };
+
+                CompletableFuture<Entry> future = cache.get( key, (k, executor) -> {
+                    called[0] = true;
+                    return invocation.get()
+                            .collectList()
+                            .map( values -> new Entry(values, snapshot(lushContext)) )
+                            .contextWrite( ctx )
+                            .toFuture();
+                });
+
+                // Each request waits on a dependent future, a cancelled request doesn't cancel the call other
+                // requests are waiting on.
+                CompletableFuture<Entry> result = called[0]
+                        ? future.whenComplete( (entry, t) -> {
+                            if( entry != null && entry.advice.getStatusCode() < 0 ) {
+                                cache.asMap().remove( key, future );
+                            }
+                        })
+                        : future.thenApply( entry -> {
+                            replay( entry, lushContext );
+                            return entry;
+                        });
+
+                return Mono.fromFuture( result );
+            });
+        }
+
+        private static LushAdvice snapshot(LushContext lushContext) {
+            LushAdvice snapshot = new LushAdvice();
+            LushAdvice advice = lushContext != null ? lushContext.getAdvice() : null;
+            if( advice != null ) {
+                snapshot.mergeFrom( advice );
+            }
+            return snapshot;
+        }
+
+        private static void replay(Entry entry, LushContext lushContext) {
+            LushAdvice advice = lushContext != null ? lushContext.getAdvice() : null;
+            if( advice != null ) {
+                advice.mergeFrom( entry.advice );
+                advice.putExtra( CACHE_HIT_EXTRA, true );
+            }
+        }
+
+        private synchronized void bindTo(MeterRegistry registry) {
+            if( bound ) {
+                return;
+            }
+            bound = true;
+
+            CaffeineCacheMetrics.monitor( registry, cache.synchronous(), "lush.response-cache", "method", name );
+        }
+    }
+
+    /**
+     * A completed call: the values it emitted and its advice.
+     */
+    private static final class Entry {
+        private final List<Object> values;
+        private final LushAdvice advice;
+
+        private Entry(List<?> values, LushAdvice advice) {
+            this.values = Collections.unmodifiableList(values);
+            this.advice = advice;
+        }
+    }
+}
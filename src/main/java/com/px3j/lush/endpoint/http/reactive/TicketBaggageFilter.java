@@ -0,0 +1,43 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import brave.baggage.BaggageField;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Part of the handler decoration engine (see LushResultHandler).  Sets the lush-user-name baggage field from the
+ * request's ticket so the username is carried across all Lush based service logs, this is done by ControllerDecorator
+ * when the AOP engine is used.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@ConditionalOnProperty( name = "lush.decoration.engine", havingValue = "handler" )
+public class TicketBaggageFilter implements WebFilter {
+    private final BaggageField lushUserNameField;
+
+    @Autowired
+    public TicketBaggageFilter(BaggageField lushUserNameField) {
+        this.lushUserNameField = lushUserNameField;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        LushTicket ticket = LushRequestState.of( exchange ).getTicket();
+        if( ticket != null ) {
+            lushUserNameField.updateValue( ticket.getUsername() );
+            return chain.filter( exchange );
+        }
+
+        return LushArgumentResolver.loadTicket()
+                .doOnNext( t -> lushUserNameField.updateValue(t.getUsername()) )
+                .then( chain.filter(exchange) );
+    }
+}
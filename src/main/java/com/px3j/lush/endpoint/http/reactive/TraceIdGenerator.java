@@ -0,0 +1,101 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sleuth.Span;
+import org.springframework.cloud.sleuth.TraceContext;
+import org.springframework.cloud.sleuth.Tracer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Generates the trace id of each request, over HTTP (see EndpointFilter) or RSocket.  The ids are deferred: what
+ * identifies the request is captured up front, the string is only built the first time the controller, the advice
+ * writer or the error path reads it.
+ * <br/><br/>
+ * Configured with the following properties:
+ * <pre>
+ *  lush.trace-id.mode - sleuth: &lt;trace id&gt;,&lt;span id&gt; of the current span, ?/? if there is none
+ *                       local: &lt;node&gt;-&lt;counter in hex&gt;, for services that run without tracing
+ *                       (default: sleuth)
+ *  lush.trace-id.node - prefix of local ids, should be unique to the instance (default: random)
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+public class TraceIdGenerator {
+    static final String NO_SPAN = "?/?";
+
+    private final Tracer tracer;
+    private final boolean local;
+    private final String node;
+    private final AtomicLong counter = new AtomicLong();
+
+    @Autowired
+    TraceIdGenerator(
+            ObjectProvider<Tracer> tracer,
+            @Value("${lush.trace-id.mode:sleuth}") final String mode,
+            @Value("${lush.trace-id.node:}") final String node
+    ) {
+        this.local = "local".equalsIgnoreCase(mode);
+        this.tracer = local ? null : tracer.getIfAvailable();
+        this.node = node.isBlank()
+                ? Long.toHexString( ThreadLocalRandom.current().nextLong() & 0xFFFFFFFFFFFFL )
+                : node;
+
+        log.debug( String.format("Lush :: TraceIdGenerator mode: %s, node: %s", local ? "local" : "sleuth", this.node) );
+    }
+
+    /**
+     * @return The trace id of the current request, built on first use.
+     */
+    public Supplier<String> next() {
+        if( local ) {
+            final long id = counter.getAndIncrement();
+            return new Deferred( () -> node + "-" + Long.toHexString(id) );
+        }
+
+        // The span must be captured now, it is no longer current by the time the id is read.
+        Span currentSpan = tracer != null ? tracer.currentSpan() : null;
+        if( currentSpan == null ) {
+            return () -> NO_SPAN;
+        }
+
+        final TraceContext traceContext = currentSpan.context();
+        return new Deferred( () -> traceContext.traceId() + "," + traceContext.spanId() );
+    }
+
+    /**
+     * Builds the id once, it is shared by the request's LushContext and LushAdvice.
+     */
+    private static final class Deferred implements Supplier<String> {
+        private Supplier<String> builder;
+        private volatile String id;
+
+        Deferred(Supplier<String> builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public String get() {
+            String result = id;
+            if( result == null ) {
+                synchronized (this) {
+                    result = id;
+                    if( result == null ) {
+                        id = result = builder.get();
+                        builder = null;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
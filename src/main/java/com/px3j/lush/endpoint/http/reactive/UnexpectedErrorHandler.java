@@ -0,0 +1,50 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.exception.ExceptionReporter;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lush handling of an unexpected exception thrown by a Lush controller method, shared by both decoration engines.
+ * The exception is logged and the LushAdvice is given the special status code of -99 and an extra of
+ * lush.isUnexpectedException set to true.
+ * <br/><br/>
+ * The exception is logged through ExceptionReporter so a burst of identical failures doesn't flood the log.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+class UnexpectedErrorHandler {
+    static final String UNEXPECTED_EXTRA = "lush.isUnexpectedException";
+
+    private final ExceptionReporter exceptionReporter;
+
+    @Autowired
+    UnexpectedErrorHandler(ExceptionReporter exceptionReporter) {
+        this.exceptionReporter = exceptionReporter;
+    }
+
+    /**
+     * Helper method to populate the returned LushAdvice properly in the event that an unexpected exception occurs during
+     * this call.
+     *
+     * @param lushContext The context to populate.
+     * @param throwable The exception causing the error.
+     */
+    void handle(LushContext lushContext, Throwable throwable) {
+        exceptionReporter.report( log, throwable );
+
+        LushAdvice advice = lushContext != null ? lushContext.getAdvice() : null;
+        if( advice == null ) {
+            log.warn( "advice is null in context - cannot set status codes" );
+            return;
+        }
+
+        advice.setStatusCode( LushAdvice.STATUS_UNEXPECTED_EXCEPTION );
+        advice.putExtra( UNEXPECTED_EXTRA, true );
+    }
+}
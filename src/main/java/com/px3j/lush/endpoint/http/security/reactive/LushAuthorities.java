@@ -0,0 +1,53 @@
+package com.px3j.lush.endpoint.http.security.reactive;
+
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authority checks that take advantage of the bitset kept by LushTicket, each check is a constant time bit test rather
+ * than a scan of the ticket's authorities.
+ * <br/><br/>
+ * Use it from Spring Security configuration:
+ * <pre>
+ *     exchanges.pathMatchers("/admin/**").access( LushAuthorities.hasAuthority("admin") );
+ * </pre>
+ * Or from method security, this class is registered as the <b>lushAuthorities</b> bean:
+ * <pre>
+ *     &#64;PreAuthorize("@lushAuthorities.hasAuthority(authentication, 'admin')")
+ * </pre>
+ *
+ * @author Paul Parrone
+ */
+@Component("lushAuthorities")
+public class LushAuthorities {
+    /**
+     * @param authority The required authority.
+     * @return A ReactiveAuthorizationManager that grants access if the authenticated user has the authority.
+     */
+    public static ReactiveAuthorizationManager<AuthorizationContext> hasAuthority(final String authority) {
+        return (authentication, context) -> authentication
+                .filter( Authentication::isAuthenticated )
+                .map( a -> new AuthorizationDecision(check(a, authority)) )
+                .defaultIfEmpty( new AuthorizationDecision(false) );
+    }
+
+    /**
+     * @param authentication The current authentication, may be null.
+     * @param authority The required authority.
+     * @return true if the authentication has the authority.
+     */
+    public boolean hasAuthority(final Authentication authentication, final String authority) {
+        return authentication != null && authentication.isAuthenticated() && check(authentication, authority);
+    }
+
+    private static boolean check(final Authentication authentication, final String authority) {
+        if( authentication instanceof TicketAuthenticationToken ) {
+            return ((TicketAuthenticationToken) authentication).hasAuthority(authority);
+        }
+
+        return authentication.getAuthorities().stream().anyMatch( a -> authority.equals(a.getAuthority()) );
+    }
+}
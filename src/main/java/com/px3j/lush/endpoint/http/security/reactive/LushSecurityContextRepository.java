@@ -1,9 +1,11 @@
 package com.px3j.lush.endpoint.http.security.reactive;
 
 import com.google.gson.JsonSyntaxException;
+import com.px3j.lush.core.exception.LushException;
 import com.px3j.lush.core.ticket.LushTicket;
 import com.px3j.lush.core.ticket.TicketUtil;
 import com.px3j.lush.endpoint.http.Constants;
+import com.px3j.lush.endpoint.http.LushRequestState;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContext;
@@ -19,10 +21,12 @@ import java.util.List;
 @Slf4j( topic = "lush.core.debug")
 public class LushSecurityContextRepository implements ServerSecurityContextRepository {
     private final TicketUtil ticketUtil;
+    private final TicketCache ticketCache;
 
     @Autowired
-    public LushSecurityContextRepository(TicketUtil ticketUtil) {
+    public LushSecurityContextRepository(TicketUtil ticketUtil, TicketCache ticketCache) {
         this.ticketUtil = ticketUtil;
+        this.ticketCache = ticketCache;
     }
 
     @Override
@@ -45,22 +49,48 @@ public class LushSecurityContextRepository implements ServerSecurityContextRepos
         // Header is an array, get the first element.
         final String ticketFromHeader = ticketList.get(0);
 
+        SecurityContext securityContext = ticketCache.get( ticketFromHeader, this::createSecurityContext );
+        if( securityContext == null ) {
+            return Mono.empty();
+        }
+
+        // Make the ticket available to the rest of Lush without another trip through the security context.
+        LushTicket ticket = (LushTicket) securityContext.getAuthentication().getPrincipal();
+        LushRequestState.of( exchange ).setTicket( ticket, ticketFromHeader );
+
+        if( log.isDebugEnabled() ) {
+            log.debug( "ALLOW: userName: " + ticket.getUsername() );
+        }
+
+        return Mono.just( securityContext );
+    }
+
+    /**
+     * Decrypt the ticket and wrap it in a SecurityContext.
+     *
+     * @param ticketFromHeader The ticket as it was sent in the request header.
+     * @return A SecurityContext for the ticket or null if the ticket is not valid.
+     */
+    private SecurityContext createSecurityContext(final String ticketFromHeader) {
         try {
             LushTicket ticket = ticketUtil.decrypt(ticketFromHeader);
 
             TicketAuthenticationToken authToken = new TicketAuthenticationToken(ticket);
             authToken.setAuthenticated(true);
-            if( log.isDebugEnabled() ) {
-                log.debug( "ALLOW: userName: " + ticket.getUsername() );
-            }
 
-            return Mono.just( new SecurityContextImpl(authToken) );
+            return new SecurityContextImpl(authToken);
         }
         catch (JsonSyntaxException e) {
             if( log.isDebugEnabled() ) {
                 log.debug( "DENY: Invalid JSON in Lush Ticket header: " + Constants.TICKET_HEADER_NAME );
             }
-            return Mono.empty();
+            return null;
+        }
+        catch (LushException e) {
+            if( log.isDebugEnabled() ) {
+                log.debug( "DENY: Unable to decode Lush Ticket header: " + Constants.TICKET_HEADER_NAME + " - " + e.getMessage() );
+            }
+            return null;
         }
     }
 }
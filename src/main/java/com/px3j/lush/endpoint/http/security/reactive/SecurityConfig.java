@@ -53,7 +53,7 @@ public class SecurityConfig {
                 .authorizeExchange( exchanges -> {
                     exchanges.pathMatchers(HttpMethod.OPTIONS).permitAll();
                     // Require role: lush-monitor for actuator endpoints.
-                    exchanges.pathMatchers("/actuator/**", "/health/**" ).hasAuthority("lush-monitor");
+                    exchanges.pathMatchers("/actuator/**", "/health/**" ).access( LushAuthorities.hasAuthority("lush-monitor") );
 
                     publicPaths.forEach( p -> exchanges.pathMatchers(p).permitAll() );
 
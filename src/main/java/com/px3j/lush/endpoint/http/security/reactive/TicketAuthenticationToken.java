@@ -2,22 +2,61 @@ package com.px3j.lush.endpoint.http.security.reactive;
 
 import com.px3j.lush.core.ticket.LushTicket;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Integrate our LushTicket with Spring Security
  *
+ * Authorities are read from the ticket when they are asked for (rather than copied when the token is created) so a
+ * lazily decoded ticket only decodes them if an authorization check needs them.  For the same reason equals and
+ * hashCode are overridden, AbstractAuthenticationToken only compares the authorities it was created with (none).
+ *
  * @author Paul Parrone
  */
 public class TicketAuthenticationToken extends AbstractAuthenticationToken {
     private final LushTicket ticket;
 
     public TicketAuthenticationToken(LushTicket ticket) {
-        super(ticket.getAuthorities());
+        super(AuthorityUtils.NO_AUTHORITIES);
         this.ticket = ticket;
     }
 
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return Collections.unmodifiableCollection(ticket.getAuthorities());
+    }
+
+    /**
+     * Constant time check for an authority, see LushTicket::hasAuthority
+     *
+     * @param authority Name of the authority.
+     * @return true if the ticket has the authority.
+     */
+    public boolean hasAuthority(final String authority) {
+        return ticket.hasAuthority(authority);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if( !(obj instanceof TicketAuthenticationToken) || !super.equals(obj) ) {
+            return false;
+        }
+
+        TicketAuthenticationToken other = (TicketAuthenticationToken) obj;
+        return new ArrayList<>( getAuthorities() ).equals( new ArrayList<>(other.getAuthorities()) );
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + new ArrayList<>( getAuthorities() ).hashCode();
+    }
+
     @Override
     public Object getCredentials() {
         return Map.of("username", ticket.getUsername(), "password", ticket.getPassword() );
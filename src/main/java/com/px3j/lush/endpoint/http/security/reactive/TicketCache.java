@@ -0,0 +1,121 @@
+package com.px3j.lush.endpoint.http.security.reactive;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.px3j.lush.core.exception.LushException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Optional in-process cache of SecurityContext instances built from decrypted Lush tickets.  Callers tend to send the
+ * same ticket over and over again, this cache allows LushSecurityContextRepository to skip decryption for tickets it
+ * has already seen.
+ * <br/><br/>
+ * Entries are keyed by the SHA-256 digest of the ticket as it appears in the request header and are evicted using
+ * Caffeine's W-TinyLFU policy once the maximum size is reached, or once the TTL has expired.  The cache is configured
+ * with the following properties:
+ * <pre>
+ *  lush.security.ticket-cache.enabled      - true to enable the cache (default: false)
+ *  lush.security.ticket-cache.maximum-size - maximum number of cached tickets (default: 10000)
+ *  lush.security.ticket-cache.ttl          - time an entry lives after it was decrypted (default: 5m)
+ * </pre>
+ *
+ * Cached SecurityContext (and the LushTicket within it) instances are shared by every request that carries the same
+ * ticket, they must be treated as read-only.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+public class TicketCache implements MeterBinder {
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new LushException( "SHA-256 is not available", e );
+        }
+    });
+
+    private final Cache<ByteBuffer,SecurityContext> cache;
+
+    @Autowired
+    public TicketCache(
+            @Value("${lush.security.ticket-cache.enabled:false}") final boolean enabled,
+            @Value("${lush.security.ticket-cache.maximum-size:10000}") final long maximumSize,
+            @Value("${lush.security.ticket-cache.ttl:5m}") final Duration ttl
+    ) {
+        this.cache = !enabled ? null : Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        log.debug( String.format("Lush :: TicketCache enabled: %s, maximum-size: %d, ttl: %s", enabled, maximumSize, ttl) );
+    }
+
+    /**
+     * @return true if the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Return the SecurityContext for the passed in ticket, calling loader to build it if it isn't cached.  If the loader
+     * returns null (ie: the ticket is invalid) nothing is cached and null is returned.
+     *
+     * @param ticket The ticket as it appears in the request header.
+     * @param loader Function that decrypts the ticket and builds a SecurityContext from it.
+     * @return The SecurityContext for the ticket, or null if loader could not build one.
+     */
+    public SecurityContext get(final String ticket, final Function<String,SecurityContext> loader) {
+        if( cache == null ) {
+            return loader.apply(ticket);
+        }
+
+        return cache.get( keyFor(ticket), k -> loader.apply(ticket) );
+    }
+
+    /**
+     * @return Hit/miss/eviction statistics for this cache, empty statistics if the cache is disabled.
+     */
+    public CacheStats stats() {
+        return cache == null ? CacheStats.empty() : cache.stats();
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void invalidateAll() {
+        if( cache != null ) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if( cache != null ) {
+            CaffeineCacheMetrics.monitor( registry, cache, "lush.ticket-cache" );
+        }
+    }
+
+    private static ByteBuffer keyFor(final String ticket) {
+        MessageDigest digest = digests.get();
+        return ByteBuffer.wrap( digest.digest(ticket.getBytes(StandardCharsets.UTF_8)) );
+    }
+}
@@ -0,0 +1,40 @@
+package com.px3j.lush.endpoint.rsocket;
+
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.invocation.reactive.HandlerMethodArgumentResolver;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves LushTicket and LushContext arguments of @MessageMapping methods from the request's LushRequestState (see
+ * LushResponderRSocket), the RSocket counterpart of LushArgumentResolver.  Empty instances are passed if the request
+ * has no state so a controller never sees null.
+ *
+ * @author Paul Parrone
+ */
+public class LushRSocketArgumentResolver implements HandlerMethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return type == LushTicket.class || type == LushContext.class;
+    }
+
+    @Override
+    public Mono<Object> resolveArgument(MethodParameter parameter, Message<?> message) {
+        return Mono.deferContextual( ctx -> {
+            LushRequestState state = LushRequestState.from( ctx );
+
+            if( parameter.getParameterType() == LushContext.class ) {
+                LushContext lushContext = state != null ? state.getContext() : null;
+                return Mono.just( lushContext != null ? lushContext : new LushContext() );
+            }
+
+            LushTicket ticket = state != null ? state.getTicket() : null;
+            // The ticket of the connection is shared by all of its requests.
+            return Mono.just( ticket != null ? ticket.copy() : new LushTicket() );
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package com.px3j.lush.endpoint.rsocket;
+
+import org.springframework.boot.autoconfigure.rsocket.RSocketMessageHandlerCustomizer;
+import org.springframework.boot.rsocket.server.RSocketServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers Lush extensions with Spring's RSocket server: connections are authenticated by
+ * LushSocketAcceptorInterceptor and LushTicket/LushContext arguments are resolved by LushRSocketArgumentResolver.
+ * The server itself is Spring Boot's, started when <b>spring.rsocket.server.port</b> is set.
+ * <br/><br/>
+ * Lush controller methods are decorated by ControllerDecorator, so serving them over RSocket requires the default
+ * (aop) <b>lush.decoration.engine</b>.
+ *
+ * @author Paul Parrone
+ */
+@Configuration
+public class LushRSocketConfigurer {
+    @Bean
+    public RSocketServerCustomizer lushRSocketServerCustomizer(LushSocketAcceptorInterceptor interceptor) {
+        return server -> server.interceptors( registry -> registry.forSocketAcceptor(interceptor) );
+    }
+
+    @Bean
+    public RSocketMessageHandlerCustomizer lushRSocketMessageHandlerCustomizer() {
+        return handler -> handler.getArgumentResolverConfigurer().addCustomResolver( new LushRSocketArgumentResolver() );
+    }
+}
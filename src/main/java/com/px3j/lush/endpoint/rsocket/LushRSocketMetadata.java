@@ -0,0 +1,140 @@
+package com.px3j.lush.endpoint.rsocket;
+
+import com.px3j.lush.core.exception.LushException;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushAdviceCbor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.ConnectionSetupPayload;
+import io.rsocket.Payload;
+import io.rsocket.metadata.CompositeMetadata;
+import io.rsocket.metadata.CompositeMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The metadata Lush sends and receives over RSocket:
+ * <pre>
+ *  message/x.lush.ticket - the encrypted Lush ticket, as it is sent in the x-lush-ticket header, in the setup metadata
+ *                          of a connection
+ *  message/x.lush.advice - the LushAdvice of a response as CBOR (see LushAdviceCbor), in the metadata of the response
+ *                          of a request-response and of the last payload of a request-stream, or in a metadata push
+ *                          if the response has no payload
+ * </pre>
+ * Each is an entry of composite metadata (message/x.rsocket.composite-metadata.v0), the default of RSocketRequester,
+ * or the whole of the metadata if the connection's metadata mime type is the entry's own.  Over a connection with any
+ * other metadata mime type no advice is sent.
+ * <br/><br/>
+ * A Spring client passes the ticket with:
+ * <pre>
+ *  RSocketRequester.builder().setupMetadata( encodedTicket, LushRSocketMetadata.TICKET )
+ * </pre>
+ * The advice is read from a response with adviceOf, using the io.rsocket.RSocket of the requester (rsocketClient()),
+ * pushed advice from the metadata push received by the requester's responder.
+ *
+ * @author Paul Parrone
+ */
+public final class LushRSocketMetadata {
+    public static final String TICKET_MIME_TYPE = "message/x.lush.ticket";
+    public static final String ADVICE_MIME_TYPE = "message/x.lush.advice";
+
+    public static final MimeType TICKET = MimeTypeUtils.parseMimeType( TICKET_MIME_TYPE );
+    public static final MimeType ADVICE = MimeTypeUtils.parseMimeType( ADVICE_MIME_TYPE );
+
+    private static final String COMPOSITE_MIME_TYPE = WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString();
+
+    private LushRSocketMetadata() {
+    }
+
+    /**
+     * @param payload A response received from a Lush service over a connection using composite metadata.
+     * @return The advice it carries, null if it doesn't carry any.
+     */
+    public static LushAdvice adviceOf(Payload payload) {
+        return adviceOf( payload, COMPOSITE_MIME_TYPE );
+    }
+
+    /**
+     * @param payload A response received from a Lush service.
+     * @param metadataMimeType The metadata mime type of the connection.
+     * @return The advice it carries, null if it doesn't carry any.
+     */
+    public static LushAdvice adviceOf(Payload payload, String metadataMimeType) {
+        ByteBuf content = payload.hasMetadata() ? entry( payload.sliceMetadata(), metadataMimeType, ADVICE_MIME_TYPE ) : null;
+        return content != null ? LushAdviceCbor.decode( ByteBufUtil.getBytes(content) ) : null;
+    }
+
+    /**
+     * @param setup The setup of a connection.
+     * @return The ticket in its metadata, null if there is none.
+     */
+    static String ticketOf(ConnectionSetupPayload setup) {
+        ByteBuf content = setup.hasMetadata() ? entry( setup.sliceMetadata(), setup.metadataMimeType(), TICKET_MIME_TYPE ) : null;
+        return content != null ? content.toString(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * @param allocator Allocator of the connection.
+     * @param metadata Metadata of a response, null if it has none.  It is part of the result, or released.
+     * @param advice The advice to send.
+     * @param metadataMimeType The metadata mime type of the connection, one that carriesAdvice.
+     * @return The metadata with the advice added to it.
+     */
+    static ByteBuf withAdvice(ByteBufAllocator allocator, ByteBuf metadata, LushAdvice advice, String metadataMimeType) {
+        ByteBuf content = Unpooled.wrappedBuffer( LushAdviceCbor.encode(advice) );
+        if( !isComposite(metadataMimeType) ) {
+            // The advice is the whole of the metadata.
+            if( metadata != null ) {
+                metadata.release();
+            }
+            return content;
+        }
+
+        // Entries of composite metadata are just concatenated, those of the response are kept as they are.
+        CompositeByteBuf composite = allocator.compositeBuffer();
+        if( metadata != null ) {
+            composite.addComponent( true, metadata );
+        }
+        CompositeMetadataCodec.encodeAndAddMetadata( composite, allocator, ADVICE_MIME_TYPE, content );
+        return composite;
+    }
+
+    /**
+     * @param metadataMimeType The metadata mime type of a connection.
+     * @return true if the advice can be sent over the connection.
+     */
+    static boolean carriesAdvice(String metadataMimeType) {
+        return isComposite( metadataMimeType ) || ADVICE_MIME_TYPE.equals( metadataMimeType );
+    }
+
+    private static boolean isComposite(String metadataMimeType) {
+        return COMPOSITE_MIME_TYPE.equals( metadataMimeType );
+    }
+
+    private static ByteBuf entry(ByteBuf metadata, String metadataMimeType, String mimeType) {
+        if( mimeType.equals(metadataMimeType) ) {
+            return metadata;
+        }
+        if( !isComposite(metadataMimeType) ) {
+            return null;
+        }
+
+        try {
+            for( CompositeMetadata.Entry entry : new CompositeMetadata(metadata, false) ) {
+                if( mimeType.equals(entry.getMimeType()) ) {
+                    return entry.getContent();
+                }
+            }
+            return null;
+        }
+        catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException e) {
+            throw new LushException( "Malformed composite metadata", e );
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.px3j.lush.endpoint.rsocket;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import com.px3j.lush.endpoint.http.reactive.TraceIdGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.RSocketProxy;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.springframework.cloud.sleuth.Span;
+import org.springframework.cloud.sleuth.Tracer;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The responder of an RSocket connection accepted by LushSocketAcceptorInterceptor.  Each request is given its own
+ * LushRequestState, holding the connection's ticket, and the security context of the ticket, in the Reactor context -
+ * the same as a request received over HTTP - so Lush controller methods (@MessageMapping and @LushControllerMethod)
+ * behave the same over both.
+ * <br/><br/>
+ * The advice is added to the metadata of a response (see LushRSocketMetadata), next to the metadata it already has:
+ * <pre>
+ *  request-response - with the response
+ *  request-stream   - with the last element, each element is held until the next one arrives (or the stream
+ *                     completes) so the last one is known
+ *  request-channel  - as request-stream
+ * </pre>
+ * A response with no element to carry the advice (ie: an empty Mono) pushes it to the requester, as a metadata push,
+ * before it completes.  Data payloads are never added, so requesters decoding each payload (ie: RSocketRequester's
+ * retrieveFlux) are unaffected.
+ *
+ * @author Paul Parrone
+ */
+@Slf4j( topic = "lush.core.debug")
+class LushResponderRSocket extends RSocketProxy {
+    private final RSocket requester;
+    private final LushTicket ticket;
+    private final String encodedTicket;
+    private final Context securityContext;
+    private final String metadataMimeType;
+    private final boolean carriesAdvice;
+    private final TraceIdGenerator traceIds;
+    private final Tracer tracer;
+
+    LushResponderRSocket(
+            RSocket source,
+            RSocket requester,
+            LushTicket ticket,
+            String encodedTicket,
+            SecurityContext securityContext,
+            String metadataMimeType,
+            TraceIdGenerator traceIds,
+            Tracer tracer
+    ) {
+        super(source);
+        this.requester = requester;
+        this.ticket = ticket;
+        this.encodedTicket = encodedTicket;
+        this.securityContext = securityContext != null
+                ? ReactiveSecurityContextHolder.withSecurityContext( Mono.just(securityContext) )
+                : Context.empty();
+        this.metadataMimeType = metadataMimeType;
+        this.carriesAdvice = LushRSocketMetadata.carriesAdvice( metadataMimeType );
+        this.traceIds = traceIds;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Mono<Void> fireAndForget(Payload payload) {
+        return Mono.fromDirect( handle(state -> super.fireAndForget(payload)) );
+    }
+
+    @Override
+    public Mono<Payload> requestResponse(Payload payload) {
+        return Mono.fromDirect( handle(state -> super.requestResponse( payload )
+                .map( response -> withAdvice(response, state) )
+                .switchIfEmpty( Mono.defer(() -> pushAdvice(state)).then(Mono.empty()) )
+        ));
+    }
+
+    @Override
+    public Flux<Payload> requestStream(Payload payload) {
+        return Flux.from( handle(state -> withAdviceOnLast(super.requestStream(payload), state)) );
+    }
+
+    @Override
+    public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+        return Flux.from( handle(state -> withAdviceOnLast(super.requestChannel(payloads), state)) );
+    }
+
+    /**
+     * Subscribes to a request with a new LushRequestState in its context.
+     * <br/><br/>
+     * Sleuth's RSocket instrumentation puts its span for the request in scope when the request is subscribed to and
+     * closes that scope when the response terminates.  A response that terminates while Reactor's instrumentation has
+     * a scope open (ie: it completes synchronously) closes them out of order, which corrupts the scopes of the thread
+     * and trips Brave's correlation scope check.  The span is also in the Reactor context, Reactor's instrumentation
+     * restores it for each signal, so the scope is closed here, while it is still the innermost one, and only reopened
+     * while the request is subscribed to.  Sleuth's later close of the same scope does nothing.
+     */
+    private <T> Publisher<T> handle(Function<LushRequestState, Publisher<T>> request) {
+        return subscriber -> {
+            ContextView ctx = subscriber instanceof CoreSubscriber
+                    ? ((CoreSubscriber<?>) subscriber).currentContext()
+                    : Context.empty();
+            Tracer.SpanInScope requestScope = ctx.getOrDefault( Tracer.SpanInScope.class, null );
+            Span span = ctx.getOrDefault( Span.class, null );
+
+            if( tracer == null || requestScope == null || span == null ) {
+                subscribe( request, subscriber );
+                return;
+            }
+
+            requestScope.close();
+            Tracer.SpanInScope scope = tracer.withSpan( span );
+            try {
+                subscribe( request, subscriber );
+            }
+            finally {
+                scope.close();
+            }
+        };
+    }
+
+    private <T> void subscribe(Function<LushRequestState, Publisher<T>> request, Subscriber<? super T> subscriber) {
+        LushRequestState state = newState();
+        Flux.from( request.apply(state) )
+                .contextWrite( ctx -> withState(ctx, state) )
+                .subscribe( subscriber );
+    }
+
+    /**
+     * Passes the elements on one behind, so the last one can be given the advice.
+     */
+    private Flux<Payload> withAdviceOnLast(Flux<Payload> payloads, LushRequestState state) {
+        if( !carriesAdvice ) {
+            return payloads;
+        }
+
+        AtomicReference<Payload> held = new AtomicReference<>();
+        return payloads
+                .<Payload>handle( (payload, sink) -> {
+                    Payload previous = held.getAndSet( payload );
+                    if( previous != null ) {
+                        sink.next( previous );
+                    }
+                })
+                .onErrorResume( throwable -> {
+                    Payload last = held.getAndSet( null );
+                    return last != null ? Mono.just( last ).concatWith( Mono.error(throwable) ) : Mono.error( throwable );
+                })
+                .concatWith( Mono.defer(() -> {
+                    Payload last = held.getAndSet( null );
+                    return last != null ? Mono.just( withAdvice(last, state) ) : pushAdvice( state ).then( Mono.empty() );
+                }))
+                .doFinally( signal -> {
+                    Payload unsent = held.getAndSet( null );
+                    if( unsent != null ) {
+                        unsent.release();
+                    }
+                });
+    }
+
+    private LushRequestState newState() {
+        Supplier<String> traceId = traceIds.next();
+
+        LushAdvice advice = new LushAdvice( null, 200 );
+        advice.deferTraceId( traceId );
+        LushContext lushContext = new LushContext();
+        lushContext.setAdvice( advice );
+        lushContext.deferTraceId( traceId );
+
+        LushRequestState state = LushRequestState.create();
+        state.setContext( lushContext );
+        state.setTicket( ticket, encodedTicket );
+        return state;
+    }
+
+    private Context withState(Context ctx, LushRequestState state) {
+        return ctx.putAll( securityContext.readOnly() ).put( LushRequestState.KEY, state );
+    }
+
+    /**
+     * Add the advice to the metadata of the response, the data is passed on without a copy.
+     */
+    private Payload withAdvice(Payload response, LushRequestState state) {
+        if( !carriesAdvice ) {
+            return response;
+        }
+
+        ByteBuf data = response.data().retain();
+        ByteBuf metadata = response.hasMetadata() ? response.metadata().retain() : null;
+        response.release();
+        return ByteBufPayload.create( data, adviceMetadata(metadata, state) );
+    }
+
+    private Mono<Void> pushAdvice(LushRequestState state) {
+        if( !carriesAdvice ) {
+            return Mono.empty();
+        }
+
+        return requester.metadataPush( ByteBufPayload.create(Unpooled.EMPTY_BUFFER, adviceMetadata(null, state)) )
+                .onErrorResume( throwable -> {
+                    // The response itself is unaffected, only the advice is lost.
+                    if( log.isDebugEnabled() ) {
+                        log.debug( "Unable to push RSocket advice - " + throwable.getMessage() );
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private ByteBuf adviceMetadata(ByteBuf metadata, LushRequestState state) {
+        return LushRSocketMetadata.withAdvice( ByteBufAllocator.DEFAULT, metadata, state.getAdvice(), metadataMimeType );
+    }
+}
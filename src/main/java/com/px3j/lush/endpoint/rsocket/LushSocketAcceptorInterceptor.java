@@ -0,0 +1,102 @@
+package com.px3j.lush.endpoint.rsocket;
+
+import com.google.gson.JsonSyntaxException;
+import com.px3j.lush.core.exception.LushException;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.core.ticket.TicketUtil;
+import com.px3j.lush.endpoint.http.reactive.TraceIdGenerator;
+import com.px3j.lush.endpoint.http.security.reactive.TicketAuthenticationToken;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.exceptions.RejectedSetupException;
+import io.rsocket.plugins.SocketAcceptorInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sleuth.Tracer;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Authenticates an RSocket connection once, when it is set up, with the Lush ticket in its setup metadata (see
+ * LushRSocketMetadata).  Every request on it is then handled with that ticket (see LushResponderRSocket) - it isn't
+ * sent or decrypted again.
+ * <br/><br/>
+ * A connection with a ticket that can't be decrypted is always rejected.  One without a ticket is rejected unless
+ * <b>lush.rsocket.ticket-required</b> is false (default: true), its requests are then handled without a ticket, just
+ * like requests to a public path over HTTP - methods that require an authenticated caller are denied.
+ *
+ * @author Paul Parrone
+ */
+@Component
+@Slf4j( topic = "lush.core.debug")
+public class LushSocketAcceptorInterceptor implements SocketAcceptorInterceptor {
+    private final TicketUtil ticketUtil;
+    private final TraceIdGenerator traceIds;
+    private final Tracer tracer;
+    private final boolean ticketRequired;
+
+    @Autowired
+    public LushSocketAcceptorInterceptor(
+            TicketUtil ticketUtil,
+            TraceIdGenerator traceIds,
+            ObjectProvider<Tracer> tracer,
+            @Value("${lush.rsocket.ticket-required:true}") boolean ticketRequired
+    ) {
+        this.ticketUtil = ticketUtil;
+        this.traceIds = traceIds;
+        this.tracer = tracer.getIfAvailable();
+        this.ticketRequired = ticketRequired;
+    }
+
+    @Override
+    public SocketAcceptor apply(SocketAcceptor acceptor) {
+        return (setup, sendingSocket) -> {
+            String encodedTicket = LushRSocketMetadata.ticketOf( setup );
+            LushTicket ticket = encodedTicket != null ? decrypt( encodedTicket ) : null;
+            if( ticket == null && (encodedTicket != null || ticketRequired) ) {
+                if( log.isDebugEnabled() ) {
+                    log.debug( "DENY: RSocket setup is missing a valid Lush Ticket: " + LushRSocketMetadata.TICKET_MIME_TYPE );
+                }
+                return Mono.error( new RejectedSetupException("A valid Lush ticket is required") );
+            }
+
+            if( log.isDebugEnabled() ) {
+                log.debug( "ALLOW: RSocket userName: " + (ticket != null ? ticket.getUsername() : "(no ticket)") );
+            }
+
+            SecurityContext securityContext = ticket != null ? securityContextOf( ticket ) : null;
+            return acceptor.accept( setup, sendingSocket )
+                    .map( responder -> new LushResponderRSocket(
+                            responder,
+                            sendingSocket,
+                            ticket,
+                            encodedTicket,
+                            securityContext,
+                            setup.metadataMimeType(),
+                            traceIds,
+                            tracer
+                    ));
+        };
+    }
+
+    private static SecurityContext securityContextOf(LushTicket ticket) {
+        TicketAuthenticationToken authToken = new TicketAuthenticationToken( ticket );
+        authToken.setAuthenticated( true );
+        return new SecurityContextImpl( authToken );
+    }
+
+    private LushTicket decrypt(String encodedTicket) {
+        try {
+            return ticketUtil.decrypt( encodedTicket );
+        }
+        catch (JsonSyntaxException | LushException e) {
+            if( log.isDebugEnabled() ) {
+                log.debug( "DENY: Unable to decode RSocket Lush Ticket - " + e.getMessage() );
+            }
+            return null;
+        }
+    }
+}
@@ -3,9 +3,16 @@ package com.px3j.example;
 import com.google.gson.Gson;
 import com.px3j.example.service.model.Cat;
 import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushAdviceCbor;
+import com.px3j.lush.core.model.LushContext;
 import com.px3j.lush.core.ticket.LushTicket;
 import com.px3j.example.service.LushExampleServiceApp;
 import com.px3j.lush.core.ticket.TicketUtil;
+import com.px3j.lush.endpoint.http.LushRequestState;
+import com.px3j.lush.endpoint.http.reactive.LushBlockingScheduler;
+import com.px3j.lush.endpoint.http.reactive.LushExchangeFilter;
+import com.px3j.lush.endpoint.http.security.reactive.TicketCache;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
@@ -13,22 +20,40 @@ import org.junit.jupiter.api.TestMethodOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.FluxExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import static com.px3j.lush.endpoint.http.Constants.ADVICE_ENCODING_HEADER_NAME;
 import static com.px3j.lush.endpoint.http.Constants.TICKET_HEADER_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Slf4j
 @ActiveProfiles( profiles = {"developer", "clear-ticket"})
@@ -37,10 +62,21 @@ import static com.px3j.lush.endpoint.http.Constants.TICKET_HEADER_NAME;
 public class LushExampleServiceTest {
     private WebTestClient webTestClient;
     private final TicketUtil ticketUtil;
+    private final TicketCache ticketCache;
+    private final MeterRegistry meterRegistry;
+    private final LushExchangeFilter lushExchangeFilter;
 
     @Autowired
-    public LushExampleServiceTest(TicketUtil ticketUtil) {
+    public LushExampleServiceTest(
+            TicketUtil ticketUtil,
+            TicketCache ticketCache,
+            MeterRegistry meterRegistry,
+            LushExchangeFilter lushExchangeFilter
+    ) {
         this.ticketUtil = ticketUtil;
+        this.ticketCache = ticketCache;
+        this.meterRegistry = meterRegistry;
+        this.lushExchangeFilter = lushExchangeFilter;
     }
 
     @Autowired
@@ -72,6 +108,12 @@ public class LushExampleServiceTest {
                         List.of(encodedTicket)
                 ))
                 .exchange()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    assertEquals( 200, advice.getStatusCode() );
+                    assertFalse( advice.getTraceId().isEmpty() );
+                    assertTrue( advice.getExtras().isEmpty() );
+                })
                 .expectBody(String.class)
                 .value( s -> log.info( "Ping results: {}", s ))
                 .returnResult();
@@ -102,6 +144,532 @@ public class LushExampleServiceTest {
         log.info( "END: testPingUser" );
     }
 
+    @Test
+    public void testPingAdmin() {
+        log.info( "START: testPingAdmin" );
+
+        List<SimpleGrantedAuthority> authorities = new ArrayList<>();
+        for( int i=0; i<150; i++ ) {
+            authorities.add( new SimpleGrantedAuthority("authority-" + i) );
+        }
+        authorities.add( new SimpleGrantedAuthority("admin") );
+
+        LushTicket ticket = new LushTicket("paul", "", authorities);
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/pingAdmin" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectBody(String.class)
+                .value( s -> assertTrue(s.contains("hi admin: paul")) );
+
+        log.info( "END: testPingAdmin" );
+    }
+
+    @Test
+    public void testPingAdminDenied() {
+        log.info( "START: testPingAdminDenied" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/pingAdmin" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isForbidden();
+
+        log.info( "END: testPingAdminDenied" );
+    }
+
+    @Test
+    public void testTicketAuthoritiesUnmodifiable() {
+        List<SimpleGrantedAuthority> authorities = new ArrayList<>( List.of(new SimpleGrantedAuthority("user")) );
+        LushTicket ticket = new LushTicket("paul", "", authorities);
+        assertTrue( ticket.hasAuthority("user") );
+
+        // Neither the caller's collection nor the one returned by the ticket can change the ticket's authorities.
+        authorities.add( new SimpleGrantedAuthority("admin") );
+        assertThrows( UnsupportedOperationException.class, () -> ticket.getAuthorities().add(new SimpleGrantedAuthority("admin")) );
+        assertFalse( ticket.hasAuthority("admin") );
+
+        ticket.setAuthorities( authorities );
+        assertTrue( ticket.hasAuthority("admin") );
+    }
+
+    @Test
+    public void testBlockingPing() {
+        log.info( "START: testBlockingPing" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/blockingPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectHeader().value( "x-lush-advice", h -> assertTrue(h.contains("\"blocking\":true")) )
+                .expectBody(Map.class)
+                .value( m -> {
+                    log.info( "blockingPing: {}", m );
+                    assertTrue( m.get("message").toString().contains("hi: paul") );
+                    assertTrue( m.get("thread").toString().startsWith(LushBlockingScheduler.THREAD_NAME_PREFIX) );
+                });
+
+        log.info( "END: testBlockingPing" );
+    }
+
+    @Test
+    public void testLegacyPing() {
+        log.info( "START: testLegacyPing" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        // legacyPing blocks before it returns its Mono, the method itself must be called off the event loop.
+        webTestClient
+                .get()
+                .uri("/lush/example/legacyPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectHeader().value( "x-lush-advice", h -> assertTrue(h.contains("\"blocking\":true")) )
+                .expectBody(Map.class)
+                .value( m -> {
+                    log.info( "legacyPing: {}", m );
+                    assertTrue( m.get("message").toString().contains("hi: paul") );
+                    assertTrue( m.get("thread").toString().startsWith(LushBlockingScheduler.THREAD_NAME_PREFIX) );
+                });
+
+        log.info( "END: testLegacyPing" );
+    }
+
+    @Test
+    public void testSlowPingTimesOut() {
+        log.info( "START: testSlowPingTimesOut" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/slowPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    log.info( "Lush LushAdvice: {}", advice.toString() );
+                    assertEquals( LushAdvice.STATUS_TIMEOUT, advice.getStatusCode() );
+                    assertEquals( true, advice.getExtras().get("lush.isTimeout") );
+                    assertTrue( advice.getExtras().containsKey("remainingMillis") );
+                });
+
+        log.info( "END: testSlowPingTimesOut" );
+    }
+
+    @Test
+    public void testStreamOfCats() {
+        log.info( "START: testStreamOfCats" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        List<String> lines = webTestClient
+                .get()
+                .uri("/lush/example/streamOfCats" )
+                .accept(MediaType.APPLICATION_NDJSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        // Only the three cats, the advice trailer is off by default (see LushHandlerEngineTest).
+        log.info( "Lines: {}", lines );
+        assertEquals( 3, lines.size() );
+        assertEquals( "Gumball", new Gson().fromJson(lines.get(0), Cat.class).getName() );
+        assertFalse( lines.stream().anyMatch(line -> line.contains("x-lush-advice")) );
+
+        log.info( "END: testStreamOfCats" );
+    }
+
+    @Test
+    public void testExportCatsBatched() {
+        log.info( "START: testExportCatsBatched" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        // Streamed, each batch is written as a single buffer.
+        List<String> chunks = webTestClient
+                .get()
+                .uri("/lush/example/exportCats" )
+                .accept(MediaType.APPLICATION_NDJSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(DataBuffer.class)
+                .getResponseBody()
+                .map( buffer -> {
+                    String chunk = buffer.toString( StandardCharsets.UTF_8 );
+                    DataBufferUtils.release( buffer );
+                    return chunk;
+                })
+                .collectList()
+                .block();
+
+        // 10000 cats, 500 to a batch.
+        assertEquals( 20, chunks.size() );
+        chunks.forEach( chunk -> assertEquals(500, chunk.split("\n").length) );
+
+        // The batches are split back into lines.
+        List<String> lines = webTestClient
+                .get()
+                .uri("/lush/example/exportCats" )
+                .accept(MediaType.APPLICATION_NDJSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals( 10000, lines.size() );
+        assertEquals( "Cat 9999", new Gson().fromJson(lines.get(9999), Cat.class).getName() );
+
+        // As server-sent events, which are encoded as several buffers each, every batch holds whole events.
+        List<String> events = webTestClient
+                .get()
+                .uri("/lush/example/exportCats" )
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(DataBuffer.class)
+                .getResponseBody()
+                .map( buffer -> {
+                    String chunk = buffer.toString( StandardCharsets.UTF_8 );
+                    DataBufferUtils.release( buffer );
+                    return chunk;
+                })
+                .collectList()
+                .block();
+
+        assertEquals( 20, events.size() );
+        events.forEach( chunk -> {
+            assertEquals( 500, chunk.split("\n\n").length );
+            assertTrue( chunk.startsWith("data:") && chunk.endsWith("\n\n") );
+        });
+
+        // As a JSON array.
+        webTestClient
+                .get()
+                .uri("/lush/example/exportCats" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Cat.class)
+                .hasSize(10000);
+
+        log.info( "END: testExportCatsBatched" );
+    }
+
+    @Test
+    public void testLargeAdviceMovedToBody() {
+        log.info( "START: testLargeAdviceMovedToBody" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/largeAdvice" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    assertTrue( h.length() < 4096 );
+                    assertEquals( true, advice.getExtras().get("lush.adviceInBody") );
+                })
+                .expectBody(String.class)
+                .value( s -> {
+                    Map<?,?> envelope = new Gson().fromJson( s, Map.class );
+                    LushAdvice advice = new Gson().fromJson( new Gson().toJson(envelope.get("x-lush-advice")), LushAdvice.class );
+                    assertEquals( 10000, advice.getExtras().get("report").toString().length() );
+                    assertEquals( "Powered By Lush", ((Map<?,?>) envelope.get("body")).get("message") );
+                });
+
+        log.info( "END: testLargeAdviceMovedToBody" );
+    }
+
+    @Test
+    public void testCachedCats() throws Exception {
+        log.info( "START: testCachedCats" );
+
+        final String breed = UUID.randomUUID().toString();
+
+        // Concurrent identical requests share a single search, only one of them isn't a cache hit.
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+        List<Future<LushAdvice>> advices = new ArrayList<>();
+        for( int i=0; i<numThreads; i++ ) {
+            advices.add( executor.submit( () -> cachedCats("paul", breed) ) );
+        }
+
+        Object search = null;
+        int hits = 0;
+        for( Future<LushAdvice> future : advices ) {
+            LushAdvice advice = future.get(10, TimeUnit.SECONDS);
+            if( search == null ) {
+                search = advice.getExtras().get("search");
+            }
+            assertEquals( search, advice.getExtras().get("search") );
+            if( Boolean.TRUE.equals(advice.getExtras().get("lush.cacheHit")) ) {
+                hits++;
+            }
+        }
+        executor.shutdown();
+        assertEquals( numThreads - 1, hits );
+
+        // Later requests are served from the cache, the key includes the user.
+        assertEquals( search, cachedCats("paul", breed).getExtras().get("search") );
+        LushAdvice otherUser = cachedCats("mary", breed);
+        assertFalse( otherUser.getExtras().containsKey("lush.cacheHit") );
+        assertFalse( search.equals(otherUser.getExtras().get("search")) );
+
+        log.info( "END: testCachedCats" );
+    }
+
+    private LushAdvice cachedCats(String username, String breed) {
+        final String encodedTicket = ticketUtil.encrypt( new LushTicket(username, "", List.of(new SimpleGrantedAuthority("user"))) );
+
+        FluxExchangeResult<Cat> result = webTestClient
+                .get()
+                .uri( uriBuilder -> uriBuilder.path("/lush/example/cachedCats").queryParam("breed", breed).build() )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Cat.class);
+
+        List<Cat> cats = result.getResponseBody().collectList().block();
+        assertEquals( 2, cats.size() );
+        assertEquals( breed, cats.get(0).getBreed() );
+
+        return new Gson().fromJson( result.getResponseHeaders().getFirst("x-lush-advice"), LushAdvice.class );
+    }
+
+    @Test
+    public void testAdoptCatKeyedOnBody() {
+        log.info( "START: testAdoptCatKeyedOnBody" );
+
+        final String name = UUID.randomUUID().toString();
+
+        // The request body is part of the key, another cat posted to the same path isn't served the first one's result.
+        Map<?,?> first = adoptCat( name, false );
+        Map<?,?> other = adoptCat( "other " + name, false );
+        assertEquals( name, first.get("adopted") );
+        assertEquals( "other " + name, other.get("adopted") );
+        assertFalse( first.get("adoption").equals(other.get("adoption")) );
+
+        // The same cat again is served from the cache, the method isn't called.
+        assertEquals( first, adoptCat(name, true) );
+
+        log.info( "END: testAdoptCatKeyedOnBody" );
+    }
+
+    private Map<?,?> adoptCat(String name, boolean cacheHit) {
+        final String encodedTicket = ticketUtil.encrypt( new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user"))) );
+
+        Map<?,?>[] body = new Map<?,?>[1];
+        webTestClient
+                .post()
+                .uri("/lush/example/adoptCat" )
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .bodyValue( new Cat(name, "Tonkinese") )
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> assertEquals(cacheHit, h.contains("\"lush.cacheHit\":true")) )
+                .expectBody(Map.class)
+                .value( m -> body[0] = m );
+        return body[0];
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        log.info( "START: testConcurrencyLimit" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        // slowPing holds each call until its timeout, more concurrent calls than the initial limit must be rejected.
+        // The calls are held at a latch until every thread is ready, so they are all sent at once.
+        int numThreads = 30;
+        CountDownLatch ready = new CountDownLatch( numThreads );
+        CountDownLatch go = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+        List<Future<Integer>> statusCodes = new ArrayList<>();
+        for( int i=0; i<numThreads; i++ ) {
+            statusCodes.add( executor.submit( () -> {
+                ready.countDown();
+                go.await();
+
+                String adviceJson = webTestClient
+                        .get()
+                        .uri("/lush/example/slowPing" )
+                        .accept(MediaType.APPLICATION_JSON)
+                        .headers( httpHeaders -> httpHeaders.put(
+                                TICKET_HEADER_NAME,
+                                List.of(encodedTicket)
+                        ))
+                        .exchange()
+                        .returnResult(String.class)
+                        .getResponseHeaders()
+                        .getFirst("x-lush-advice");
+
+                return new Gson().fromJson( adviceJson, LushAdvice.class ).getStatusCode();
+            }));
+        }
+
+        assertTrue( ready.await(10, TimeUnit.SECONDS) );
+        go.countDown();
+
+        int rejected = 0;
+        for( Future<Integer> statusCode : statusCodes ) {
+            if( statusCode.get(10, TimeUnit.SECONDS) == LushAdvice.STATUS_OVERLOADED ) {
+                rejected++;
+            }
+        }
+        executor.shutdown();
+
+        log.info( "rejected: {} of {}", rejected, numThreads );
+        assertTrue( rejected > 0 );
+        assertTrue( meterRegistry.get("lush.limiter.rejected").tag("method", "ExampleController.slowPing(LushContext)").functionCounter().count() > 0 );
+
+        log.info( "END: testConcurrencyLimit" );
+    }
+
+    @Test
+    public void testTicketCache() {
+        log.info( "START: testTicketCache" );
+
+        LushTicket ticket = new LushTicket("cached", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+        final long hitsBefore = ticketCache.stats().hitCount();
+
+        for( int i=0; i<2; i++ ) {
+            webTestClient
+                    .get()
+                    .uri("/lush/example/pingUser" )
+                    .accept(MediaType.APPLICATION_JSON)
+                    .headers( httpHeaders -> httpHeaders.put(
+                            TICKET_HEADER_NAME,
+                            List.of(encodedTicket)
+                    ))
+                    .exchange()
+                    .expectBody(String.class)
+                    .value( s -> assertTrue(s.contains("cached")) );
+        }
+
+        assertTrue( ticketCache.stats().hitCount() > hitsBefore );
+        log.info( "END: testTicketCache" );
+    }
+
+    @Test
+    public void testTicketCopiedPerRequest() {
+        log.info( "START: testTicketCopiedPerRequest" );
+
+        LushTicket ticket = new LushTicket("visitor", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+        final long hitsBefore = ticketCache.stats().hitCount();
+
+        // Each request changes its ticket, the next request with the same (cached) ticket must not see it.
+        for( int i=0; i<2; i++ ) {
+            webTestClient
+                    .get()
+                    .uri("/lush/example/visit" )
+                    .accept(MediaType.APPLICATION_JSON)
+                    .headers( httpHeaders -> httpHeaders.put(
+                            TICKET_HEADER_NAME,
+                            List.of(encodedTicket)
+                    ))
+                    .exchange()
+                    .expectBody(Map.class)
+                    .value( m -> assertEquals(1, ((Number) m.get("visits")).intValue()) );
+        }
+
+        webTestClient
+                .get()
+                .uri("/lush/example/pingUser" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectBody(String.class)
+                .value( s -> assertTrue(s.contains("hi: visitor")) );
+
+        assertTrue( ticketCache.stats().hitCount() > hitsBefore );
+        log.info( "END: testTicketCopiedPerRequest" );
+    }
+
     @Test
     public void testFluxOfCats() {
         log.info( "START: testFluxOfCats" );
@@ -132,6 +700,171 @@ public class LushExampleServiceTest {
         testFluxOfCatsWithAdviceImpl("tester");
     }
 
+    @Test
+    public void testNonAsciiAdvice() {
+        log.info( "START: testNonAsciiAdvice" );
+
+        final String username = "caf\u00e9 \u65e5\u672c \"quoted\"";
+        LushTicket ticket = new LushTicket(username, "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/fluxOfCatsWithAdvice")
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put(
+                        TICKET_HEADER_NAME,
+                        List.of(encodedTicket)
+                ))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    // Escaped to printable ASCII, and still the same advice once parsed.
+                    assertTrue( h.chars().allMatch(c -> c >= 0x20 && c <= 0x7E) );
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    assertEquals( "hello: " + username, advice.getExtras().get("helloMessage") );
+                    assertEquals( false, advice.getExtras().get("hasMoreData") );
+                    assertEquals( 600, advice.getWarnings().iterator().next().getCode() );
+                })
+                .expectBodyList(Cat.class)
+                .hasSize(3);
+
+        log.info( "END: testNonAsciiAdvice" );
+    }
+
+    @Test
+    public void testCborAdvice() {
+        log.info( "START: testCborAdvice" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/fluxOfCatsWithAdvice")
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(httpHeaders -> {
+                    httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket) );
+                    httpHeaders.put( ADVICE_ENCODING_HEADER_NAME, List.of("cbor") );
+                })
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals( ADVICE_ENCODING_HEADER_NAME, "cbor" )
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = LushAdviceCbor.decodeFromString( h );
+                    assertEquals( 0, advice.getStatusCode() );
+                    assertFalse( advice.getTraceId().isEmpty() );
+                    assertEquals( "hello: paul", advice.getExtras().get("helloMessage") );
+                    assertEquals( false, advice.getExtras().get("hasMoreData") );
+                    LushAdvice.LushWarning warning = advice.getWarnings().iterator().next();
+                    assertEquals( 600, warning.getCode() );
+                    assertEquals( true, warning.getDetail().get("delayedData") );
+                })
+                .expectBodyList(Cat.class);
+
+        log.info( "END: testCborAdvice" );
+    }
+
+    @Test
+    public void testNoAdvice() {
+        log.info( "START: testNoAdvice" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        webTestClient
+                .get()
+                .uri("/lush/example/ping" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(httpHeaders -> {
+                    httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket) );
+                    httpHeaders.put( ADVICE_ENCODING_HEADER_NAME, List.of("none") );
+                })
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist( "x-lush-advice" )
+                .expectBody(String.class)
+                .value( s -> log.info( "Ping results: {}", s ));
+
+        log.info( "END: testNoAdvice" );
+    }
+
+    @Test
+    public void testLushExchangeFilter() {
+        log.info( "START: testLushExchangeFilter" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+
+        // The state of an incoming request, as EndpointFilter and LushSecurityContextRepository leave it.
+        LushContext lushContext = new LushContext();
+        lushContext.setAdvice( new LushAdvice("caller", 200) );
+        LushRequestState state = LushRequestState.of( MockServerWebExchange.from(MockServerHttpRequest.get("/lush/example/relay")) );
+        state.setContext( lushContext );
+        state.setTicket( ticket, encodedTicket );
+
+        LushAdvice downstreamAdvice = new LushAdvice("downstream", 0);
+        downstreamAdvice.putExtra( "fromDownstream", true );
+        downstreamAdvice.putExtra( "lush.cacheHit", true );
+        downstreamAdvice.addWarning( new LushAdvice.LushWarning(600) );
+
+        List<ClientRequest> sent = new ArrayList<>();
+        WebClient webClient = WebClient.builder()
+                .filter( lushExchangeFilter )
+                .exchangeFunction( request -> {
+                    sent.add( request );
+                    return Mono.just( ClientResponse.create(HttpStatus.OK)
+                            .header( ADVICE_ENCODING_HEADER_NAME, "cbor" )
+                            .header( "x-lush-advice", LushAdviceCbor.encodeToString(downstreamAdvice) )
+                            .body( "pong" )
+                            .build() );
+                })
+                .build();
+
+        String body = webClient
+                .get()
+                .uri("http://downstream/lush/example/ping")
+                .retrieve()
+                .bodyToMono(String.class)
+                .contextWrite( ctx -> ctx.put(LushRequestState.KEY, state) )
+                .block();
+
+        assertEquals( "pong", body );
+        assertEquals( encodedTicket, sent.get(0).headers().getFirst(TICKET_HEADER_NAME) );
+        assertEquals( "cbor", sent.get(0).headers().getFirst(ADVICE_ENCODING_HEADER_NAME) );
+
+        LushAdvice advice = lushContext.getAdvice();
+        assertEquals( 200, advice.getStatusCode() );
+        assertEquals( "caller", advice.getTraceId() );
+        assertEquals( true, advice.getExtras().get("fromDownstream") );
+        assertEquals( 600, advice.getWarnings().iterator().next().getCode() );
+        assertFalse( advice.getExtras().containsKey("lush.cacheHit") );
+
+        // Advice that can't be decoded is ignored, the response is still passed on.
+        WebClient malformed = WebClient.builder()
+                .filter( lushExchangeFilter )
+                .exchangeFunction( request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header( ADVICE_ENCODING_HEADER_NAME, "cbor" )
+                        .header( "x-lush-advice", "oQ" )
+                        .body( "pong" )
+                        .build()) )
+                .build();
+
+        String malformedBody = malformed
+                .get()
+                .uri("http://downstream/lush/example/ping")
+                .retrieve()
+                .bodyToMono(String.class)
+                .contextWrite( ctx -> ctx.put(LushRequestState.KEY, state) )
+                .block();
+
+        assertEquals( "pong", malformedBody );
+        assertEquals( 1, advice.getWarnings().size() );
+        assertEquals( 1, advice.getExtras().size() );
+
+        log.info( "END: testLushExchangeFilter" );
+    }
+
     @Test
     public void testUnexpectedException() {
         log.info( "START: testUnexpectedException" );
@@ -160,6 +893,32 @@ public class LushExampleServiceTest {
         log.info( "END: testUnexpectedException" );
     }
 
+    @Test
+    public void testUnexpectedExceptionReportedOnce() {
+        log.info( "START: testUnexpectedExceptionReportedOnce" );
+
+        LushTicket ticket = new LushTicket("paul", "", List.of(new SimpleGrantedAuthority("user")));
+        final String encodedTicket = ticketUtil.encrypt(ticket);
+        final double suppressedBefore = meterRegistry.get("lush.exceptions.suppressed").functionCounter().count();
+
+        for( int i=0; i<2; i++ ) {
+            webTestClient
+                    .get()
+                    .uri("/lush/example/uae")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .headers(httpHeaders -> httpHeaders.put(
+                            TICKET_HEADER_NAME,
+                            List.of(encodedTicket)
+                    ))
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+
+        // The second (at least) is a repeat within the window, it is counted but its stack trace isn't logged.
+        assertTrue( meterRegistry.get("lush.exceptions.suppressed").functionCounter().count() > suppressedBefore );
+        log.info( "END: testUnexpectedExceptionReportedOnce" );
+    }
+
     @Test
     public void testUnexpectedExceptionNoLush() {
         log.info( "START: testUnexpectedExceptionNoLush" );
@@ -0,0 +1,26 @@
+package com.px3j.example;
+
+import com.px3j.example.service.LushExampleServiceApp;
+import com.px3j.lush.core.ticket.TicketUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs the tests of LushHandlerEngineTest with lush.advice.pool.enabled left at its default (false), each request is
+ * given a new LushContext.
+ */
+@ActiveProfiles( profiles = {"developer", "clear-ticket"})
+@SpringBootTest( classes={LushExampleServiceApp.class}, properties = {
+        "lush.decoration.engine=handler",
+        "lush.trace-id.mode=local",
+        "lush.trace-id.node=handler-test",
+        "lush.streaming.advice-trailer=true"
+})
+public class LushHandlerEngineNoPoolTest extends LushHandlerEngineTest {
+    @Autowired
+    public LushHandlerEngineNoPoolTest(TicketUtil ticketUtil, ApplicationContext context) {
+        super( ticketUtil, context );
+    }
+}
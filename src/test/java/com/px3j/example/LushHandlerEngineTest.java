@@ -0,0 +1,306 @@
+package com.px3j.example;
+
+import com.google.gson.Gson;
+import com.px3j.example.service.LushExampleServiceApp;
+import com.px3j.example.service.model.Cat;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.core.ticket.TicketUtil;
+import com.px3j.lush.endpoint.http.reactive.ControllerDecorator;
+import com.px3j.lush.endpoint.http.reactive.LushBlockingScheduler;
+import com.px3j.lush.endpoint.http.reactive.LushResultHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.px3j.lush.endpoint.http.Constants.TICKET_HEADER_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the example service endpoints with lush.decoration.engine set to handler, advice, error and ticket handling
+ * must be the same as with the default AOP engine.  LushContexts are recycled (lush.advice.pool.enabled, see
+ * LushHandlerEngineNoPoolTest for the default) and trace ids are generated locally (lush.trace-id.mode).
+ */
+@Slf4j
+@ActiveProfiles( profiles = {"developer", "clear-ticket"})
+@SpringBootTest( classes={LushExampleServiceApp.class}, properties = {
+        "lush.decoration.engine=handler",
+        "lush.advice.pool.enabled=true",
+        "lush.trace-id.mode=local",
+        "lush.trace-id.node=handler-test",
+        "lush.streaming.advice-trailer=true"
+})
+public class LushHandlerEngineTest {
+    private WebTestClient webTestClient;
+    private final TicketUtil ticketUtil;
+    private final ApplicationContext context;
+
+    @Autowired
+    public LushHandlerEngineTest(TicketUtil ticketUtil, ApplicationContext context) {
+        this.ticketUtil = ticketUtil;
+        this.context = context;
+    }
+
+    @Autowired
+    public void setUp(ApplicationContext context) {
+        webTestClient = WebTestClient
+                .bindToApplicationContext(context)
+                .configureClient()
+                .build();
+    }
+
+    @Test
+    public void testHandlerEngineActive() {
+        assertEquals( 1, context.getBeansOfType(LushResultHandler.class).size() );
+        assertEquals( 0, context.getBeanNamesForType(ControllerDecorator.class).length );
+    }
+
+    @Test
+    public void testPingUser() {
+        webTestClient
+                .get()
+                .uri("/lush/example/pingUser" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectBody(String.class)
+                .value( s -> assertTrue(s.contains("hi: paul")) );
+    }
+
+    @Test
+    public void testBlockingPing() {
+        webTestClient
+                .get()
+                .uri("/lush/example/blockingPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectHeader().value( "x-lush-advice", h -> assertTrue(h.contains("\"blocking\":true")) )
+                .expectBody(Map.class)
+                .value( m -> assertTrue(m.get("thread").toString().startsWith(LushBlockingScheduler.THREAD_NAME_PREFIX)) );
+    }
+
+    @Test
+    public void testLegacyPing() {
+        // legacyPing blocks before it returns its Mono, the method itself must be called off the event loop.
+        webTestClient
+                .get()
+                .uri("/lush/example/legacyPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectHeader().value( "x-lush-advice", h -> assertTrue(h.contains("\"blocking\":true")) )
+                .expectBody(Map.class)
+                .value( m -> {
+                    assertTrue( m.get("message").toString().contains("hi: paul") );
+                    assertTrue( m.get("thread").toString().startsWith(LushBlockingScheduler.THREAD_NAME_PREFIX) );
+                });
+    }
+
+    @Test
+    public void testNoTicketNotCalled() {
+        // legacyPing is on a public path, without a ticket the request gets through security but the method isn't called.
+        webTestClient
+                .get()
+                .uri("/lush/example/legacyPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    assertEquals( 200, advice.getStatusCode() );
+                    assertFalse( advice.getExtras().containsKey("blocking") );
+                })
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    public void testSlowPingTimesOut() {
+        webTestClient
+                .get()
+                .uri("/lush/example/slowPing" )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    assertEquals( LushAdvice.STATUS_TIMEOUT, advice.getStatusCode() );
+                    assertTrue( advice.getExtras().containsKey("remainingMillis") );
+                });
+    }
+
+    @Test
+    public void testFluxOfCatsWithAdvice() {
+        webTestClient
+                .get()
+                .uri("/lush/example/fluxOfCatsWithAdvice")
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("tester")) ))
+                .exchange()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    assertEquals( 0, advice.getStatusCode() );
+                    assertEquals( "hello: tester", advice.getExtras().get("helloMessage") );
+                })
+                .expectBodyList(Cat.class)
+                .hasSize(3);
+    }
+
+    @Test
+    public void testStreamOfCatsAdviceTrailer() {
+        List<String> events = webTestClient
+                .get()
+                .uri("/lush/example/streamOfCats")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals( 4, events.size() );
+        LushAdvice advice = new Gson().fromJson( events.get(3), LushAdvice.class );
+        assertEquals( 3.0, advice.getExtras().get("catsStreamed") );
+
+        List<String> lines = webTestClient
+                .get()
+                .uri("/lush/example/streamOfCats")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals( 4, lines.size() );
+        Map<?,?> trailer = new Gson().fromJson( lines.get(3), Map.class );
+        LushAdvice trailerAdvice = new Gson().fromJson( new Gson().toJson(trailer.get("x-lush-advice")), LushAdvice.class );
+        assertEquals( 3.0, trailerAdvice.getExtras().get("catsStreamed") );
+    }
+
+    @Test
+    public void testCachedCats() {
+        final String breed = UUID.randomUUID().toString();
+
+        LushAdvice first = cachedCats( breed );
+        assertFalse( first.getExtras().containsKey("lush.cacheHit") );
+
+        LushAdvice second = cachedCats( breed );
+        assertEquals( true, second.getExtras().get("lush.cacheHit") );
+        assertEquals( first.getExtras().get("search"), second.getExtras().get("search") );
+    }
+
+    @Test
+    public void testAdoptCatKeyedOnBody() {
+        final String name = UUID.randomUUID().toString();
+
+        // The request body is part of the key, another cat posted to the same path isn't served the first one's result.
+        Map<?,?> first = adoptCat( name, false );
+        Map<?,?> other = adoptCat( "other " + name, false );
+        assertEquals( name, first.get("adopted") );
+        assertEquals( "other " + name, other.get("adopted") );
+        assertFalse( first.get("adoption").equals(other.get("adoption")) );
+
+        // The same cat again is served from the cache, the method isn't called.
+        assertEquals( first, adoptCat(name, true) );
+    }
+
+    @Test
+    public void testUnexpectedException() {
+        webTestClient
+                .get()
+                .uri("/lush/example/uae")
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> {
+                    LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                    log.info( "Lush LushAdvice: {}", advice.toString() );
+                    assertEquals( -99, advice.getStatusCode() );
+                    assertEquals( true, advice.getExtras().get("lush.isUnexpectedException") );
+                });
+    }
+
+    @Test
+    public void testRecycledContext() {
+        for( int i=0; i<3; i++ ) {
+            testFluxOfCatsWithAdvice();
+
+            // The advice of the previous request must not leak into this one.
+            webTestClient
+                    .get()
+                    .uri("/lush/example/ping" )
+                    .accept(MediaType.APPLICATION_JSON)
+                    .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                    .exchange()
+                    .expectHeader().value( "x-lush-advice", h -> {
+                        LushAdvice advice = new Gson().fromJson( h, LushAdvice.class );
+                        assertEquals( 200, advice.getStatusCode() );
+                        assertTrue( advice.getTraceId().startsWith("handler-test-") );
+                        assertTrue( advice.getExtras().isEmpty() );
+                        assertTrue( advice.getWarnings().isEmpty() );
+                    });
+        }
+
+        if( context.getEnvironment().getProperty("lush.advice.pool.enabled", Boolean.class, false) ) {
+            assertTrue( context.getBean(MeterRegistry.class).get("lush.context-pool.reused").functionCounter().count() > 0 );
+        }
+        else {
+            assertTrue( context.getBean(MeterRegistry.class).find("lush.context-pool.reused").functionCounters().isEmpty() );
+        }
+    }
+
+    private LushAdvice cachedCats(String breed) {
+        LushAdvice[] advice = new LushAdvice[1];
+        webTestClient
+                .get()
+                .uri( uriBuilder -> uriBuilder.path("/lush/example/cachedCats").queryParam("breed", breed).build() )
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .exchange()
+                .expectHeader().value( "x-lush-advice", h -> advice[0] = new Gson().fromJson( h, LushAdvice.class ) )
+                .expectBodyList(Cat.class)
+                .hasSize(2);
+        return advice[0];
+    }
+
+    private Map<?,?> adoptCat(String name, boolean cacheHit) {
+        Map<?,?>[] body = new Map<?,?>[1];
+        webTestClient
+                .post()
+                .uri("/lush/example/adoptCat" )
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .headers( httpHeaders -> httpHeaders.put( TICKET_HEADER_NAME, List.of(encodedTicket("paul")) ))
+                .bodyValue( new Cat(name, "Tonkinese") )
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value( "x-lush-advice", h -> assertEquals(cacheHit, h.contains("\"lush.cacheHit\":true")) )
+                .expectBody(Map.class)
+                .value( m -> body[0] = m );
+        return body[0];
+    }
+
+    private String encodedTicket(String username) {
+        return ticketUtil.encrypt( new LushTicket(username, "", List.of(new SimpleGrantedAuthority("user"))) );
+    }
+}
@@ -0,0 +1,44 @@
+package com.px3j.example;
+
+import com.px3j.example.service.LushExampleServiceApp;
+import io.rsocket.exceptions.ApplicationErrorException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Runs the example RSocket endpoints with lush.rsocket.ticket-required=false, connections without a ticket are accepted.
+ */
+@ActiveProfiles( profiles = {"developer", "clear-ticket"})
+@SpringBootTest(
+        classes={LushExampleServiceApp.class},
+        properties = {"spring.rsocket.server.port=0", "lush.rsocket.ticket-required=false"}
+)
+public class LushRSocketOptionalTicketTest {
+    @Autowired
+    private RSocketRequester.Builder requesterBuilder;
+
+    @Value("${local.rsocket.server.port}")
+    private int port;
+
+    @Test
+    public void testSetupWithoutTicket() {
+        RSocketRequester requester = requesterBuilder.tcp( "localhost", port );
+        try {
+            // The connection is accepted, the method requires an authenticated caller so the request is denied.
+            StepVerifier.create( requester.route("lush.example.pingUser").retrieveMono(Map.class) )
+                    .expectError( ApplicationErrorException.class )
+                    .verify( Duration.ofSeconds(5) );
+        }
+        finally {
+            requester.dispose();
+        }
+    }
+}
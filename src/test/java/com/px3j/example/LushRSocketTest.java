@@ -0,0 +1,216 @@
+package com.px3j.example;
+
+import com.google.gson.Gson;
+import com.px3j.example.service.LushExampleServiceApp;
+import com.px3j.example.service.model.Cat;
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.ticket.LushTicket;
+import com.px3j.lush.core.ticket.TicketUtil;
+import com.px3j.lush.endpoint.rsocket.LushRSocketMetadata;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.exceptions.RejectedSetupException;
+import io.rsocket.metadata.CompositeMetadataCodec;
+import io.rsocket.metadata.TaggingMetadataCodec;
+import io.rsocket.metadata.WellKnownMimeType;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.DefaultPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Runs the example RSocket endpoints over local TCP with a plain RSocket client, the ticket is sent in the setup
+ * metadata and the advice read from the response metadata (or the metadata pushed to the client), and with Spring's
+ * RSocketRequester.
+ */
+@Slf4j
+@ActiveProfiles( profiles = {"developer", "clear-ticket"})
+@SpringBootTest( classes={LushExampleServiceApp.class}, properties = "spring.rsocket.server.port=0")
+public class LushRSocketTest {
+    private static final String COMPOSITE = WellKnownMimeType.MESSAGE_RSOCKET_COMPOSITE_METADATA.getString();
+
+    private final TicketUtil ticketUtil;
+    private final RSocketRequester.Builder requesterBuilder;
+    private final int port;
+
+    @Autowired
+    public LushRSocketTest(
+            TicketUtil ticketUtil,
+            RSocketRequester.Builder requesterBuilder,
+            @Value("${local.rsocket.server.port}") int port
+    ) {
+        this.ticketUtil = ticketUtil;
+        this.requesterBuilder = requesterBuilder;
+        this.port = port;
+    }
+
+    @Test
+    public void testRequestResponse() {
+        RSocket rsocket = connect( encodedTicket("paul") );
+        try {
+            Payload response = rsocket.requestResponse( route("lush.example.pingUser") ).block( Duration.ofSeconds(5) );
+
+            Map<?,?> body = new Gson().fromJson( response.getDataUtf8(), Map.class );
+            assertEquals( "hi: paul", body.get("message") );
+
+            LushAdvice advice = LushRSocketMetadata.adviceOf( response );
+            assertEquals( 200, advice.getStatusCode() );
+            assertFalse( advice.getTraceId().isEmpty() );
+            assertEquals( "rsocket", advice.getExtras().get("transport") );
+            response.release();
+        }
+        finally {
+            rsocket.dispose();
+        }
+    }
+
+    @Test
+    public void testRequestStreamWithBackpressure() {
+        RSocket rsocket = connect( encodedTicket("paul") );
+        try {
+            // Ask for the cats a few at a time, the advice comes with the last one.
+            List<Payload> payloads = rsocket.requestStream( route("lush.example.streamOfCats") )
+                    .limitRate( 8 )
+                    .collectList()
+                    .block( Duration.ofSeconds(5) );
+
+            assertEquals( 100, payloads.size() );
+            assertEquals( "Cat 98", new Gson().fromJson(payloads.get(98).getDataUtf8(), Map.class).get("name") );
+            assertNull( LushRSocketMetadata.adviceOf(payloads.get(98)) );
+
+            Payload last = payloads.get( 99 );
+            assertEquals( "Cat 99", new Gson().fromJson(last.getDataUtf8(), Map.class).get("name") );
+            assertEquals( 100L, LushRSocketMetadata.adviceOf(last).getExtras().get("catsStreamed") );
+            payloads.forEach( Payload::release );
+        }
+        finally {
+            rsocket.dispose();
+        }
+    }
+
+    @Test
+    public void testUnexpectedException() {
+        // The Mono is empty, the advice is pushed to the requester before it completes.
+        List<LushAdvice> pushed = new CopyOnWriteArrayList<>();
+        RSocket rsocket = connect( encodedTicket("paul"), pushed );
+        try {
+            Payload response = rsocket.requestResponse( route("lush.example.uae") ).block( Duration.ofSeconds(5) );
+            assertNull( response );
+
+            assertEquals( 1, pushed.size() );
+            LushAdvice advice = pushed.get( 0 );
+            assertEquals( LushAdvice.STATUS_UNEXPECTED_EXCEPTION, advice.getStatusCode() );
+            assertEquals( true, advice.getExtras().get("lush.isUnexpectedException") );
+        }
+        finally {
+            rsocket.dispose();
+        }
+    }
+
+    @Test
+    public void testRSocketRequester() {
+        // Spring's requester decodes every payload it receives, the advice mustn't add any.
+        RSocketRequester requester = requesterBuilder
+                .setupMetadata( encodedTicket("paul"), LushRSocketMetadata.TICKET )
+                .tcp( "localhost", port );
+        try {
+            List<Cat> cats = requester.route( "lush.example.streamOfCats" )
+                    .retrieveFlux( Cat.class )
+                    .limitRate( 8 )
+                    .collectList()
+                    .block( Duration.ofSeconds(5) );
+            assertEquals( 100, cats.size() );
+            assertEquals( "Cat 99", cats.get(99).getName() );
+
+            Map<?,?> body = requester.route( "lush.example.pingUser" ).retrieveMono( Map.class ).block( Duration.ofSeconds(5) );
+            assertEquals( "hi: paul", body.get("message") );
+
+            StepVerifier.create( requester.route("lush.example.uae").retrieveMono(Map.class) )
+                    .verifyComplete();
+        }
+        finally {
+            requester.dispose();
+        }
+    }
+
+    @Test
+    public void testSetupWithoutTicketRejected() {
+        RSocket rsocket = connect( null );
+        try {
+            StepVerifier.create( rsocket.requestResponse(route("lush.example.pingUser")) )
+                    .expectError( RejectedSetupException.class )
+                    .verify( Duration.ofSeconds(5) );
+        }
+        finally {
+            rsocket.dispose();
+        }
+    }
+
+    private RSocket connect(String encodedTicket) {
+        return connect( encodedTicket, new CopyOnWriteArrayList<>() );
+    }
+
+    private RSocket connect(String encodedTicket, List<LushAdvice> pushed) {
+        RSocketConnector connector = RSocketConnector.create()
+                .metadataMimeType( COMPOSITE )
+                .dataMimeType( "application/json" )
+                .acceptor( SocketAcceptor.with(new RSocket() {
+                    @Override
+                    public Mono<Void> metadataPush(Payload payload) {
+                        pushed.add( LushRSocketMetadata.adviceOf(payload) );
+                        payload.release();
+                        return Mono.empty();
+                    }
+                }));
+
+        if( encodedTicket != null ) {
+            CompositeByteBuf metadata = ByteBufAllocator.DEFAULT.compositeBuffer();
+            CompositeMetadataCodec.encodeAndAddMetadata(
+                    metadata,
+                    ByteBufAllocator.DEFAULT,
+                    LushRSocketMetadata.TICKET_MIME_TYPE,
+                    Unpooled.copiedBuffer(encodedTicket, StandardCharsets.UTF_8)
+            );
+            connector.setupPayload( ByteBufPayload.create(Unpooled.EMPTY_BUFFER, metadata) );
+        }
+
+        return connector.connect( TcpClientTransport.create("localhost", port) ).block( Duration.ofSeconds(5) );
+    }
+
+    private static Payload route(String route) {
+        ByteBuf routing = TaggingMetadataCodec.createRoutingMetadata( ByteBufAllocator.DEFAULT, List.of(route) ).getContent();
+
+        CompositeByteBuf metadata = ByteBufAllocator.DEFAULT.compositeBuffer();
+        CompositeMetadataCodec.encodeAndAddMetadata( metadata, ByteBufAllocator.DEFAULT, WellKnownMimeType.MESSAGE_RSOCKET_ROUTING, routing );
+        return DefaultPayload.create( Unpooled.EMPTY_BUFFER, metadata );
+    }
+
+    private String encodedTicket(String username) {
+        return ticketUtil.encrypt( new LushTicket(username, "", List.of(new SimpleGrantedAuthority("user"))) );
+    }
+}
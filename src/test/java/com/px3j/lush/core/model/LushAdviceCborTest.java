@@ -0,0 +1,143 @@
+package com.px3j.lush.core.model;
+
+import com.px3j.lush.core.exception.LushException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LushAdviceCborTest {
+    @Test
+    public void testRoundTrip() {
+        LushAdvice advice = new LushAdvice( "trace", 200 );
+        advice.putExtra( "name", "caf\u00e9 \u65e5\u672c" );
+        advice.putExtra( "count", 3 );
+        advice.putExtra( "ratio", 0.5 );
+        advice.putExtra( "list", List.of(1, "two", false) );
+        advice.addWarning( new LushAdvice.LushWarning(600, Map.of("reason", "slow")) );
+
+        LushAdvice decoded = LushAdviceCbor.decodeFromString( LushAdviceCbor.encodeToString(advice) );
+
+        assertEquals( "trace", decoded.getTraceId() );
+        assertEquals( 200, decoded.getStatusCode() );
+        assertEquals( "caf\u00e9 \u65e5\u672c", decoded.getExtras().get("name") );
+        assertEquals( 3L, decoded.getExtras().get("count") );
+        assertEquals( 0.5, decoded.getExtras().get("ratio") );
+        assertEquals( List.of(1L, "two", false), decoded.getExtras().get("list") );
+        assertEquals( 600, decoded.getWarnings().iterator().next().getCode() );
+        assertEquals( "slow", decoded.getWarnings().iterator().next().getDetail().get("reason") );
+    }
+
+    @Test
+    public void testTruncated() {
+        LushAdvice advice = new LushAdvice( "trace", 200 );
+        advice.putExtra( "name", "value" );
+        advice.addWarning( new LushAdvice.LushWarning(600) );
+        byte[] encoded = LushAdviceCbor.encode( advice );
+
+        for( int length=0; length<encoded.length; length++ ) {
+            byte[] truncated = Arrays.copyOf( encoded, length );
+            assertThrows( LushException.class, () -> LushAdviceCbor.decode(truncated), "length " + length );
+        }
+    }
+
+    @Test
+    public void testLengthPastTheEnd() {
+        // Text, array and map lengths of 2^32 - 1 with nothing after them.
+        assertMalformed( 0x7A, 0xFF, 0xFF, 0xFF, 0xFF );
+        assertMalformed( 0x9A, 0xFF, 0xFF, 0xFF, 0xFF );
+        assertMalformed( 0xBA, 0xFF, 0xFF, 0xFF, 0xFF );
+
+        // A length that is negative as a long.
+        assertMalformed( 0x9B, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF );
+    }
+
+    @Test
+    public void testWronglyTyped() {
+        // Not a map.
+        assertMalformed( 0x01 );
+        // {"statusCode": "x"}
+        assertMalformed( cbor(0xA1, text("statusCode"), text("x")) );
+        // {"traceId": 1}
+        assertMalformed( cbor(0xA1, text("traceId"), 0x01) );
+        // {"warnings": {}}
+        assertMalformed( cbor(0xA1, text("warnings"), 0xA0) );
+        // {"warnings": ["x"]}
+        assertMalformed( cbor(0xA1, text("warnings"), 0x81, text("x")) );
+        // {"extras": []}
+        assertMalformed( cbor(0xA1, text("extras"), 0x80) );
+        // {1: 1}
+        assertMalformed( 0xA1, 0x01, 0x01 );
+        // An unsupported simple value and an indefinite length.
+        assertMalformed( 0xF7 );
+        assertMalformed( 0xBF );
+    }
+
+    @Test
+    public void testMissingFields() {
+        // {"warnings": [{}]}
+        assertMalformed( cbor(0xA1, text("warnings"), 0x81, 0xA0) );
+        // {"warnings": [null]}
+        assertMalformed( cbor(0xA1, text("warnings"), 0x81, 0xF6) );
+
+        // Everything else is optional.
+        LushAdvice empty = LushAdviceCbor.decode( bytes(0xA0) );
+        assertEquals( 0, empty.getStatusCode() );
+        assertEquals( 0, empty.getWarnings().size() );
+        assertEquals( 0, empty.getExtras().size() );
+    }
+
+    @Test
+    public void testMalformedInput() {
+        assertThrows( LushException.class, () -> LushAdviceCbor.decode(null) );
+        assertThrows( LushException.class, () -> LushAdviceCbor.decodeFromString("not base64!") );
+
+        // Trailing bytes.
+        assertMalformed( 0xA0, 0x00 );
+
+        // Nested too deep.
+        byte[] nested = new byte[10_000];
+        Arrays.fill( nested, (byte) 0x81 );
+        assertThrows( LushException.class, () -> LushAdviceCbor.decode(nested) );
+    }
+
+    private static void assertMalformed(int... bytes) {
+        assertMalformed( bytes(bytes) );
+    }
+
+    private static void assertMalformed(byte[] bytes) {
+        assertThrows( LushException.class, () -> LushAdviceCbor.decode(bytes) );
+    }
+
+    private static byte[] cbor(Object... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for( Object part : parts ) {
+            if( part instanceof byte[] ) {
+                out.writeBytes( (byte[]) part );
+            }
+            else {
+                out.write( (Integer) part );
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(int... bytes) {
+        byte[] result = new byte[bytes.length];
+        for( int i=0; i<bytes.length; i++ ) {
+            result[i] = (byte) bytes[i];
+        }
+        return result;
+    }
+
+    private static byte[] text(String s) {
+        byte[] utf8 = s.getBytes( StandardCharsets.UTF_8 );
+        return cbor( 0x60 | utf8.length, utf8 );
+    }
+}
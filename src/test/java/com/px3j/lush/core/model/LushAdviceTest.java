@@ -0,0 +1,48 @@
+package com.px3j.lush.core.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LushAdviceTest {
+    @Test
+    public void testGettersReturnSnapshots() {
+        LushAdvice advice = new LushAdvice( "trace", 200 );
+        advice.putExtra( "first", 1 );
+        advice.addWarning( new LushAdvice.LushWarning(1) );
+
+        Map<String,Object> extras = advice.getExtras();
+        Collection<LushAdvice.LushWarning> warnings = advice.getWarnings();
+
+        // Adding while iterating used to throw ConcurrentModificationException.
+        for( String key : extras.keySet() ) {
+            advice.putExtra( key + "-again", 2 );
+        }
+        for( LushAdvice.LushWarning warning : warnings ) {
+            advice.addWarning( new LushAdvice.LushWarning(warning.getCode() + 1) );
+        }
+
+        assertEquals( 1, extras.size() );
+        assertEquals( 1, warnings.size() );
+        assertEquals( 2, advice.getExtras().size() );
+        assertEquals( 2, advice.getWarnings().size() );
+    }
+
+    @Test
+    public void testMergeFrom() {
+        LushAdvice downstream = new LushAdvice( "downstream", 201 );
+        downstream.putExtra( "visits", 3 );
+        downstream.addWarning( new LushAdvice.LushWarning(7) );
+
+        LushAdvice advice = new LushAdvice( "trace", 200 );
+        advice.mergeFrom( downstream );
+
+        assertEquals( "trace", advice.getTraceId() );
+        assertEquals( 201, advice.getStatusCode() );
+        assertEquals( 3, advice.getExtras().get("visits") );
+        assertEquals( 7, advice.getWarnings().iterator().next().getCode() );
+    }
+}
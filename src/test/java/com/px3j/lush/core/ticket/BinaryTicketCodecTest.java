@@ -0,0 +1,137 @@
+package com.px3j.lush.core.ticket;
+
+import com.google.gson.Gson;
+import com.px3j.lush.core.exception.LushException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryTicketCodecTest {
+    private final BinaryTicketCodec codec = new BinaryTicketCodec( List.of("user", "admin"), new Gson() );
+
+    @Test
+    public void testRoundTrip() {
+        LushTicket ticket = new LushTicket( "caf\u00e9 \u65e5\u672c", "secret", List.of(
+                new SimpleGrantedAuthority("admin"),
+                new SimpleGrantedAuthority("not-in-dictionary")
+        ));
+        ticket.setId( "id-1" );
+        ticket.putExtra( "string", "value" );
+        ticket.putExtra( "long", -42L );
+        ticket.putExtra( "double", 0.25 );
+        ticket.putExtra( "boolean", true );
+        ticket.putExtra( "null", null );
+        ticket.putExtra( "map", Map.of("nested", "value") );
+
+        LushTicket decoded = codec.decode( encode(ticket) );
+
+        assertEquals( "id-1", decoded.getId() );
+        assertEquals( "caf\u00e9 \u65e5\u672c", decoded.getUsername() );
+        assertEquals( "secret", decoded.getPassword() );
+        assertEquals( List.of("admin", "not-in-dictionary"), decoded.getAuthorities().stream().map(SimpleGrantedAuthority::getAuthority).collect(Collectors.toList()) );
+        assertEquals( "value", decoded.getExtras().get("string") );
+        assertEquals( -42L, decoded.getExtras().get("long") );
+        assertEquals( 0.25, decoded.getExtras().get("double") );
+        assertEquals( true, decoded.getExtras().get("boolean") );
+        assertNull( decoded.getExtras().get("null") );
+        assertEquals( Map.of("nested", "value"), decoded.getExtras().get("map") );
+    }
+
+    @Test
+    public void testNullFields() {
+        LushTicket ticket = new LushTicket();
+        ticket.setPassword( null );
+
+        LushTicket decoded = codec.decode( encode(ticket) );
+
+        assertNull( decoded.getId() );
+        assertEquals( "unknown", decoded.getUsername() );
+        assertNull( decoded.getPassword() );
+        assertEquals( 0, decoded.getAuthorities().size() );
+    }
+
+    @Test
+    public void testTruncated() {
+        LushTicket ticket = new LushTicket( "paul", "", List.of(new SimpleGrantedAuthority("user"), new SimpleGrantedAuthority("other")) );
+        ticket.putExtra( "key", "value" );
+        ByteBuffer encoded = encode( ticket );
+        byte[] bytes = Arrays.copyOf( encoded.array(), encoded.limit() );
+
+        for( int length=0; length<bytes.length; length++ ) {
+            ByteBuffer truncated = ByteBuffer.wrap( Arrays.copyOf(bytes, length) );
+            assertThrows( LushException.class, () -> codec.decode(truncated).getExtras(), "length " + length );
+        }
+    }
+
+    @Test
+    public void testMalformed() {
+        // Not binary, an unknown version and a different dictionary.
+        assertMalformed( '{' );
+        assertMalformed( BinaryTicketCodec.MAGIC, 2 );
+        assertMalformed( BinaryTicketCodec.MAGIC, BinaryTicketCodec.VERSION, 0, 0, 0, 1 );
+
+        // A username whose length is past the end of the ticket, and one whose length doesn't fit an int.
+        byte[] header = encode( new LushTicket() ).array();
+        assertMalformed( header[0], header[1], header[2], header[3], header[4], header[5], 0, 0x7F, 'a' );
+        assertMalformed( header[0], header[1], header[2], header[3], header[4], header[5], 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F );
+
+        // A varint that never ends.
+        assertMalformed( header[0], header[1], header[2], header[3], header[4], header[5], 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80 );
+    }
+
+    @Test
+    public void testMalformedBody() {
+        // Encoded with one authority, read as a ticket with an authority outside the dictionary and an unknown extra
+        // type.  Neither is noticed until the authorities are first accessed.
+        ByteBuffer encoded = encode( new LushTicket("paul", "", List.of()) );
+        byte[] bytes = Arrays.copyOf( encoded.array(), encoded.limit() );
+
+        byte[] badAuthority = Arrays.copyOf( bytes, bytes.length + 1 );
+        badAuthority[bytes.length - 2] = 1;
+        badAuthority[bytes.length - 1] = (9 << 1) | 1;
+        LushTicket ticket = codec.decode( ByteBuffer.wrap(badAuthority) );
+        assertThrows( LushException.class, ticket::getAuthorities );
+
+        byte[] badExtra = Arrays.copyOf( bytes, bytes.length + 3 );
+        badExtra[bytes.length - 1] = 1;
+        badExtra[bytes.length] = 2;
+        badExtra[bytes.length + 1] = 'k';
+        badExtra[bytes.length + 2] = 99;
+        LushTicket withExtra = codec.decode( ByteBuffer.wrap(badExtra) );
+        assertThrows( LushException.class, withExtra::getExtras );
+
+        // Malformed JSON extra.
+        byte[] badJson = Arrays.copyOf( bytes, bytes.length + 6 );
+        badJson[bytes.length - 1] = 1;
+        badJson[bytes.length] = 2;
+        badJson[bytes.length + 1] = 'k';
+        badJson[bytes.length + 2] = 6;
+        badJson[bytes.length + 3] = 3;
+        badJson[bytes.length + 4] = '{';
+        badJson[bytes.length + 5] = '[';
+        LushTicket withJson = codec.decode( ByteBuffer.wrap(badJson) );
+        assertThrows( LushException.class, withJson::getExtras );
+    }
+
+    private ByteBuffer encode(LushTicket ticket) {
+        BinaryTicketCodec.Writer writer = codec.encode( ticket );
+        return ByteBuffer.wrap( writer.array(), 0, writer.length() );
+    }
+
+    private void assertMalformed(int... bytes) {
+        byte[] b = new byte[bytes.length];
+        for( int i=0; i<bytes.length; i++ ) {
+            b[i] = (byte) bytes[i];
+        }
+        assertThrows( LushException.class, () -> codec.decode(ByteBuffer.wrap(b)).getExtras() );
+    }
+}
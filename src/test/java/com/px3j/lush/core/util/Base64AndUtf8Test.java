@@ -0,0 +1,106 @@
+package com.px3j.lush.core.util;
+
+import com.px3j.lush.core.exception.LushException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * CryptoHelper's Base64 decoding and ByteBufferReader's UTF-8 decoding must give the same results as the JDK's.
+ */
+public class Base64AndUtf8Test {
+    @Test
+    public void testBase64MatchesJdk() {
+        for( String text : List.of(
+                "", "Q", "QQ", "QQ=", "QQ==", "QQ===", "QUI", "QUI=", "QUI==", "QUJD", "QUJD=", "QUJDRA", "QR==",
+                "=", "==", "Q=", "Q===", "QQ=A", "QQ==QQ==", "QUI=QUI=", "QQ==\n", "QU!D", "QUJD\u00e9", "-_-_", "+/+/",
+                "QUJD QUJD", "QUJD\r\n"
+        )) {
+            assertBase64MatchesJdk( text );
+        }
+
+        Random random = new Random( 5 );
+        String alphabet = "AQgw+/=-_ !\u00e9";
+        for( int i=0; i<50_000; i++ ) {
+            char[] text = new char[random.nextInt(13)];
+            for( int c=0; c<text.length; c++ ) {
+                text[c] = alphabet.charAt( random.nextInt(alphabet.length()) );
+            }
+            assertBase64MatchesJdk( new String(text) );
+        }
+
+        for( int i=0; i<1000; i++ ) {
+            byte[] bytes = new byte[random.nextInt(100)];
+            random.nextBytes( bytes );
+            assertBase64MatchesJdk( Base64.getEncoder().encodeToString(bytes) );
+            assertBase64MatchesJdk( Base64.getEncoder().withoutPadding().encodeToString(bytes) );
+        }
+    }
+
+    @Test
+    public void testUtf8MatchesJdk() {
+        // Every one and two byte input.
+        for( int b1=0; b1<256; b1++ ) {
+            assertUtf8MatchesJdk( new byte[]{(byte) b1} );
+            for( int b2=0; b2<256; b2++ ) {
+                assertUtf8MatchesJdk( new byte[]{(byte) b1, (byte) b2} );
+            }
+        }
+
+        // Longer inputs, mostly made of bytes that start or continue multi byte sequences.
+        Random random = new Random( 8 );
+        int[] interesting = {
+                0x41, 0x7F, 0x80, 0x8F, 0x90, 0x9F, 0xA0, 0xBF, 0xC0, 0xC1, 0xC2, 0xDF,
+                0xE0, 0xE1, 0xEC, 0xED, 0xEE, 0xEF, 0xF0, 0xF1, 0xF3, 0xF4, 0xF5, 0xF7, 0xF8, 0xFF
+        };
+        for( int i=0; i<200_000; i++ ) {
+            byte[] bytes = new byte[random.nextInt(9)];
+            for( int b=0; b<bytes.length; b++ ) {
+                bytes[b] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : interesting[random.nextInt(interesting.length)]);
+            }
+            assertUtf8MatchesJdk( bytes );
+        }
+
+        assertUtf8MatchesJdk( "caf\u00e9 \u65e5\u672c \ud83d\ude00".getBytes(StandardCharsets.UTF_8) );
+    }
+
+    private static void assertBase64MatchesJdk(String text) {
+        byte[] expected;
+        try {
+            expected = Base64.getDecoder().decode( text );
+        }
+        catch (IllegalArgumentException e) {
+            assertThrows( LushException.class, () -> CryptoHelper.decodeBase64(text, new byte[text.length()]), text );
+            return;
+        }
+
+        byte[] decoded = new byte[text.length() * 3 / 4];
+        int length = CryptoHelper.decodeBase64( text, decoded );
+        assertArrayEquals( expected, Arrays.copyOf(decoded, length), text );
+    }
+
+    private static void assertUtf8MatchesJdk(byte[] bytes) {
+        String expected = new String( bytes, StandardCharsets.UTF_8 );
+
+        // Read a char at a time too, so supplementary characters are split between reads.
+        for( int chunk : new int[]{1, 64} ) {
+            ByteBufferReader reader = new ByteBufferReader().reset( ByteBuffer.wrap(bytes) );
+            StringBuilder decoded = new StringBuilder();
+            char[] cbuf = new char[chunk];
+            int n;
+            while( (n = reader.read(cbuf, 0, chunk)) > 0 ) {
+                decoded.append( cbuf, 0, n );
+            }
+            assertEquals( expected, decoded.toString(), () -> Arrays.toString(bytes) );
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.px3j.lush.core.util;
+
+import com.px3j.lush.core.exception.LushException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CryptoHelperTest {
+    private static final String PLAIN_TEXT = "{\"username\":\"paul\",\"authorities\":[{\"role\":\"user\"}]}";
+
+    @Test
+    public void testGcmRoundTrip() throws Exception {
+        CryptoHelper helper = gcmHelper( List.of("1:" + newKey()), 1 );
+
+        String encrypted = helper.encrypt( PLAIN_TEXT );
+        assertEquals( PLAIN_TEXT, helper.decrypt(encrypted) );
+
+        // A new nonce for every call.
+        assertNotEquals( encrypted, helper.encrypt(PLAIN_TEXT) );
+
+        // The ByteBuffer overloads.
+        byte[] plain = PLAIN_TEXT.getBytes();
+        ByteBuffer cipherText = ByteBuffer.allocate( helper.getOutputSize(plain.length) );
+        helper.encrypt( ByteBuffer.wrap(plain), cipherText );
+        cipherText.flip();
+
+        ByteBuffer decrypted = ByteBuffer.allocate( helper.getOutputSize(cipherText.remaining()) );
+        int length = helper.decrypt( cipherText, decrypted );
+        assertEquals( PLAIN_TEXT, new String(decrypted.array(), 0, length) );
+    }
+
+    @Test
+    public void testKeyRotation() throws Exception {
+        String oldKey = newKey();
+        String newKey = newKey();
+
+        CryptoKeys keys = new CryptoKeys( "", "", List.of("1:" + oldKey), 1 );
+        CryptoHelper helper = new CryptoHelper( keys, "gcm" );
+        String encryptedWithOld = helper.encrypt( PLAIN_TEXT );
+
+        // Register the new key everywhere, then activate it - data encrypted with either key can be decrypted.
+        keys.keyRing.register( 2, new SecretKeySpec(Base64.getDecoder().decode(newKey), "AES") );
+        keys.keyRing.activate( 2 );
+        String encryptedWithNew = helper.encrypt( PLAIN_TEXT );
+
+        assertEquals( PLAIN_TEXT, helper.decrypt(encryptedWithOld) );
+        assertEquals( PLAIN_TEXT, helper.decrypt(encryptedWithNew) );
+
+        // A service that only has the new key.
+        CryptoHelper other = gcmHelper( List.of("2:" + newKey), 2 );
+        assertEquals( PLAIN_TEXT, other.decrypt(encryptedWithNew) );
+        assertThrows( LushException.class, () -> other.decrypt(encryptedWithOld) );
+
+        // Once the old key is retired what it encrypted can't be decrypted.
+        keys.keyRing.retire( 1 );
+        assertThrows( LushException.class, () -> helper.decrypt(encryptedWithOld) );
+        assertEquals( PLAIN_TEXT, helper.decrypt(encryptedWithNew) );
+    }
+
+    @Test
+    public void testTamperedCipherTextRejected() throws Exception {
+        CryptoHelper helper = gcmHelper( List.of("1:" + newKey()), 1 );
+        byte[] encrypted = Base64.getDecoder().decode( helper.encrypt(PLAIN_TEXT) );
+
+        // Every byte after the marker and key id is covered: the nonce, the cipher text and the tag.
+        for( int i=2; i<encrypted.length; i++ ) {
+            byte[] tampered = encrypted.clone();
+            tampered[i] ^= 0x01;
+            String encoded = Base64.getEncoder().encodeToString( tampered );
+            assertThrows( LushException.class, () -> helper.decrypt(encoded), "byte " + i );
+        }
+
+        // An unknown key id, and cipher text that was cut short.
+        byte[] unknownKey = encrypted.clone();
+        unknownKey[1] = 7;
+        assertThrows( LushException.class, () -> helper.decrypt(Base64.getEncoder().encodeToString(unknownKey)) );
+
+        byte[] truncated = Arrays.copyOf( encrypted, encrypted.length - 1 );
+        assertThrows( LushException.class, () -> helper.decrypt(Base64.getEncoder().encodeToString(truncated)) );
+
+        // The helper's cipher is still usable after the failures.
+        assertEquals( PLAIN_TEXT, helper.decrypt(helper.encrypt(PLAIN_TEXT)) );
+    }
+
+    @Test
+    public void testGcmDecryptsCbc() throws Exception {
+        String secretKey = newKey();
+        String accessKey = Base64.getEncoder().encodeToString( CryptoHelper.generateIv().getIV() );
+
+        CryptoHelper cbc = new CryptoHelper( new CryptoKeys(secretKey, accessKey) );
+        CryptoHelper gcm = new CryptoHelper( new CryptoKeys(secretKey, accessKey, List.of("1:" + newKey()), 1), "gcm" );
+
+        assertEquals( PLAIN_TEXT, gcm.decrypt(cbc.encrypt(PLAIN_TEXT)) );
+        assertEquals( PLAIN_TEXT, gcm.decrypt(gcm.encrypt(PLAIN_TEXT)) );
+    }
+
+    @Test
+    public void testKeyRing() throws Exception {
+        KeyRing ring = new CryptoKeys( "", "", List.of("0:" + newKey(), "255:" + newKey()), 0 ).keyRing;
+
+        assertEquals( 0, ring.getActiveKeyId() );
+        assertNull( ring.get(1) );
+        assertNull( ring.get(256) );
+        assertThrows( LushException.class, () -> ring.activate(1) );
+        assertThrows( LushException.class, () -> ring.retire(0) );
+        assertThrows( LushException.class, () -> ring.register(256, ring.get(0)) );
+
+        ring.activate( 255 );
+        ring.retire( 0 );
+        assertNull( ring.get(0) );
+    }
+
+    @Test
+    public void testGcmRequiresActiveKey() throws Exception {
+        CryptoKeys keys = new CryptoKeys( "", "", List.of("1:" + newKey()), -1 );
+        assertThrows( LushException.class, () -> new CryptoHelper(keys, "gcm") );
+        assertThrows( LushException.class, () -> new CryptoHelper(keys, "cbc") );
+        assertThrows( LushException.class, () -> new CryptoHelper(keys, "ecb") );
+    }
+
+    private static CryptoHelper gcmHelper(List<String> keyRing, int activeKeyId) {
+        return new CryptoHelper( new CryptoKeys("", "", keyRing, activeKeyId), "gcm" );
+    }
+
+    private static String newKey() throws Exception {
+        SecretKey key = CryptoHelper.generateKey( 256 );
+        return Base64.getEncoder().encodeToString( key.getEncoded() );
+    }
+}
@@ -0,0 +1,51 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.px3j.lush.core.model.LushAdvice;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdviceHeaderWriterTest {
+    private static class Visit {
+        private final String page = "cats";
+        private final int count = 3;
+        private final String referrer = null;
+    }
+
+    private final AdviceHeaderWriter writer = new AdviceHeaderWriter( 4096 );
+
+    @Test
+    public void testWrittenAsGson() {
+        Map<String,Object> detail = new HashMap<>();
+        detail.put( "reason", "slow" );
+        detail.put( "missing", null );
+
+        LushAdvice advice = new LushAdvice( "trace", 201 );
+        advice.addWarning( new LushAdvice.LushWarning(7, detail) );
+        advice.addWarning( new LushAdvice.LushWarning(8, null) );
+        advice.putExtra( "string", "caf\u00e9 \"quoted\"" );
+        advice.putExtra( "int", 42 );
+        advice.putExtra( "long", 42L );
+        advice.putExtra( "double", 1.5 );
+        advice.putExtra( "float", 2.5f );
+        advice.putExtra( "decimal", new BigDecimal("1.10") );
+        advice.putExtra( "boolean", true );
+        advice.putExtra( "list", Arrays.asList("a", null, 1) );
+        advice.putExtra( "map", Map.of("nested", List.of(1, 2)) );
+        advice.putExtra( "pojo", new Visit() );
+        advice.putExtra( "null", null );
+
+        String json = writer.write( advice );
+
+        assertEquals( JsonParser.parseString(new Gson().toJson(advice)), JsonParser.parseString(json) );
+        json.chars().forEach( c -> assertEquals(true, c >= 0x20 && c <= 0x7E) );
+    }
+}
@@ -0,0 +1,105 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingResponseTest {
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    @Test
+    public void testBatches() {
+        StepVerifier.create( batch(Flux.just("1,", "2,", "3,", "4,", "5,", "6,", "7,"), 3, Duration.ofSeconds(1)) )
+                .expectNext( "1,2,3,", "4,5,6,", "7," )
+                .verifyComplete();
+
+        StepVerifier.create( batch(Flux.just("1,", "2,", "3,", "4,", "5,"), 2, Duration.ZERO) )
+                .expectNext( "1,2,", "3,4,", "5," )
+                .verifyComplete();
+    }
+
+    @Test
+    public void testWindowHeldForSlowSubscriber() {
+        AtomicLong requested = new AtomicLong();
+        Flux<String> body = Flux.just( "1,", "2," )
+                .concatWith( Flux.just("3,", "4,", "5,", "6,").delaySubscription(Duration.ofMillis(100)) )
+                .doOnRequest( requested::addAndGet );
+
+        // The subscriber asks for a single batch, and doesn't ask again until long after the next window has passed.
+        StepVerifier.create( batch(body, 4, Duration.ofMillis(50)), 1 )
+                .expectNext( "1,2," )
+                .expectNoEvent( Duration.ofMillis(300) )
+                .then( () -> assertEquals(4, requested.get()) )
+                .thenRequest( Long.MAX_VALUE )
+                .expectNext( "3,4,", "5,6," )
+                .verifyComplete();
+    }
+
+    @Test
+    public void testNoLockHeldWhileEmitting() throws Exception {
+        // Like Spring's ChannelSendOperator the subscriber requests while holding a lock that its onNext takes too, the
+        // window's timer must not hold the batcher's lock while it emits.
+        Object writeLock = new Object();
+        CountDownLatch completed = new CountDownLatch( 1 );
+        AtomicInteger received = new AtomicInteger();
+        BaseSubscriber<String> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            protected void hookOnNext(String batch) {
+                synchronized( writeLock ) {
+                    received.addAndGet( batch.split(",").length );
+                }
+            }
+
+            @Override
+            protected void hookFinally(SignalType type) {
+                completed.countDown();
+            }
+        };
+
+        Flux<String> body = Flux.range( 0, 500 ).map( i -> i + "," ).delayElements( Duration.ofMillis(1) );
+        batch( body, 1000, Duration.ofMillis(1) ).subscribe( subscriber );
+
+        Thread requester = new Thread( () -> {
+            while( completed.getCount() > 0 ) {
+                synchronized( writeLock ) {
+                    subscriber.request( 1 );
+                }
+            }
+        });
+        requester.setDaemon( true );
+        requester.start();
+
+        assertTrue( completed.await(10, TimeUnit.SECONDS) );
+        assertEquals( 500, received.get() );
+    }
+
+    private Flux<String> batch(Flux<String> body, int size, Duration window) {
+        Flux<DataBuffer> buffers = body.map( s -> bufferFactory.wrap(s.getBytes(StandardCharsets.UTF_8)) );
+        return BatchingResponse.batch( buffers, size, window, bufferFactory )
+                .map( buffer -> {
+                    String batch = buffer.toString( StandardCharsets.UTF_8 );
+                    DataBufferUtils.release( buffer );
+                    return batch;
+                });
+    }
+}
@@ -0,0 +1,144 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ConcurrencyLimiterTest {
+    public static class Controller {
+        public Mono<String> ping(String name) { return Mono.just(name); }
+        public Mono<String> ping(int count) { return Mono.just(String.valueOf(count)); }
+    }
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter( true, 10, 1, 200, 0.5, Duration.ofMillis(250) );
+    private final Method ping;
+    private final Method pingCount;
+
+    public ConcurrencyLimiterTest() throws Exception {
+        limiter.bindTo( registry );
+        ping = Controller.class.getMethod( "ping", String.class );
+        pingCount = Controller.class.getMethod( "ping", int.class );
+    }
+
+    @Test
+    public void testCancelledCallKeepsLimit() {
+        limiter.mono( ping, null, Duration.ZERO, Mono::never ).subscribe().dispose();
+
+        assertEquals( 10, limitOf(ping) );
+        assertEquals( 0, inflightOf(ping) );
+    }
+
+    @Test
+    public void testTimedOutCallDropsLimit() {
+        limiter.mono( ping, null, Duration.ofNanos(1), Mono::never ).subscribe().dispose();
+
+        assertEquals( 5, limitOf(ping) );
+        assertEquals( 0, inflightOf(ping) );
+    }
+
+    @Test
+    public void testFailedCallDropsLimit() {
+        limiter.mono( ping, null, Duration.ZERO, () -> Mono.error(new IllegalStateException()) )
+                .onErrorResume( t -> Mono.empty() )
+                .block();
+
+        assertEquals( 5, limitOf(ping) );
+    }
+
+    @Test
+    public void testStreamTimedToFirstElement() {
+        // The stream lasts longer than the latency threshold, but its first element doesn't.  Both are synchronous, so
+        // the permit is released before block returns.
+        limiter.flux( ping, null, Duration.ZERO, () -> Flux.just("first").concatWith(slow().then(Mono.empty())) ).blockLast();
+        assertEquals( 10, limitOf(ping) );
+
+        limiter.mono( ping, null, Duration.ZERO, ConcurrencyLimiterTest::slow ).block();
+        assertEquals( 5, limitOf(ping) );
+    }
+
+    @Test
+    public void testUnsubscribedCallHoldsNoPermit() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = limiter.mono( ping, null, Duration.ZERO, () -> {
+            calls.incrementAndGet();
+            return Mono.just( "pong" );
+        });
+
+        // Assembled but never subscribed to, ie: the client went away before the response was written.
+        assertEquals( 0, inflightOf(ping) );
+        assertEquals( 0, calls.get() );
+
+        // Each subscription takes and releases its own permit.
+        assertEquals( "pong", call.block() );
+        assertEquals( "pong", call.block() );
+        assertEquals( 0, inflightOf(ping) );
+        assertEquals( 2, calls.get() );
+    }
+
+    @Test
+    public void testRejectedCallNotInvoked() {
+        LushContext lushContext = new LushContext();
+        lushContext.setAdvice( new LushAdvice(null, 200) );
+        List<Disposable> held = new ArrayList<>();
+        for( int i=0; i<10; i++ ) {
+            held.add( limiter.mono(ping, lushContext, Duration.ZERO, Mono::never).subscribe() );
+        }
+
+        AtomicInteger calls = new AtomicInteger();
+        String result = limiter.mono( ping, lushContext, Duration.ZERO, () -> {
+            calls.incrementAndGet();
+            return Mono.just( "pong" );
+        }).block();
+
+        assertNull( result );
+        assertEquals( 0, calls.get() );
+        assertEquals( LushAdvice.STATUS_OVERLOADED, lushContext.getAdvice().getStatusCode() );
+        assertEquals( true, lushContext.getAdvice().getExtras().get(ConcurrencyLimiter.REJECTED_EXTRA) );
+
+        held.forEach( Disposable::dispose );
+        assertEquals( 0, inflightOf(ping) );
+    }
+
+    @Test
+    public void testOverloadsTaggedApart() {
+        Disposable first = limiter.mono( ping, null, Duration.ZERO, Mono::never ).subscribe();
+        Disposable second = limiter.mono( pingCount, null, Duration.ZERO, Mono::never ).subscribe();
+
+        assertEquals( "Controller.ping(String)", ConcurrencyLimiter.nameOf(ping) );
+        assertEquals( "Controller.ping(int)", ConcurrencyLimiter.nameOf(pingCount) );
+        assertEquals( 1, inflightOf(ping) );
+        assertEquals( 1, inflightOf(pingCount) );
+
+        first.dispose();
+        second.dispose();
+    }
+
+    private static Mono<String> slow() {
+        return Mono.fromCallable( () -> {
+            Thread.sleep( 500 );
+            return "late";
+        });
+    }
+
+    private int limitOf(Method method) {
+        return (int) registry.get("lush.limiter.limit").tag("method", ConcurrencyLimiter.nameOf(method)).gauge().value();
+    }
+
+    private int inflightOf(Method method) {
+        return (int) registry.get("lush.limiter.inflight").tag("method", ConcurrencyLimiter.nameOf(method)).gauge().value();
+    }
+}
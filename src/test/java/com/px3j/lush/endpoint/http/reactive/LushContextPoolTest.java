@@ -0,0 +1,54 @@
+package com.px3j.lush.endpoint.http.reactive;
+
+import com.px3j.lush.core.model.LushAdvice;
+import com.px3j.lush.core.model.LushContext;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LushContextPoolTest {
+    @Test
+    public void testDisabled() {
+        LushContextPool pool = new LushContextPool( false, 256 );
+        assertFalse( pool.isEnabled() );
+
+        LushContext context = pool.acquire( () -> "trace-1" );
+        pool.release( context );
+
+        assertNotSame( context, pool.acquire(() -> "trace-2") );
+        assertEquals( 0, pool.size() );
+    }
+
+    @Test
+    public void testReused() {
+        LushContextPool pool = new LushContextPool( true, 256 );
+        LushContext context = pool.acquire( () -> "trace-1" );
+        for( int i=0; i<100; i++ ) {
+            context.getAdvice().putExtra( "extra-" + i, i );
+        }
+        context.getAdvice().setStatusCode( LushAdvice.STATUS_TIMEOUT );
+        pool.release( context );
+        assertEquals( 1, pool.size() );
+
+        LushContext reused = pool.acquire( () -> "trace-2" );
+        assertSame( context, reused );
+        assertEquals( "trace-2", reused.getTraceId() );
+        assertEquals( "trace-2", reused.getAdvice().getTraceId() );
+        assertEquals( 200, reused.getAdvice().getStatusCode() );
+        assertTrue( reused.getAdvice().getExtras().isEmpty() );
+        assertEquals( 0, pool.size() );
+    }
+
+    @Test
+    public void testBounded() {
+        LushContextPool pool = new LushContextPool( true, 1 );
+        pool.release( new LushContext() );
+        pool.release( new LushContext() );
+
+        assertEquals( 1, pool.size() );
+    }
+}
@@ -0,0 +1,30 @@
+package com.px3j.lush.endpoint.http.security.reactive;
+
+import com.px3j.lush.core.ticket.LushTicket;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class TicketAuthenticationTokenTest {
+    @Test
+    public void testEqualsUsesTicketAuthorities() {
+        LushTicket ticket = new LushTicket( "paul", "", new ArrayList<>(List.of(new SimpleGrantedAuthority("admin"))) );
+        TicketAuthenticationToken token = new TicketAuthenticationToken( ticket );
+        TicketAuthenticationToken same = new TicketAuthenticationToken( ticket );
+
+        assertEquals( token, same );
+        assertEquals( token.hashCode(), same.hashCode() );
+
+        int hashCode = token.hashCode();
+        ticket.setAuthorities( List.of(new SimpleGrantedAuthority("user")) );
+        assertNotEquals( hashCode, token.hashCode() );
+
+        LushTicket other = new LushTicket( "paul", "", List.of(new SimpleGrantedAuthority("user")) );
+        assertNotEquals( token, new TicketAuthenticationToken(other) );
+    }
+}
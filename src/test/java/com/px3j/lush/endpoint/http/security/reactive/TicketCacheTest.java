@@ -0,0 +1,24 @@
+package com.px3j.lush.endpoint.http.security.reactive;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TicketCacheTest {
+    private final TicketCache cache = new TicketCache( true, 100, Duration.ofMinutes(5) );
+
+    @Test
+    public void testNonAsciiTicketsKeyedApart() {
+        // Both tickets used to be hashed as "t?cket".
+        SecurityContext first = cache.get( "t\u00efcket", t -> new SecurityContextImpl() );
+        SecurityContext second = cache.get( "t\u00eecket", t -> new SecurityContextImpl() );
+
+        assertNotSame( first, second );
+        assertSame( first, cache.get("t\u00efcket", t -> new SecurityContextImpl()) );
+    }
+}